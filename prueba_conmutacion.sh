@@ -0,0 +1,16 @@
+#!/usr/bin/env bash
+# Prueba de conmutación por error en Linux: arranca el réplica set local si hace falta, compila y
+# ejecuta org.example.carga.PruebaConmutacion con los argumentos clave=valor indicados. Los miembros
+# apagados o matados se vuelven a arrancar con start_replica.sh entre repeticiones.
+# Ejemplos:
+#   ./prueba_conmutacion.sh provocacion=stepdown repeticiones=3
+#   ./prueba_conmutacion.sh provocacion=matar escritores=16 observacion=60
+#   JAVA_OPTS='-Dmongodb.connection.string=mongodb://localhost:27017,localhost:27018,localhost:27019/?replicaSet=rs0&serverSelectionTimeoutMS=5000' \
+#       ./prueba_conmutacion.sh provocacion=apagar
+set -euo pipefail
+cd "$(dirname "$0")"
+
+./start_replica.sh iniciar
+mvn -B -q compile dependency:build-classpath -Dmdep.outputFile=target/classpath.txt
+exec java ${JAVA_OPTS:-} -cp "target/classes:$(cat target/classpath.txt)" org.example.carga.PruebaConmutacion \
+    reinicio="$PWD/start_replica.sh iniciar" "$@"
@@ -4,19 +4,31 @@ import com.mongodb.client.model.Filters;
 import org.bson.Document;
 import org.bson.types.ObjectId;
 import org.bson.BsonTimestamp;
+import org.example.config.ArranqueMongo;
+import org.example.config.MongoConfig;
+import org.example.metrics.MonitorReplica;
 import org.example.model.Documento;
+import org.example.repository.ConsultaDocumentos;
 import org.example.repository.DocumentoRepository;
+import org.example.repository.LoteColumnar;
+import org.example.repository.ResultadoActualizacion;
 
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.time.Duration;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
 import java.util.List;
+import java.util.Properties;
 import java.util.Scanner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 // Sistema de Gestión Documental Corporativo con MongoDB
 // Implementa transacciones ACID multi-documento y réplica sets para alta disponibilidad
@@ -25,20 +37,35 @@ public class DocManageApplication {
     // Configuración de zona horaria para visualización de timestamps
     private static final ZoneId ZONA_LOCAL = ZoneId.systemDefault();
     private static final DateTimeFormatter FORMATO_TIMESTAMP = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss");
+    private static final int TAMANO_LOTE_LISTADO = 500;
 
-    // Componentes principales del sistema
-    private static final DocumentoRepository documentoRepository = new DocumentoRepository();
+    // Componentes principales del sistema; los que usan el cliente de MongoDB se crean en el hilo
+    // de arranque, una vez listo el cliente, y el menú los usa tras esperarDisponibilidad()
+    private static volatile DocumentoRepository documentoRepository;
     private static final Scanner scanner = new Scanner(System.in);
+    private static volatile MonitorReplica monitorReplica;
+    private static CompletableFuture<Void> componentes;
 
     // Punto de entrada del sistema
     public static void main(String[] args) {
         boolean continuar = true;
+        // Conexión, calentamiento del pool e índices en segundo plano mientras se muestra el menú
+        componentes = ArranqueMongo.iniciar().thenRun(() -> {
+            documentoRepository = new DocumentoRepository();
+            monitorReplica = crearMonitorReplica();
+            documentoRepository.verificarIndicesEnSegundoPlano();
+            monitorReplica.iniciar();
+            documentoRepository.iniciarRecoleccionAdjuntos();
+        });
         System.out.println("=== SISTEMA DE GESTIÓN DOCUMENTAL DOCMANAGENOSQL ===");
         System.out.println("MongoDB ACID Transactions | Alta Disponibilidad");
 
         while (continuar) {
             mostrarMenu();
             int opcion = obtenerOpcion();
+            if (opcion >= 1 && opcion <= 15 && !esperarDisponibilidad()) {
+                continue;
+            }
 
             switch (opcion) {
                 case 1 -> crearDocumento();
@@ -53,7 +80,10 @@ public class DocManageApplication {
                 case 10 -> mostrarUltimasOperacionesOplog();
                 case 11 -> recuperarDesdeOplog();
                 case 12 -> simularDesastreYRecuperacion();
-                case 13 -> {
+                case 13 -> mostrarEstadoReplica();
+                case 14 -> mostrarAuditoria();
+                case 15 -> mostrarVersiones();
+                case 16 -> {
                     System.out.println("Finalizando sesión del sistema de gestión documental...");
                     continuar = false;
                 }
@@ -61,9 +91,45 @@ public class DocManageApplication {
             }
         }
         scanner.close();
+        if (monitorReplica != null) {
+            monitorReplica.detener();
+        }
+        if (documentoRepository != null) {
+            documentoRepository.cerrar();
+        }
+        MongoConfig.closeMongoClient();
         System.out.println("Sistema cerrado exitosamente.");
     }
 
+    // Monitor del réplica set con los umbrales de mongodb.properties
+    private static MonitorReplica crearMonitorReplica() {
+        Properties propiedades = MongoConfig.getProperties();
+        return new MonitorReplica(MongoConfig.getMongoClient(),
+                Long.parseLong(propiedades.getProperty("replica.monitor.segundos", "30")),
+                Double.parseDouble(propiedades.getProperty("replica.retrasoMaximoSegundos", "10")),
+                Double.parseDouble(propiedades.getProperty("replica.ventanaMinimaHoras", "24")));
+    }
+
+    // Espera a que el cliente de MongoDB esté listo antes de atender una operación
+    private static boolean esperarDisponibilidad() {
+        if (componentes.isDone() && !componentes.isCompletedExceptionally()) {
+            return true;
+        }
+        System.out.println("Esperando a que la conexión con MongoDB esté lista...");
+        try {
+            ArranqueMongo.esperarListo(Duration.ofSeconds(60));
+            // Los componentes se crean justo después de que el cliente esté listo
+            componentes.get(60, TimeUnit.SECONDS);
+            return true;
+        } catch (IllegalStateException | ExecutionException | TimeoutException e) {
+            System.err.println("MongoDB no disponible: " + e.getMessage());
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
     // Interfaz de usuario principal
     private static void mostrarMenu() {
         System.out.println("\n--- MENÚ PRINCIPAL ---");
@@ -79,7 +145,10 @@ public class DocManageApplication {
         System.out.println("10. Monitorear operaciones del oplog");
         System.out.println("11. Ejecutar recuperación desde oplog");
         System.out.println("12. Demostración: Recuperación ante desastres");
-        System.out.println("13. Salir del sistema");
+        System.out.println("13. Estado del réplica set y del oplog");
+        System.out.println("14. Consultar registro de auditoría");
+        System.out.println("15. Consultar versiones de un documento");
+        System.out.println("16. Salir del sistema");
         System.out.print("Seleccione una opción: ");
     }
 
@@ -90,7 +159,7 @@ public class DocManageApplication {
                 String input = scanner.nextLine().trim();
                 return Integer.parseInt(input);
             } catch (NumberFormatException e) {
-                System.out.print("Entrada inválida. Ingrese un número entre 1 y 13: ");
+                System.out.print("Entrada inválida. Ingrese un número entre 1 y 16: ");
             }
         }
     }
@@ -141,11 +210,36 @@ public class DocManageApplication {
     }
 
     // 5. Listado completo
+    // Se recorre en lotes columnares: cada fila se imprime desde las columnas, sin crear un
+    // Documento por registro ni cargar el inventario completo en memoria
     private static void mostrarTodosLosDocumentos() {
         System.out.println("\n--- INVENTARIO COMPLETO DE DOCUMENTOS ---");
-        List<Documento> docs = documentoRepository.obtenerTodosLosDocumentos();
-        imprimirDocumentos(docs);
-        System.out.println("Total en sistema: " + docs.size() + " documentos");
+        long total = documentoRepository.recorrerEnLotes(ConsultaDocumentos.todos(), TAMANO_LOTE_LISTADO,
+                DocManageApplication::imprimirLote);
+        if (total == 0) {
+            System.out.println("No se encontraron documentos.");
+        }
+        System.out.println("Total en sistema: " + total + " documentos");
+    }
+
+    // Mismo formato que imprimirDocumentos, leído de las columnas del lote
+    private static void imprimirLote(LoteColumnar lote) {
+        StringBuilder salida = new StringBuilder();
+        for (int fila = 0; fila < lote.tamano(); fila++) {
+            ObjectId archivoId = lote.archivoId(fila);
+            salida.append("Documento{id=").append(lote.id(fila))
+                    .append(", titulo='").append(lote.titulo(fila)).append('\'')
+                    .append(", autor='").append(lote.autor(fila)).append('\'')
+                    .append(", tipoDocumento='").append(lote.tipoDocumento(fila)).append('\'')
+                    .append(", archivoId=").append(archivoId)
+                    .append(", estado='").append(lote.estado(fila)).append('\'')
+                    .append(", version=").append(lote.version(fila)).append("}\n");
+            if (archivoId != null) {
+                salida.append("   Archivo adjunto disponible\n");
+            }
+            salida.append("---\n");
+        }
+        System.out.print(salida);
     }
 
     // Formateador de resultados
@@ -185,6 +279,7 @@ public class DocManageApplication {
             return;
         }
 
+        Documento base = new Documento(docExistente);
         System.out.println("Ingrese nuevos valores (vacío para mantener actual):");
         System.out.print("Nuevo título [" + docExistente.getTitulo() + "]: ");
         String nTitulo = scanner.nextLine().trim();
@@ -213,6 +308,27 @@ public class DocManageApplication {
             }
         }
 
+        // Si la versión indicada coincide con la leída, los cambios concurrentes de otros
+        // usuarios se fusionan automáticamente en lugar de rechazar la modificación
+        if (versionInput == base.getVersion()) {
+            ResultadoActualizacion resultado = documentoRepository.actualizarDocumentoConFusion(
+                    id, base, docExistente,
+                    nuevaRuta.isBlank() ? null : nuevaRuta,
+                    nuevoNombre
+            );
+            switch (resultado.getEstado()) {
+                case ACTUALIZADO -> System.out.println("Documento modificado exitosamente. Nueva versión: " +
+                        resultado.getNuevaVersion() +
+                        (resultado.isFusionado() ? " (cambios concurrentes fusionados)" : ""));
+                case CONFLICTO -> System.out.println("Conflicto con otra modificación en los campos: " +
+                        String.join(", ", resultado.getCamposEnConflicto()));
+                case NO_ENCONTRADO -> System.out.println("El documento fue eliminado por otro usuario.");
+                default -> System.out.println("No se pudo completar la modificación tras " +
+                        resultado.getIntentos() + " intentos.");
+            }
+            return;
+        }
+
         boolean exito = documentoRepository.actualizarDocumentoConArchivo(
                 id, docExistente, versionInput,
                 nuevaRuta.isBlank() ? null : nuevaRuta,
@@ -276,7 +392,7 @@ public class DocManageApplication {
         System.out.println("Destino: " + rutaFinal);
 
         try (OutputStream outputStream = new FileOutputStream(rutaFinal)) {
-            documentoRepository.getGridFSBucket().downloadToStream(doc.getArchivoId(), outputStream);
+            documentoRepository.descargarArchivoAdjunto(doc.getArchivoId(), outputStream);
             System.out.println("Archivo descargado exitosamente.");
         } catch (IOException e) {
             System.out.println("Error en la descarga: " + e.getMessage());
@@ -356,6 +472,9 @@ public class DocManageApplication {
             }
         }
 
+        if (desdeTs != null && !monitorReplica.alcanzaHasta(desdeTs)) {
+            System.out.println("ADVERTENCIA: el oplog ya no contiene operaciones tan antiguas; la recuperación será parcial.");
+        }
         List<Document> ops = documentoRepository.obtenerOperacionesOplogDesde(desdeTs, 20);
         if (ops.isEmpty()) {
             System.out.println("No hay operaciones para recuperar.");
@@ -410,6 +529,95 @@ public class DocManageApplication {
         System.out.println("\nDemostración completada exitosamente.");
     }
 
+    // 13. Estado del réplica set: miembros, retraso de replicación y ventana del oplog
+    private static void mostrarEstadoReplica() {
+        System.out.println("\n--- ESTADO DEL RÉPLICA SET ---");
+        MonitorReplica.Estado estado;
+        try {
+            estado = monitorReplica.muestrear();
+        } catch (RuntimeException e) {
+            System.err.println("No se pudo obtener el estado del réplica set: " + e.getMessage());
+            return;
+        }
+        System.out.println("Réplica set: " + estado.replicaSet());
+        for (MonitorReplica.Miembro miembro : estado.miembros()) {
+            String retraso = miembro.retrasoSegundos() >= 0
+                    ? String.format("retraso %.1f s", miembro.retrasoSegundos()) : "";
+            System.out.printf("  %-20s %-10s %-8s %s%n", miembro.nombre(), miembro.estado(),
+                    miembro.sano() ? "sano" : "CAÍDO", retraso);
+        }
+        System.out.printf("Ventana del oplog: %.1f horas%n", estado.ventanaHoras());
+        if (estado.recuperableDesde() != null) {
+            LocalDateTime desde = LocalDateTime.ofInstant(estado.recuperableDesde().toInstant(), ZONA_LOCAL);
+            System.out.println("Recuperación posible desde: " + desde.format(FORMATO_TIMESTAMP));
+        }
+        if (estado.avisos().isEmpty()) {
+            System.out.println("Sin avisos.");
+        } else {
+            estado.avisos().forEach(aviso -> System.out.println("AVISO: " + aviso));
+        }
+    }
+
+    // 14. Registro de auditoría: historial de un documento o actividad por usuario y fechas
+    private static void mostrarAuditoria() {
+        System.out.println("\n--- REGISTRO DE AUDITORÍA ---");
+        System.out.print("ID del documento (vacío para consultar actividad): ");
+        String id = scanner.nextLine().trim();
+        List<Document> eventos;
+        if (!id.isBlank()) {
+            eventos = documentoRepository.obtenerHistorialAuditoria(id, 50);
+        } else {
+            System.out.print("Usuario (opcional): ");
+            String usuario = scanner.nextLine().trim();
+            System.out.print("Fecha inicial YYYY-MM-DD (opcional): ");
+            String desdeStr = scanner.nextLine().trim();
+            System.out.print("Fecha final YYYY-MM-DD (opcional): ");
+            String hastaStr = scanner.nextLine().trim();
+            try {
+                LocalDateTime desde = desdeStr.isBlank() ? null : LocalDate.parse(desdeStr).atStartOfDay();
+                LocalDateTime hasta = hastaStr.isBlank() ? null : LocalDate.parse(hastaStr).atTime(23, 59, 59, 999_999_999);
+                eventos = documentoRepository.obtenerActividadAuditoria(desde, hasta, usuario, 50);
+            } catch (Exception e) {
+                System.out.println("Formato de fecha inválido.");
+                return;
+            }
+        }
+        if (eventos.isEmpty()) {
+            System.out.println("No hay eventos de auditoría.");
+            return;
+        }
+        for (Document evento : eventos) {
+            Document meta = evento.get("meta", Document.class);
+            LocalDateTime fecha = LocalDateTime.ofInstant(evento.getDate("fecha").toInstant(), ZONA_LOCAL);
+            System.out.printf("  %s  %-18s %-10s %s%n", fecha.format(FORMATO_TIMESTAMP), evento.getString("accion"),
+                    meta.getString("usuario"), meta.getObjectId("docId").toHexString());
+        }
+    }
+
+    // 15. Historial de versiones: lista las versiones registradas y reconstruye la elegida
+    private static void mostrarVersiones() {
+        System.out.println("\n--- VERSIONES DE DOCUMENTO ---");
+        System.out.print("ID del documento: ");
+        String id = scanner.nextLine().trim();
+        List<Integer> versiones = documentoRepository.listarVersiones(id);
+        if (versiones.isEmpty()) {
+            System.out.println("Sin versiones registradas: sólo está disponible la versión vigente.");
+        } else {
+            System.out.println("Versiones registradas: " + versiones);
+        }
+        System.out.print("Versión a consultar (vacío para terminar): ");
+        String versionStr = scanner.nextLine().trim();
+        if (versionStr.isBlank()) {
+            return;
+        }
+        try {
+            Documento doc = documentoRepository.obtenerVersion(id, Integer.parseInt(versionStr));
+            System.out.println(doc != null ? doc : "Versión no disponible.");
+        } catch (NumberFormatException e) {
+            System.out.println("Número de versión inválido.");
+        }
+    }
+
     // 4. Búsqueda por rango de fechas
     private static void buscarPorRangoFechas() {
         System.out.println("\n--- CONSULTA POR RANGO DE FECHAS ---");
@@ -0,0 +1,132 @@
+package org.example.carga;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Properties;
+
+// Parámetros del generador de carga
+// Se leen como pares clave=valor desde la línea de comandos o desde un archivo
+// de propiedades indicado con config=ruta (la línea de comandos tiene prioridad)
+public class ConfiguracionCarga {
+
+    // Modo de generación: lazo cerrado (cada cliente espera su respuesta) o abierto (tasa fija de llegadas)
+    public enum Modo { CERRADO, ABIERTO }
+
+    private int clientes = 16;
+    private int duracionSegundos = 60;
+    private int calentamientoSegundos = 5;
+    private int intervaloSegundos = 5;
+    private Modo modo = Modo.CERRADO;
+    private double tasaObjetivo = 0;
+    private final Map<Operacion, Integer> mezcla = new EnumMap<>(Operacion.class);
+    private DistribucionTamano tamanoTitulo = DistribucionTamano.parse("uniforme:16-128");
+    private DistribucionTamano tamanoAdjunto = DistribucionTamano.parse("lognormal:32k:1.0");
+    private double probabilidadAdjunto = 0.5;
+    private int autores = 50;
+    private int idsActivos = 10_000;
+    private int colaMaxima = 100_000;
+
+    public ConfiguracionCarga() {
+        parseMezcla("crear:30,consultar:35,actualizar:15,eliminar:5,aprobar:5,descargar:10");
+    }
+
+    // Construye la configuración a partir de argumentos clave=valor
+    public static ConfiguracionCarga desdeArgumentos(String[] args) {
+        Properties propiedades = new Properties();
+        for (String arg : args) {
+            String limpio = arg.startsWith("--") ? arg.substring(2) : arg;
+            int separador = limpio.indexOf('=');
+            if (separador <= 0) {
+                throw new IllegalArgumentException("Argumento inválido (se esperaba clave=valor): " + arg);
+            }
+            propiedades.setProperty(limpio.substring(0, separador).trim(), limpio.substring(separador + 1).trim());
+        }
+
+        Properties efectivas = new Properties();
+        String archivo = propiedades.getProperty("config");
+        if (archivo != null) {
+            try (InputStream input = new FileInputStream(archivo)) {
+                efectivas.load(input);
+            } catch (IOException e) {
+                throw new RuntimeException("Error al cargar la configuración de carga: " + archivo, e);
+            }
+        }
+        efectivas.putAll(propiedades);
+        return desdePropiedades(efectivas);
+    }
+
+    static ConfiguracionCarga desdePropiedades(Properties p) {
+        ConfiguracionCarga c = new ConfiguracionCarga();
+        c.clientes = Integer.parseInt(p.getProperty("clientes", String.valueOf(c.clientes)));
+        c.duracionSegundos = Integer.parseInt(p.getProperty("duracion", String.valueOf(c.duracionSegundos)));
+        c.calentamientoSegundos = Integer.parseInt(p.getProperty("calentamiento", String.valueOf(c.calentamientoSegundos)));
+        c.intervaloSegundos = Integer.parseInt(p.getProperty("intervalo", String.valueOf(c.intervaloSegundos)));
+        c.modo = Modo.valueOf(p.getProperty("modo", c.modo.name()).toUpperCase());
+        c.tasaObjetivo = Double.parseDouble(p.getProperty("tasa", String.valueOf(c.tasaObjetivo)));
+        if (p.containsKey("mezcla")) c.parseMezcla(p.getProperty("mezcla"));
+        if (p.containsKey("tamanoTitulo")) c.tamanoTitulo = DistribucionTamano.parse(p.getProperty("tamanoTitulo"));
+        if (p.containsKey("tamanoAdjunto")) c.tamanoAdjunto = DistribucionTamano.parse(p.getProperty("tamanoAdjunto"));
+        c.probabilidadAdjunto = Double.parseDouble(p.getProperty("probAdjunto", String.valueOf(c.probabilidadAdjunto)));
+        c.autores = Integer.parseInt(p.getProperty("autores", String.valueOf(c.autores)));
+        c.idsActivos = Integer.parseInt(p.getProperty("idsActivos", String.valueOf(c.idsActivos)));
+        c.colaMaxima = Integer.parseInt(p.getProperty("colaMaxima", String.valueOf(c.colaMaxima)));
+
+        if (c.clientes <= 0) throw new IllegalArgumentException("clientes debe ser mayor que cero");
+        if (c.intervaloSegundos <= 0) throw new IllegalArgumentException("intervalo debe ser mayor que cero");
+        if (c.modo == Modo.ABIERTO && c.tasaObjetivo <= 0) {
+            throw new IllegalArgumentException("El modo abierto requiere una tasa objetivo (tasa=ops/s)");
+        }
+        return c;
+    }
+
+    // Formato: operacion:peso separados por comas (p.ej. crear:30,consultar:70)
+    private void parseMezcla(String especificacion) {
+        mezcla.clear();
+        for (String entrada : especificacion.split(",")) {
+            String[] partes = entrada.trim().split(":");
+            if (partes.length != 2) {
+                throw new IllegalArgumentException("Entrada de mezcla inválida: " + entrada);
+            }
+            int peso = Integer.parseInt(partes[1].trim());
+            if (peso > 0) {
+                mezcla.put(Operacion.valueOf(partes[0].trim().toUpperCase()), peso);
+            }
+        }
+        if (mezcla.isEmpty()) {
+            throw new IllegalArgumentException("La mezcla de operaciones no puede estar vacía");
+        }
+    }
+
+    // Getters
+    public int getClientes() { return clientes; }
+    public int getDuracionSegundos() { return duracionSegundos; }
+    public int getCalentamientoSegundos() { return calentamientoSegundos; }
+    public int getIntervaloSegundos() { return intervaloSegundos; }
+    public Modo getModo() { return modo; }
+    public double getTasaObjetivo() { return tasaObjetivo; }
+    public Map<Operacion, Integer> getMezcla() { return mezcla; }
+    public DistribucionTamano getTamanoTitulo() { return tamanoTitulo; }
+    public DistribucionTamano getTamanoAdjunto() { return tamanoAdjunto; }
+    public double getProbabilidadAdjunto() { return probabilidadAdjunto; }
+    public int getAutores() { return autores; }
+    public int getIdsActivos() { return idsActivos; }
+    public int getColaMaxima() { return colaMaxima; }
+
+    @Override
+    public String toString() {
+        return "ConfiguracionCarga{" +
+                "clientes=" + clientes +
+                ", modo=" + modo +
+                ", tasa=" + tasaObjetivo +
+                ", duracion=" + duracionSegundos + "s" +
+                ", calentamiento=" + calentamientoSegundos + "s" +
+                ", mezcla=" + mezcla +
+                ", tamanoTitulo=" + tamanoTitulo +
+                ", tamanoAdjunto=" + tamanoAdjunto +
+                ", probAdjunto=" + probabilidadAdjunto +
+                '}';
+    }
+}
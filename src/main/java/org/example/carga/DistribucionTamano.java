@@ -0,0 +1,78 @@
+package org.example.carga;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+// Distribución de tamaños (en bytes o caracteres) para documentos y adjuntos sintéticos
+// Formatos admitidos: "fija:4k", "uniforme:1k-64k", "lognormal:32k:1.0"
+public class DistribucionTamano {
+    private enum Tipo { FIJA, UNIFORME, LOGNORMAL }
+
+    private final Tipo tipo;
+    private final long a;
+    private final long b;
+    private final double sigma;
+
+    private DistribucionTamano(Tipo tipo, long a, long b, double sigma) {
+        this.tipo = tipo;
+        this.a = a;
+        this.b = b;
+        this.sigma = sigma;
+    }
+
+    // Interpreta la especificación textual de la distribución
+    public static DistribucionTamano parse(String especificacion) {
+        String[] partes = especificacion.trim().toLowerCase().split(":");
+        try {
+            switch (partes[0]) {
+                case "fija":
+                    return new DistribucionTamano(Tipo.FIJA, parseBytes(partes[1]), 0, 0);
+                case "uniforme": {
+                    String[] rango = partes[1].split("-");
+                    long min = parseBytes(rango[0]);
+                    long max = parseBytes(rango[1]);
+                    if (max < min) throw new IllegalArgumentException("rango invertido");
+                    return new DistribucionTamano(Tipo.UNIFORME, min, max, 0);
+                }
+                case "lognormal": {
+                    long mediana = parseBytes(partes[1]);
+                    double s = partes.length > 2 ? Double.parseDouble(partes[2]) : 1.0;
+                    return new DistribucionTamano(Tipo.LOGNORMAL, mediana, 0, s);
+                }
+                default:
+                    throw new IllegalArgumentException("tipo desconocido: " + partes[0]);
+            }
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+            throw new IllegalArgumentException("Distribución de tamaño inválida: " + especificacion, e);
+        }
+    }
+
+    // Convierte valores con sufijo k/m/g a bytes
+    static long parseBytes(String valor) {
+        String v = valor.trim().toLowerCase();
+        long multiplicador = 1;
+        if (v.endsWith("k")) multiplicador = 1024L;
+        else if (v.endsWith("m")) multiplicador = 1024L * 1024;
+        else if (v.endsWith("g")) multiplicador = 1024L * 1024 * 1024;
+        if (multiplicador > 1) v = v.substring(0, v.length() - 1);
+        return Long.parseLong(v) * multiplicador;
+    }
+
+    // Obtiene una muestra de la distribución
+    public long muestrear() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return switch (tipo) {
+            case FIJA -> a;
+            case UNIFORME -> a == b ? a : random.nextLong(a, b + 1);
+            case LOGNORMAL -> Math.max(0, Math.round(a * Math.exp(sigma * random.nextGaussian())));
+        };
+    }
+
+    @Override
+    public String toString() {
+        return switch (tipo) {
+            case FIJA -> "fija:" + a;
+            case UNIFORME -> "uniforme:" + a + "-" + b;
+            case LOGNORMAL -> "lognormal:" + a + ":" + sigma;
+        };
+    }
+}
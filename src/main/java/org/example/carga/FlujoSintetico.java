@@ -0,0 +1,49 @@
+package org.example.carga;
+
+import java.io.InputStream;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Flujo de entrada de longitud fija con contenido pseudoaleatorio
+// Reutiliza un bloque compartido para no asignar memoria proporcional al tamaño del adjunto
+class FlujoSintetico extends InputStream {
+    private static final byte[] BLOQUE = new byte[64 * 1024];
+
+    static {
+        ThreadLocalRandom.current().nextBytes(BLOQUE);
+    }
+
+    private final long longitud;
+    private final int desplazamiento;
+    private long leidos;
+
+    FlujoSintetico(long longitud) {
+        this.longitud = longitud;
+        this.desplazamiento = ThreadLocalRandom.current().nextInt(BLOQUE.length);
+    }
+
+    @Override
+    public int read() {
+        if (leidos >= longitud) return -1;
+        return BLOQUE[(int) ((desplazamiento + leidos++) % BLOQUE.length)] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] destino, int offset, int len) {
+        if (leidos >= longitud) return -1;
+        int n = (int) Math.min(len, longitud - leidos);
+        int copiados = 0;
+        while (copiados < n) {
+            int inicio = (int) ((desplazamiento + leidos) % BLOQUE.length);
+            int trozo = Math.min(n - copiados, BLOQUE.length - inicio);
+            System.arraycopy(BLOQUE, inicio, destino, offset + copiados, trozo);
+            copiados += trozo;
+            leidos += trozo;
+        }
+        return n;
+    }
+
+    @Override
+    public int available() {
+        return (int) Math.min(Integer.MAX_VALUE, longitud - leidos);
+    }
+}
@@ -0,0 +1,400 @@
+package org.example.carga;
+
+import org.bson.types.ObjectId;
+import org.example.config.ArranqueMongo;
+import org.example.config.MongoConfig;
+import org.example.metrics.Histograma;
+import org.example.model.Documento;
+import org.example.repository.DocumentoRepository;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+// Generador de carga configurable sobre DocumentoRepository
+// Ejecuta una mezcla ponderada de operaciones desde N clientes concurrentes, en lazo
+// cerrado o abierto, y reporta throughput y percentiles de latencia por intervalo.
+// Uso: java org.example.carga.GeneradorCarga clientes=32 modo=abierto tasa=500 duracion=120
+public class GeneradorCarga {
+    private static final long LATENCIA_MAXIMA_US = TimeUnit.HOURS.toMicros(1);
+    private static final String[] TIPOS = {"PDF", "DOC", "IMAGEN", "VIDEO", "TXT"};
+    private static final char[] ALFABETO = "abcdefghijklmnopqrstuvwxyz ".toCharArray();
+
+    private final ConfiguracionCarga config;
+    private final DocumentoRepository repositorio;
+
+    // Selección ponderada de operaciones
+    private final Operacion[] operaciones;
+    private final int[] pesosAcumulados;
+
+    // Métricas por intervalo y acumuladas
+    private final Map<Operacion, Histograma> latenciasIntervalo = new EnumMap<>(Operacion.class);
+    private final Map<Operacion, Histograma> latenciasTotales = new EnumMap<>(Operacion.class);
+    private final Map<Operacion, LongAdder> erroresIntervalo = new EnumMap<>(Operacion.class);
+    private final Map<Operacion, LongAdder> erroresTotales = new EnumMap<>(Operacion.class);
+    private final Map<Operacion, LongAdder> rechazadasTotales = new EnumMap<>(Operacion.class);
+    private final LongAdder descartadas = new LongAdder();
+
+    // Identificadores de documentos creados durante la prueba (anillo acotado)
+    private final AtomicReferenceArray<ObjectId> idsActivos;
+    private final AtomicLong cursorIds = new AtomicLong();
+
+    private volatile boolean activo = true;
+    private volatile boolean midiendo = false;
+    private volatile long inicioMedicion;
+
+    public GeneradorCarga(ConfiguracionCarga config, DocumentoRepository repositorio) {
+        this.config = config;
+        this.repositorio = repositorio;
+        this.idsActivos = new AtomicReferenceArray<>(Math.max(1, config.getIdsActivos()));
+
+        Map<Operacion, Integer> mezcla = config.getMezcla();
+        this.operaciones = mezcla.keySet().toArray(new Operacion[0]);
+        this.pesosAcumulados = new int[operaciones.length];
+        int acumulado = 0;
+        for (int i = 0; i < operaciones.length; i++) {
+            acumulado += mezcla.get(operaciones[i]);
+            pesosAcumulados[i] = acumulado;
+        }
+
+        for (Operacion op : Operacion.values()) {
+            latenciasIntervalo.put(op, new Histograma(LATENCIA_MAXIMA_US));
+            latenciasTotales.put(op, new Histograma(LATENCIA_MAXIMA_US));
+            erroresIntervalo.put(op, new LongAdder());
+            erroresTotales.put(op, new LongAdder());
+            rechazadasTotales.put(op, new LongAdder());
+        }
+    }
+
+    // Punto de entrada del generador de carga
+    public static void main(String[] args) throws InterruptedException {
+        ConfiguracionCarga config = ConfiguracionCarga.desdeArgumentos(args);
+        DocumentoRepository repositorio = new DocumentoRepository();
+        try {
+            // La carga empieza con el pool ya calentado y los índices verificados
+            ArranqueMongo.esperarListo(Duration.ofMinutes(2));
+            repositorio.verificarIndicesEnSegundoPlano().join();
+            new GeneradorCarga(config, repositorio).ejecutar();
+        } finally {
+            repositorio.cerrar();
+            MongoConfig.closeMongoClient();
+        }
+    }
+
+    // === CICLO DE EJECUCIÓN ===
+
+    public void ejecutar() throws InterruptedException {
+        System.out.println("=== GENERADOR DE CARGA DOCMANAGENOSQL ===");
+        System.out.println(config);
+
+        List<Thread> hilos = new ArrayList<>();
+        ThreadPoolExecutor ejecutorAbierto = null;
+        long inicio = System.nanoTime();
+
+        if (config.getModo() == ConfiguracionCarga.Modo.ABIERTO) {
+            ejecutorAbierto = new ThreadPoolExecutor(config.getClientes(), config.getClientes(),
+                    0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(config.getColaMaxima()),
+                    r -> crearHilo(r, "carga-cliente"));
+            ThreadPoolExecutor ejecutor = ejecutorAbierto;
+            hilos.add(crearHilo(() -> despacharLazoAbierto(ejecutor, inicio), "carga-despachador"));
+        } else {
+            for (int i = 0; i < config.getClientes(); i++) {
+                int cliente = i;
+                hilos.add(crearHilo(() -> clienteLazoCerrado(cliente, inicio), "carga-cliente-" + i));
+            }
+        }
+        hilos.forEach(Thread::start);
+
+        // Fase de calentamiento sin registro de métricas
+        if (config.getCalentamientoSegundos() > 0) {
+            System.out.println("Calentamiento durante " + config.getCalentamientoSegundos() + " s...");
+            Thread.sleep(TimeUnit.SECONDS.toMillis(config.getCalentamientoSegundos()));
+        }
+        inicioMedicion = System.nanoTime();
+        midiendo = true;
+
+        ScheduledExecutorService reportero = Executors.newSingleThreadScheduledExecutor(
+                r -> crearHilo(r, "carga-reporte"));
+        reportero.scheduleAtFixedRate(this::reportarIntervalo,
+                config.getIntervaloSegundos(), config.getIntervaloSegundos(), TimeUnit.SECONDS);
+        imprimirCabecera();
+
+        Thread.sleep(TimeUnit.SECONDS.toMillis(config.getDuracionSegundos()));
+        activo = false;
+        reportero.shutdown();
+        reportero.awaitTermination(config.getIntervaloSegundos(), TimeUnit.SECONDS);
+
+        for (Thread hilo : hilos) {
+            hilo.join(TimeUnit.SECONDS.toMillis(30));
+        }
+        if (ejecutorAbierto != null) {
+            ejecutorAbierto.shutdown();
+            ejecutorAbierto.awaitTermination(30, TimeUnit.SECONDS);
+        }
+        midiendo = false;
+
+        reportarIntervalo();
+        imprimirResumen();
+    }
+
+    // Lazo abierto: las llegadas siguen la tasa objetivo con independencia de las respuestas.
+    // La latencia se mide desde el instante programado para no ocultar colas (omisión coordinada).
+    private void despacharLazoAbierto(ThreadPoolExecutor ejecutor, long inicio) {
+        long periodo = (long) (TimeUnit.SECONDS.toNanos(1) / config.getTasaObjetivo());
+        long siguiente = inicio;
+        while (activo) {
+            esperarHasta(siguiente);
+            long programado = siguiente;
+            try {
+                ejecutor.execute(() -> ejecutarMedida(seleccionarOperacion(), programado));
+            } catch (RejectedExecutionException e) {
+                descartadas.increment();
+            }
+            siguiente += periodo;
+        }
+    }
+
+    // Lazo cerrado: cada cliente emite la siguiente operación al recibir la respuesta,
+    // opcionalmente limitado a su parte de la tasa objetivo
+    private void clienteLazoCerrado(int cliente, long inicio) {
+        boolean limitado = config.getTasaObjetivo() > 0;
+        long periodo = limitado
+                ? (long) (TimeUnit.SECONDS.toNanos(1) * config.getClientes() / config.getTasaObjetivo())
+                : 0;
+        long siguiente = inicio + (limitado ? periodo * cliente / config.getClientes() : 0);
+        while (activo) {
+            if (limitado) {
+                esperarHasta(siguiente);
+                ejecutarMedida(seleccionarOperacion(), siguiente);
+                siguiente += periodo;
+            } else {
+                ejecutarMedida(seleccionarOperacion(), System.nanoTime());
+            }
+        }
+    }
+
+    private void ejecutarMedida(Operacion operacion, long inicioProgramado) {
+        boolean error = false;
+        boolean exito = false;
+        try {
+            exito = ejecutarOperacion(operacion);
+        } catch (Exception e) {
+            error = true;
+        }
+        long latenciaUs = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - inicioProgramado);
+        if (!midiendo) return;
+
+        latenciasIntervalo.get(operacion).registrar(latenciaUs);
+        if (error) {
+            erroresIntervalo.get(operacion).increment();
+        } else if (!exito) {
+            rechazadasTotales.get(operacion).increment();
+        }
+    }
+
+    // === OPERACIONES SOBRE EL REPOSITORIO ===
+
+    // Ejecuta la operación indicada; devuelve false si el repositorio la rechazó
+    // (conflicto de versión, documento inexistente, etc.)
+    private boolean ejecutarOperacion(Operacion operacion) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (operacion != Operacion.CREAR && operacion != Operacion.CONSULTAR && cursorIds.get() == 0) {
+            operacion = Operacion.CREAR;
+        }
+
+        switch (operacion) {
+            case CREAR: {
+                Documento documento = new Documento(
+                        textoAleatorio(config.getTamanoTitulo().muestrear()),
+                        "autor-" + random.nextInt(config.getAutores()),
+                        TIPOS[random.nextInt(TIPOS.length)]);
+                if (random.nextDouble() < config.getProbabilidadAdjunto()) {
+                    long tamano = config.getTamanoAdjunto().muestrear();
+                    try (InputStream contenido = new FlujoSintetico(tamano)) {
+                        repositorio.guardarDocumentoConArchivo(documento, contenido, "carga-" + tamano + ".bin");
+                    } catch (java.io.IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                } else {
+                    repositorio.guardarDocumento(documento);
+                }
+                registrarId(documento.getId());
+                return true;
+            }
+            case CONSULTAR: {
+                switch (random.nextInt(4)) {
+                    case 0 -> repositorio.obtenerDocumentosPorAutor("autor-" + random.nextInt(config.getAutores()));
+                    case 1 -> repositorio.obtenerDocumentosPorTipo(TIPOS[random.nextInt(TIPOS.length)]);
+                    case 2 -> {
+                        LocalDateTime ahora = LocalDateTime.now();
+                        repositorio.buscarPorRangoFechas(ahora.minusMinutes(1), ahora);
+                    }
+                    default -> {
+                        ObjectId id = tomarId();
+                        if (id == null) return false;
+                        return repositorio.obtenerDocumentoPorId(id.toHexString()) != null;
+                    }
+                }
+                return true;
+            }
+            case ACTUALIZAR: {
+                ObjectId id = tomarId();
+                if (id == null) return false;
+                Documento documento = repositorio.obtenerDocumentoPorId(id.toHexString());
+                if (documento == null) return false;
+                documento.setTitulo(textoAleatorio(config.getTamanoTitulo().muestrear()));
+                return repositorio.actualizarDocumento(id.toHexString(), documento, documento.getVersion());
+            }
+            case ELIMINAR: {
+                ObjectId id = extraerId();
+                if (id == null) return false;
+                return repositorio.eliminarDocumento(id.toHexString());
+            }
+            case APROBAR: {
+                ObjectId id = tomarId();
+                if (id == null) return false;
+                repositorio.aprobarDocumentoConTransaccion(id.toHexString());
+                return true;
+            }
+            case DESCARGAR: {
+                ObjectId id = tomarId();
+                if (id == null) return false;
+                Documento documento = repositorio.obtenerDocumentoPorId(id.toHexString());
+                if (documento == null) return false;
+                if (documento.getArchivoId() != null) {
+                    repositorio.descargarArchivoAdjunto(documento.getArchivoId(), OutputStream.nullOutputStream());
+                }
+                return true;
+            }
+            default:
+                throw new IllegalStateException("Operación no soportada: " + operacion);
+        }
+    }
+
+    private Operacion seleccionarOperacion() {
+        int r = ThreadLocalRandom.current().nextInt(pesosAcumulados[pesosAcumulados.length - 1]);
+        for (int i = 0; i < pesosAcumulados.length; i++) {
+            if (r < pesosAcumulados[i]) return operaciones[i];
+        }
+        return operaciones[operaciones.length - 1];
+    }
+
+    private void registrarId(ObjectId id) {
+        if (id == null) return;
+        int indice = (int) (cursorIds.getAndIncrement() % idsActivos.length());
+        idsActivos.set(indice, id);
+    }
+
+    private ObjectId tomarId() {
+        long ocupados = Math.min(cursorIds.get(), idsActivos.length());
+        if (ocupados == 0) return null;
+        return idsActivos.get(ThreadLocalRandom.current().nextInt((int) ocupados));
+    }
+
+    // Retira un identificador del anillo para que no vuelva a usarse tras eliminarlo
+    private ObjectId extraerId() {
+        long ocupados = Math.min(cursorIds.get(), idsActivos.length());
+        if (ocupados == 0) return null;
+        int indice = ThreadLocalRandom.current().nextInt((int) ocupados);
+        return idsActivos.getAndSet(indice, null);
+    }
+
+    private static String textoAleatorio(long longitud) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        char[] texto = new char[(int) Math.max(1, Math.min(longitud, 16 * 1024))];
+        for (int i = 0; i < texto.length; i++) {
+            texto[i] = ALFABETO[random.nextInt(ALFABETO.length)];
+        }
+        return new String(texto);
+    }
+
+    // === REPORTES ===
+
+    private void imprimirCabecera() {
+        System.out.printf("%-8s %-11s %10s %10s %10s %10s %10s %8s%n",
+                "tiempo", "operacion", "ops/s", "p50(ms)", "p99(ms)", "p999(ms)", "max(ms)", "errores");
+    }
+
+    // Imprime las métricas del último intervalo y las acumula en los totales.
+    // Sigue reportando durante una conmutación por error del primario: las operaciones
+    // que fallan se contabilizan como errores y la latencia de las reintentadas se refleja en las colas.
+    private synchronized void reportarIntervalo() {
+        long transcurrido = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - inicioMedicion);
+        Histograma totalIntervalo = new Histograma(LATENCIA_MAXIMA_US);
+        long erroresTotalesIntervalo = 0;
+        for (Operacion op : Operacion.values()) {
+            Histograma intervalo = new Histograma(LATENCIA_MAXIMA_US);
+            latenciasIntervalo.get(op).transferirA(intervalo);
+            long errores = erroresIntervalo.get(op).sumThenReset();
+            erroresTotales.get(op).add(errores);
+            latenciasTotales.get(op).agregar(intervalo);
+            totalIntervalo.agregar(intervalo);
+            erroresTotalesIntervalo += errores;
+            if (intervalo.getTotal() > 0 || errores > 0) {
+                imprimirFila(transcurrido + "s", op.name(), intervalo, errores, config.getIntervaloSegundos());
+            }
+        }
+        imprimirFila(transcurrido + "s", "TOTAL", totalIntervalo, erroresTotalesIntervalo, config.getIntervaloSegundos());
+        long perdidas = descartadas.sumThenReset();
+        if (perdidas > 0) {
+            System.out.println("         Llegadas descartadas por cola llena: " + perdidas);
+        }
+    }
+
+    private void imprimirResumen() {
+        System.out.println("\n=== RESUMEN DE LA PRUEBA ===");
+        imprimirCabecera();
+        Histograma global = new Histograma(LATENCIA_MAXIMA_US);
+        long erroresGlobales = 0;
+        for (Operacion op : Operacion.values()) {
+            Histograma total = latenciasTotales.get(op);
+            long errores = erroresTotales.get(op).sum();
+            global.agregar(total);
+            erroresGlobales += errores;
+            if (total.getTotal() > 0 || errores > 0) {
+                imprimirFila("total", op.name(), total, errores, config.getDuracionSegundos());
+                long rechazadas = rechazadasTotales.get(op).sum();
+                if (rechazadas > 0) {
+                    System.out.println("         " + op + " rechazadas por el repositorio: " + rechazadas);
+                }
+            }
+        }
+        imprimirFila("total", "TOTAL", global, erroresGlobales, config.getDuracionSegundos());
+    }
+
+    private static void imprimirFila(String tiempo, String operacion, Histograma h, long errores, int segundos) {
+        System.out.printf("%-8s %-11s %10.1f %10.2f %10.2f %10.2f %10.2f %8d%n",
+                tiempo, operacion,
+                (double) h.getTotal() / Math.max(1, segundos),
+                h.percentil(50) / 1000.0,
+                h.percentil(99) / 1000.0,
+                h.percentil(99.9) / 1000.0,
+                h.getMaximo() / 1000.0,
+                errores);
+    }
+
+    // === UTILIDADES ===
+
+    private static void esperarHasta(long instanteNanos) {
+        long restante;
+        while ((restante = instanteNanos - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(restante);
+        }
+    }
+
+    private static Thread crearHilo(Runnable tarea, String nombre) {
+        Thread hilo = new Thread(tarea, nombre);
+        hilo.setDaemon(true);
+        return hilo;
+    }
+}
@@ -0,0 +1,11 @@
+package org.example.carga;
+
+// Operaciones del repositorio que puede ejercitar el generador de carga
+public enum Operacion {
+    CREAR,
+    CONSULTAR,
+    ACTUALIZAR,
+    ELIMINAR,
+    APROBAR,
+    DESCARGAR
+}
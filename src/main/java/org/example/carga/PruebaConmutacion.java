@@ -0,0 +1,463 @@
+package org.example.carga;
+
+import com.mongodb.MongoException;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.connection.ServerDescription;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.example.config.ArranqueMongo;
+import org.example.config.MongoConfig;
+import org.example.metrics.Histograma;
+import org.example.metrics.MonitorReplica;
+import org.example.model.Documento;
+import org.example.repository.ConsultaDocumentos;
+import org.example.repository.DisposicionCampos;
+import org.example.repository.DocumentoRepository;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+// Prueba de conmutación por error del réplica set
+// Mantiene una carga continua de escrituras y lecturas sobre DocumentoRepository, provoca la caída
+// del primario (replSetStepDown, shutdown o kill -9 del proceso) y mide, por franjas de resolucionMs,
+// el mayor intervalo sin operaciones completadas de cada tipo, el tiempo hasta que el cliente ve un
+// primario nuevo y los reintentos de la aplicación. Al terminar cada repetición comprueba las
+// escrituras perdidas (confirmadas pero ausentes) y duplicadas (reintentadas tras un fallo cuya
+// primera escritura sí se aplicó). Los timeouts y reintentos del cliente se ajustan en la cadena de
+// conexión (-Dmongodb.connection.string=...) para comparar su efecto entre ejecuciones.
+// Uso: java org.example.carga.PruebaConmutacion provocacion=stepdown escritores=8 lectores=8
+//      [calentamiento=10 observacion=30 repeticiones=3 resolucionMs=10 reintentos=100
+//       esperaReintentoMs=50 reinicio="./start_replica.sh iniciar"]
+public class PruebaConmutacion {
+    private static final long LATENCIA_MAXIMA_US = TimeUnit.MINUTES.toMicros(10);
+    private static final int IDS_LECTURA = 10_000;
+
+    // Forma de provocar la conmutación: cesión ordenada, apagado forzoso o muerte del proceso
+    public enum Provocacion { STEPDOWN, APAGAR, MATAR }
+
+    // Mayor intervalo sin éxitos; inicioMs es relativo al instante del fallo
+    public record Ventana(long inicioMs, long duracionMs) { }
+
+    // Resultado de una repetición
+    public record Resultado(String primarioAnterior, String primarioNuevo, long eleccionMs,
+                            Ventana escritura, Ventana lectura, long reintentos, long perdidas, long duplicadas) { }
+
+    // Éxitos por franja de tiempo, fallos, reintentos y latencias (incluidos los reintentos) de un tipo de operación
+    private static class Estadisticas {
+        final AtomicIntegerArray exitosPorFranja;
+        final LongAdder exitos = new LongAdder();
+        final LongAdder fallos = new LongAdder();
+        final LongAdder reintentos = new LongAdder();
+        final LongAdder abandonadas = new LongAdder();
+        final Histograma latencias = new Histograma(LATENCIA_MAXIMA_US);
+
+        Estadisticas(int franjas) {
+            this.exitosPorFranja = new AtomicIntegerArray(franjas);
+        }
+
+        void registrarExito(int franja, long latenciaUs) {
+            if (franja < exitosPorFranja.length()) {
+                exitosPorFranja.incrementAndGet(franja);
+            }
+            exitos.increment();
+            latencias.registrar(latenciaUs);
+        }
+
+        // Mayor racha de franjas vacías en [desde, hasta), con su inicio relativo a la franja del fallo
+        Ventana mayorHueco(int desde, int hasta, int franjaFallo, int resolucionMs) {
+            int mejorInicio = franjaFallo;
+            int mejorLongitud = 0;
+            int inicio = -1;
+            for (int i = Math.max(0, desde); i <= Math.min(hasta, exitosPorFranja.length()); i++) {
+                boolean vacia = i < Math.min(hasta, exitosPorFranja.length()) && exitosPorFranja.get(i) == 0;
+                if (vacia && inicio < 0) {
+                    inicio = i;
+                } else if (!vacia && inicio >= 0) {
+                    if (i - inicio > mejorLongitud) {
+                        mejorLongitud = i - inicio;
+                        mejorInicio = inicio;
+                    }
+                    inicio = -1;
+                }
+            }
+            return new Ventana((long) (mejorInicio - franjaFallo) * resolucionMs, (long) mejorLongitud * resolucionMs);
+        }
+    }
+
+    private final DocumentoRepository repositorio;
+    private final MongoClient cliente;
+    private final Provocacion provocacion;
+    private final int escritores;
+    private final int lectores;
+    private final int calentamientoSegundos;
+    private final int observacionSegundos;
+    private final int repeticiones;
+    private final int resolucionMs;
+    private final int maxReintentos;
+    private final long esperaReintentoMs;
+    private final String reinicio;
+    private final MonitorReplica monitor;
+
+    // Estado de la repetición en curso
+    private volatile boolean activo;
+    private volatile long inicioNanos;
+    private volatile Estadisticas escrituras;
+    private volatile Estadisticas lecturas;
+    private final Set<String> confirmadas = ConcurrentHashMap.newKeySet();
+    private final Set<String> inciertas = ConcurrentHashMap.newKeySet();
+    private final AtomicReferenceArray<ObjectId> idsConfirmados = new AtomicReferenceArray<>(IDS_LECTURA);
+    private final AtomicLong cursorIds = new AtomicLong();
+    private final LongAdder lecturasSinDocumento = new LongAdder();
+
+    public PruebaConmutacion(DocumentoRepository repositorio, MongoClient cliente, Properties p) {
+        this.repositorio = repositorio;
+        this.cliente = cliente;
+        this.provocacion = Provocacion.valueOf(p.getProperty("provocacion", "stepdown").toUpperCase(Locale.ROOT));
+        this.escritores = Integer.parseInt(p.getProperty("escritores", "8"));
+        this.lectores = Integer.parseInt(p.getProperty("lectores", "8"));
+        this.calentamientoSegundos = Integer.parseInt(p.getProperty("calentamiento", "10"));
+        this.observacionSegundos = Integer.parseInt(p.getProperty("observacion", "30"));
+        this.repeticiones = Integer.parseInt(p.getProperty("repeticiones", "1"));
+        this.resolucionMs = Integer.parseInt(p.getProperty("resolucionMs", "10"));
+        this.maxReintentos = Integer.parseInt(p.getProperty("reintentos", "100"));
+        this.esperaReintentoMs = Long.parseLong(p.getProperty("esperaReintentoMs", "50"));
+        this.reinicio = p.getProperty("reinicio", "");
+        if (escritores <= 0) throw new IllegalArgumentException("escritores debe ser mayor que cero");
+        if (lectores < 0) throw new IllegalArgumentException("lectores no puede ser negativo");
+        if (observacionSegundos <= 0) throw new IllegalArgumentException("observacion debe ser mayor que cero");
+        if (resolucionMs <= 0) throw new IllegalArgumentException("resolucionMs debe ser mayor que cero");
+        // Sólo se usa para muestrear a demanda la salud de los miembros
+        this.monitor = new MonitorReplica(cliente, 0, Double.MAX_VALUE, 0);
+    }
+
+    // Punto de entrada de la prueba de conmutación
+    public static void main(String[] args) throws InterruptedException {
+        Properties p = new Properties();
+        for (String arg : args) {
+            String limpio = arg.startsWith("--") ? arg.substring(2) : arg;
+            int separador = limpio.indexOf('=');
+            if (separador <= 0) {
+                throw new IllegalArgumentException("Argumento inválido (se esperaba clave=valor): " + arg);
+            }
+            p.setProperty(limpio.substring(0, separador).trim(), limpio.substring(separador + 1).trim());
+        }
+
+        DocumentoRepository repositorio = new DocumentoRepository();
+        try {
+            ArranqueMongo.esperarListo(Duration.ofMinutes(2));
+            repositorio.verificarIndicesEnSegundoPlano().join();
+            new PruebaConmutacion(repositorio, MongoConfig.getMongoClient(), p).ejecutar();
+        } finally {
+            repositorio.cerrar();
+            MongoConfig.closeMongoClient();
+        }
+    }
+
+    // === CICLO DE EJECUCIÓN ===
+
+    public List<Resultado> ejecutar() throws InterruptedException {
+        System.out.println("=== PRUEBA DE CONMUTACIÓN POR ERROR ===");
+        System.out.println("Cadena de conexión: " + MongoConfig.getProperties().getProperty("mongodb.connection.string"));
+        System.out.printf("provocacion=%s escritores=%d lectores=%d calentamiento=%ds observacion=%ds "
+                        + "resolucion=%dms reintentos=%d esperaReintento=%dms%n", provocacion, escritores, lectores,
+                calentamientoSegundos, observacionSegundos, resolucionMs, maxReintentos, esperaReintentoMs);
+
+        List<Resultado> resultados = new ArrayList<>();
+        for (int n = 1; n <= repeticiones; n++) {
+            esperarReplicaSana(Duration.ofMinutes(2));
+            resultados.add(ejecutarRepeticion(n));
+            restaurar();
+        }
+        if (resultados.size() > 1) {
+            imprimirResumen(resultados);
+        }
+        return resultados;
+    }
+
+    private Resultado ejecutarRepeticion(int n) throws InterruptedException {
+        // Autor único por repetición: permite verificar después exactamente las escrituras de la prueba
+        String autor = "conmutacion-" + new ObjectId().toHexString();
+        int franjas = (int) ((calentamientoSegundos + observacionSegundos) * 1000L / resolucionMs) + 1;
+        escrituras = new Estadisticas(franjas);
+        lecturas = new Estadisticas(franjas);
+        confirmadas.clear();
+        inciertas.clear();
+        lecturasSinDocumento.reset();
+        cursorIds.set(0);
+        for (int i = 0; i < idsConfirmados.length(); i++) {
+            idsConfirmados.set(i, null);
+        }
+
+        activo = true;
+        inicioNanos = System.nanoTime();
+        List<Thread> hilos = new ArrayList<>();
+        for (int i = 0; i < escritores; i++) {
+            int escritor = i;
+            hilos.add(crearHilo(() -> escribir(autor, escritor), "conmutacion-escritor-" + i));
+        }
+        for (int i = 0; i < lectores; i++) {
+            hilos.add(crearHilo(this::leer, "conmutacion-lector-" + i));
+        }
+        hilos.forEach(Thread::start);
+
+        Thread.sleep(TimeUnit.SECONDS.toMillis(calentamientoSegundos));
+        String anterior = primarioVisible();
+        if (anterior == null) {
+            activo = false;
+            throw new IllegalStateException("El réplica set no tiene primario al provocar la conmutación");
+        }
+        System.out.printf("%n=== REPETICIÓN %d/%d: %s de %s ===%n", n, repeticiones, provocacion, anterior);
+        long falloMs = milisegundosDesdeInicio();
+        provocar(anterior);
+
+        // Primer primario distinto del anterior que el cliente descubre
+        String nuevo = null;
+        long eleccionMs = -1;
+        long finMs = (calentamientoSegundos + observacionSegundos) * 1000L;
+        while (milisegundosDesdeInicio() < finMs) {
+            if (nuevo == null) {
+                String primario = primarioVisible();
+                if (primario != null && !primario.equals(anterior)) {
+                    nuevo = primario;
+                    eleccionMs = milisegundosDesdeInicio() - falloMs;
+                }
+            }
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(resolucionMs));
+        }
+        activo = false;
+        for (Thread hilo : hilos) {
+            hilo.join(TimeUnit.SECONDS.toMillis(60));
+        }
+
+        // Se busca el hueco desde un segundo antes del fallo hasta el final de la observación
+        int franjaFallo = (int) (falloMs / resolucionMs);
+        int desde = franjaFallo - 1000 / resolucionMs;
+        Ventana ventanaEscritura = escrituras.mayorHueco(desde, franjas, franjaFallo, resolucionMs);
+        Ventana ventanaLectura = lectores > 0 ? lecturas.mayorHueco(desde, franjas, franjaFallo, resolucionMs) : new Ventana(0, 0);
+
+        // Verificación de escrituras: confirmadas ausentes y títulos repetidos
+        Map<String, Integer> apariciones = new HashMap<>();
+        repositorio.recorrerDocumentos(ConsultaDocumentos.porAutor(autor), List.of(DisposicionCampos.TITULO), 1000,
+                registro -> apariciones.merge(registro.getString(DisposicionCampos.TITULO), 1, Integer::sum));
+        long perdidas = confirmadas.stream().filter(titulo -> !apariciones.containsKey(titulo)).count();
+        long duplicadas = apariciones.values().stream().mapToLong(veces -> veces - 1).sum();
+        long inciertasAplicadas = inciertas.stream().filter(apariciones::containsKey).count();
+
+        System.out.println(nuevo != null
+                ? "Primario nuevo visible para el cliente: " + nuevo + " tras " + eleccionMs + " ms"
+                : "El cliente no vio un primario nuevo durante la observación");
+        System.out.printf("%-10s %10s %8s %10s %11s %9s %9s %16s %10s%n", "operacion", "ok", "fallos", "reintentos",
+                "abandonadas", "p99(ms)", "max(ms)", "indisponible(ms)", "desde(ms)");
+        imprimirFila("ESCRITURA", escrituras, ventanaEscritura);
+        if (lectores > 0) {
+            imprimirFila("LECTURA", lecturas, ventanaLectura);
+        }
+        System.out.printf("Escrituras confirmadas: %d, perdidas: %d, duplicadas: %d, abandonadas aplicadas: %d de %d%n",
+                confirmadas.size(), perdidas, duplicadas, inciertasAplicadas, inciertas.size());
+        if (lecturasSinDocumento.sum() > 0) {
+            System.out.println("Lecturas de documentos confirmados que no se encontraron: " + lecturasSinDocumento.sum());
+        }
+        return new Resultado(anterior, nuevo, eleccionMs, ventanaEscritura, ventanaLectura,
+                escrituras.reintentos.sum() + lecturas.reintentos.sum(), perdidas, duplicadas);
+    }
+
+    // === CARGA ===
+
+    // Cada escritura lleva un título único; si se agotan los reintentos queda como incierta
+    private void escribir(String autor, int escritor) {
+        long secuencia = 0;
+        while (activo) {
+            String titulo = autor + "-" + escritor + "-" + secuencia++;
+            Documento documento = new Documento(titulo, autor, "TXT");
+            if (ejecutarConReintentos(escrituras, () -> repositorio.guardarDocumento(documento))) {
+                confirmadas.add(titulo);
+                int indice = (int) (cursorIds.getAndIncrement() % idsConfirmados.length());
+                idsConfirmados.set(indice, documento.getId());
+            } else {
+                inciertas.add(titulo);
+            }
+        }
+    }
+
+    // Lecturas por _id de documentos ya confirmados
+    private void leer() {
+        while (activo) {
+            long ocupados = Math.min(cursorIds.get(), idsConfirmados.length());
+            ObjectId id = ocupados == 0 ? null : idsConfirmados.get(ThreadLocalRandom.current().nextInt((int) ocupados));
+            if (id == null) {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(resolucionMs));
+                continue;
+            }
+            ejecutarConReintentos(lecturas, () -> {
+                if (repositorio.obtenerDocumentoPorId(id.toHexString()) == null) {
+                    lecturasSinDocumento.increment();
+                }
+            });
+        }
+    }
+
+    // Reintenta la operación tras cada fallo; la latencia registrada abarca todos los intentos
+    private boolean ejecutarConReintentos(Estadisticas estadisticas, Runnable operacion) {
+        long inicio = System.nanoTime();
+        int intentos = 0;
+        while (true) {
+            try {
+                operacion.run();
+                long fin = System.nanoTime();
+                estadisticas.registrarExito((int) (TimeUnit.NANOSECONDS.toMillis(fin - inicioNanos) / resolucionMs),
+                        TimeUnit.NANOSECONDS.toMicros(fin - inicio));
+                return true;
+            } catch (RuntimeException e) {
+                estadisticas.fallos.increment();
+                if (!activo || intentos >= maxReintentos) {
+                    estadisticas.abandonadas.increment();
+                    return false;
+                }
+                intentos++;
+                estadisticas.reintentos.increment();
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(esperaReintentoMs));
+            }
+        }
+    }
+
+    // === PROVOCACIÓN Y RESTAURACIÓN ===
+
+    private void provocar(String primario) {
+        MongoDatabase admin = cliente.getDatabase("admin");
+        switch (provocacion) {
+            case STEPDOWN -> {
+                try {
+                    // El primario cedido no puede volver a presentarse durante 60 s
+                    admin.runCommand(new Document("replSetStepDown", 60));
+                } catch (MongoException e) {
+                    // Según la versión del servidor, la cesión cierra la conexión que la pidió
+                    System.out.println("replSetStepDown: " + e.getMessage());
+                }
+            }
+            case APAGAR -> {
+                try {
+                    admin.runCommand(new Document("shutdown", 1).append("force", true));
+                } catch (MongoException e) {
+                    // Esperado: el servidor cierra la conexión al apagarse
+                }
+            }
+            case MATAR -> {
+                Document estado = admin.runCommand(new Document("serverStatus", 1));
+                long pid = ((Number) estado.get("pid")).longValue();
+                String host = primario.substring(0, primario.lastIndexOf(':'));
+                try {
+                    if (!InetAddress.getByName(host).isLoopbackAddress()) {
+                        throw new IllegalStateException("provocacion=matar requiere el primario en esta máquina: " + primario);
+                    }
+                    int salida = new ProcessBuilder("kill", "-9", Long.toString(pid)).inheritIO().start().waitFor();
+                    if (salida != 0) {
+                        throw new IllegalStateException("kill -9 " + pid + " terminó con código " + salida);
+                    }
+                } catch (IOException e) {
+                    throw new IllegalStateException("No se pudo matar el proceso del primario", e);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrumpido al matar el proceso del primario", e);
+                }
+            }
+        }
+    }
+
+    // Tras apagar o matar el primario hay que volver a arrancarlo antes de la siguiente repetición
+    private void restaurar() throws InterruptedException {
+        if (provocacion == Provocacion.STEPDOWN) return;
+        if (reinicio.isBlank()) {
+            System.out.println("El antiguo primario sigue detenido: arránquelo (reinicio=<comando>) antes de repetir");
+            return;
+        }
+        System.out.println("Reiniciando el miembro detenido: " + reinicio);
+        try {
+            int salida = new ProcessBuilder("sh", "-c", reinicio).inheritIO().start().waitFor();
+            if (salida != 0) {
+                System.err.println("El comando de reinicio terminó con código " + salida);
+            }
+        } catch (IOException e) {
+            System.err.println("No se pudo ejecutar el comando de reinicio: " + e.getMessage());
+        }
+    }
+
+    // Espera a que todos los miembros estén sanos y haya primario
+    private void esperarReplicaSana(Duration espera) throws InterruptedException {
+        long limite = System.nanoTime() + espera.toNanos();
+        while (true) {
+            try {
+                MonitorReplica.Estado estado = monitor.muestrear();
+                boolean sanos = estado.miembros().stream().allMatch(MonitorReplica.Miembro::sano);
+                boolean conPrimario = estado.miembros().stream().anyMatch(m -> "PRIMARY".equals(m.estado()));
+                if (sanos && conPrimario && primarioVisible() != null) return;
+            } catch (MongoException e) {
+                // Sin primario todavía: se vuelve a intentar
+            }
+            if (System.nanoTime() > limite) {
+                throw new IllegalStateException("El réplica set no está sano tras " + espera.toSeconds() + " s");
+            }
+            Thread.sleep(500);
+        }
+    }
+
+    // Primario según la vista del clúster que mantiene el driver (sin ir al servidor)
+    private String primarioVisible() {
+        return cliente.getClusterDescription().getServerDescriptions().stream()
+                .filter(ServerDescription::isPrimary)
+                .map(descripcion -> descripcion.getAddress().toString())
+                .findFirst().orElse(null);
+    }
+
+    // === REPORTES ===
+
+    private void imprimirFila(String operacion, Estadisticas e, Ventana ventana) {
+        System.out.printf("%-10s %10d %8d %10d %11d %9.2f %9.2f %16d %10d%n", operacion,
+                e.exitos.sum(), e.fallos.sum(), e.reintentos.sum(), e.abandonadas.sum(),
+                e.latencias.percentil(99) / 1000.0, e.latencias.getMaximo() / 1000.0,
+                ventana.duracionMs(), ventana.inicioMs());
+    }
+
+    private static void imprimirResumen(List<Resultado> resultados) {
+        System.out.println("\n=== RESUMEN DE LA PRUEBA ===");
+        System.out.printf("%-4s %-20s %-20s %12s %16s %16s %10s %8s %10s%n", "rep", "primario", "nuevo",
+                "eleccion(ms)", "sinEscritura(ms)", "sinLectura(ms)", "reintentos", "perdidas", "duplicadas");
+        for (int i = 0; i < resultados.size(); i++) {
+            Resultado r = resultados.get(i);
+            System.out.printf("%-4d %-20s %-20s %12d %16d %16d %10d %8d %10d%n", i + 1, r.primarioAnterior(),
+                    r.primarioNuevo() != null ? r.primarioNuevo() : "-", r.eleccionMs(),
+                    r.escritura().duracionMs(), r.lectura().duracionMs(), r.reintentos(), r.perdidas(), r.duplicadas());
+        }
+        System.out.printf("Indisponibilidad máxima: escritura %d ms, lectura %d ms%n",
+                resultados.stream().mapToLong(r -> r.escritura().duracionMs()).max().orElse(0),
+                resultados.stream().mapToLong(r -> r.lectura().duracionMs()).max().orElse(0));
+    }
+
+    // === UTILIDADES ===
+
+    private long milisegundosDesdeInicio() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - inicioNanos);
+    }
+
+    private static Thread crearHilo(Runnable tarea, String nombre) {
+        Thread hilo = new Thread(tarea, nombre);
+        hilo.setDaemon(true);
+        return hilo;
+    }
+}
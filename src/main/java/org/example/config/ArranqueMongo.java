@@ -0,0 +1,142 @@
+package org.example.config;
+
+import com.mongodb.client.MongoClient;
+import com.mongodb.connection.ServerConnectionState;
+import com.mongodb.connection.ServerDescription;
+import org.bson.Document;
+import org.example.metrics.MetricasDriver;
+import org.example.metrics.RegistroMetricas;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+// Arranque en segundo plano del cliente de MongoDB
+// Crea el cliente, comprueba el primario con un ping y espera a que el mantenimiento del pool del
+// driver (mongodb.pool.minimo) abra las conexiones mínimas en cada miembro con datos. Hasta entonces
+// la aplicación no se considera lista: quien atiende tráfico espera la señal con esperarListo().
+// Opcionalmente se crea un archivo (arranque.archivoListo) para sondas externas de disponibilidad.
+public class ArranqueMongo {
+    private static final Logger LOG = LoggerFactory.getLogger(ArranqueMongo.class);
+
+    private static CompletableFuture<Void> listo;
+    private static Path archivoListo;
+
+    // Inicia el arranque si no se había iniciado; devuelve la señal de disponibilidad
+    public static synchronized CompletableFuture<Void> iniciar() {
+        if (listo == null) {
+            listo = new CompletableFuture<>();
+            RegistroMetricas.indicador("arranque.listo", () -> isListo() ? 1 : 0);
+            Thread hilo = new Thread(ArranqueMongo::arrancar, "arranque-mongo");
+            hilo.setDaemon(true);
+            hilo.start();
+        }
+        return listo;
+    }
+
+    public static synchronized boolean isListo() {
+        return listo != null && listo.isDone() && !listo.isCompletedExceptionally();
+    }
+
+    // Bloquea hasta que el cliente está listo (inicia el arranque si hace falta)
+    public static void esperarListo(Duration espera) {
+        try {
+            iniciar().get(espera.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Espera de arranque interrumpida", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Fallo en el arranque de MongoDB: " + e.getCause().getMessage(), e.getCause());
+        } catch (TimeoutException e) {
+            throw new IllegalStateException("MongoDB no está listo tras " + espera.toSeconds() + " s");
+        }
+    }
+
+    // Retira la señal de disponibilidad al cerrar la aplicación
+    static synchronized void detener() {
+        if (archivoListo != null) {
+            try {
+                Files.deleteIfExists(archivoListo);
+            } catch (IOException e) {
+                LOG.warn("No se pudo borrar el archivo de disponibilidad: {}", e.getMessage());
+            }
+            archivoListo = null;
+        }
+    }
+
+    // === SECUENCIA DE ARRANQUE ===
+
+    private static void arrancar() {
+        long inicio = System.nanoTime();
+        Properties propiedades = MongoConfig.getProperties();
+        try {
+            MongoClient cliente = MongoConfig.getMongoClient();
+            cliente.getDatabase("admin").runCommand(new Document("ping", 1));
+            long conexion = System.nanoTime();
+
+            calentarPools(cliente, MongoConfig.getPoolMinimo(),
+                    Long.parseLong(propiedades.getProperty("arranque.esperaMaximaSegundos", "30")));
+
+            String ruta = propiedades.getProperty("arranque.archivoListo", "");
+            if (!ruta.isBlank()) {
+                Path archivo = Paths.get(ruta);
+                Files.writeString(archivo, Long.toString(ProcessHandle.current().pid()));
+                synchronized (ArranqueMongo.class) {
+                    archivoListo = archivo;
+                }
+            }
+            LOG.atInfo()
+                    .addKeyValue("conexionMs", TimeUnit.NANOSECONDS.toMillis(conexion - inicio))
+                    .addKeyValue("totalMs", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - inicio))
+                    .log("Cliente de MongoDB listo");
+            listo.complete(null);
+        } catch (RuntimeException | IOException e) {
+            LOG.error("Fallo en el arranque de MongoDB: {}", e.getMessage());
+            listo.completeExceptionally(e);
+        }
+    }
+
+    // Espera a que cada miembro con datos tenga abiertas al menos 'minimo' conexiones; si se agota
+    // el plazo se avisa y se continúa, porque el pool seguirá calentándose en segundo plano
+    private static void calentarPools(MongoClient cliente, int minimo, long esperaMaximaSegundos) {
+        MetricasDriver metricas = MongoConfig.getMetricasDriver();
+        if (minimo <= 0 || metricas == null) {
+            return;
+        }
+        long plazo = System.nanoTime() + TimeUnit.SECONDS.toNanos(esperaMaximaSegundos);
+        List<String> pendientes = new ArrayList<>();
+        do {
+            pendientes.clear();
+            for (ServerDescription servidor : cliente.getClusterDescription().getServerDescriptions()) {
+                boolean conDatos = servidor.isPrimary() || servidor.isSecondary();
+                if (servidor.getState() == ServerConnectionState.CONNECTED && conDatos
+                        && metricas.getConexionesAbiertas(servidor.getAddress()) < minimo) {
+                    pendientes.add(servidor.getAddress().toString());
+                }
+            }
+            if (pendientes.isEmpty()) {
+                LOG.atInfo().addKeyValue("minimo", minimo).log("Pools de conexiones calentados");
+                return;
+            }
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        } while (System.nanoTime() < plazo);
+        LOG.atWarn().addKeyValue("miembros", pendientes).addKeyValue("minimo", minimo)
+                .log("Plazo de calentamiento agotado; los pools siguen abriendo conexiones");
+    }
+}
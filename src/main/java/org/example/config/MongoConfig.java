@@ -1,24 +1,30 @@
 package org.example.config;
 
+import com.mongodb.ConnectionString;
 import com.mongodb.MongoClientSettings;
 import com.mongodb.client.MongoClient;
 import com.mongodb.client.MongoClients;
 import org.bson.codecs.configuration.CodecRegistry;
 import org.bson.codecs.pojo.PojoCodecProvider;
+import org.example.metrics.MetricasDriver;
+import org.example.metrics.RegistroMetricas;
 import static org.bson.codecs.configuration.CodecRegistries.fromProviders;
 import static org.bson.codecs.configuration.CodecRegistries.fromRegistries;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Properties;
+import java.util.concurrent.TimeUnit;
 
 public class MongoConfig {
     private static MongoClient mongoClient;
     private static String databaseName;
+    private static Properties properties;
+    private static MetricasDriver metricasDriver;
 
-    public static MongoClient getMongoClient() {
+    public static synchronized MongoClient getMongoClient() {
         if (mongoClient == null) {
-            Properties properties = loadProperties();
+            Properties properties = getProperties();
             String connectionString = properties.getProperty("mongodb.connection.string");
             databaseName = properties.getProperty("mongodb.database.name");
 
@@ -27,11 +33,40 @@ public class MongoConfig {
                     fromProviders(PojoCodecProvider.builder().automatic(true).build())
             );
 
-            mongoClient = MongoClients.create(connectionString);
+            // Instrumentación del driver: latencia por comando y estado del pool de conexiones
+            RegistroMetricas.setJmxHabilitado(Boolean.parseBoolean(properties.getProperty("metricas.jmx.habilitado", "true")));
+            metricasDriver = new MetricasDriver();
+            // Mínimo de conexiones por miembro: el mantenimiento del pool las abre en segundo plano
+            int poolMinimo = getPoolMinimo();
+            long mantenimientoMs = Long.parseLong(properties.getProperty("mongodb.pool.mantenimientoMs", "60000"));
+            MongoClientSettings settings = MongoClientSettings.builder()
+                    .applyConnectionString(new ConnectionString(connectionString))
+                    .addCommandListener(metricasDriver)
+                    .applyToConnectionPoolSettings(builder -> {
+                        builder.addConnectionPoolListener(metricasDriver);
+                        if (poolMinimo > 0) {
+                            builder.minSize(poolMinimo)
+                                    .maintenanceFrequency(mantenimientoMs, TimeUnit.MILLISECONDS);
+                        }
+                    })
+                    .build();
+
+            mongoClient = MongoClients.create(settings);
+            RegistroMetricas.iniciarVolcadoPeriodico(
+                    Long.parseLong(properties.getProperty("metricas.volcado.segundos", "0")));
         }
         return mongoClient;
     }
 
+    // Instrumentación del driver (disponible una vez creado el cliente)
+    public static synchronized MetricasDriver getMetricasDriver() {
+        return metricasDriver;
+    }
+
+    public static int getPoolMinimo() {
+        return Integer.parseInt(getProperties().getProperty("mongodb.pool.minimo", "0"));
+    }
+
     public static String getDatabaseName() {
         if (databaseName == null) {
             loadProperties();
@@ -39,6 +74,14 @@ public class MongoConfig {
         return databaseName;
     }
 
+    // Propiedades de configuración cargadas una única vez desde mongodb.properties
+    public static synchronized Properties getProperties() {
+        if (properties == null) {
+            properties = loadProperties();
+        }
+        return properties;
+    }
+
     private static Properties loadProperties() {
         Properties properties = new Properties();
         try (InputStream input = MongoConfig.class.getClassLoader()
@@ -50,10 +93,20 @@ public class MongoConfig {
         } catch (IOException e) {
             throw new RuntimeException("Error al cargar las propiedades de MongoDB", e);
         }
+        // Las propiedades del sistema (-Dclave=valor) prevalecen sobre el archivo, p. ej. para probar
+        // otra cadena de conexión o timeouts del cliente sin recompilar
+        for (String clave : properties.stringPropertyNames()) {
+            String valor = System.getProperty(clave);
+            if (valor != null) {
+                properties.setProperty(clave, valor);
+            }
+        }
         return properties;
     }
 
     public static void closeMongoClient() {
+        ArranqueMongo.detener();
+        RegistroMetricas.detenerVolcadoPeriodico();
         if (mongoClient != null) {
             mongoClient.close();
         }
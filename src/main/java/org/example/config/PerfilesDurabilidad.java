@@ -0,0 +1,144 @@
+package org.example.config;
+
+import com.mongodb.ReadConcern;
+import com.mongodb.ReadConcernLevel;
+import com.mongodb.TransactionOptions;
+import com.mongodb.WriteConcern;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.gridfs.GridFSBucket;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+// Perfiles de durabilidad por operación
+// Cada perfil define el write concern de las escrituras y el read concern de las lecturas, p. ej.:
+//   durabilidad.perfil.SAFE.escritura=w:majority;j:true
+//   durabilidad.perfil.SAFE.lectura=majority
+// y cada operación del repositorio se asigna a un perfil con durabilidad.operacion.<operacion>=SAFE.
+// Las operaciones sin asignar usan durabilidad.operacion.defecto; sin perfil se usa el del cliente.
+public class PerfilesDurabilidad {
+
+    // Perfil con nombre; null en cualquiera de los dos conceptos = valor por defecto del cliente
+    public record Perfil(String nombre, WriteConcern escritura, ReadConcern lectura) { }
+
+    private static final String PREFIJO_PERFIL = "durabilidad.perfil.";
+    private static final String PREFIJO_OPERACION = "durabilidad.operacion.";
+
+    private final Map<String, Perfil> perfiles = new HashMap<>();
+    private final Map<String, Perfil> porOperacion = new HashMap<>();
+    private final Perfil porDefecto;
+
+    public PerfilesDurabilidad(Properties propiedades) {
+        for (String clave : propiedades.stringPropertyNames()) {
+            if (clave.startsWith(PREFIJO_PERFIL) && clave.lastIndexOf('.') > PREFIJO_PERFIL.length()) {
+                String nombre = clave.substring(PREFIJO_PERFIL.length(), clave.lastIndexOf('.'));
+                perfiles.computeIfAbsent(nombre.toUpperCase(Locale.ROOT), n -> new Perfil(n,
+                        parseEscritura(propiedades.getProperty(PREFIJO_PERFIL + nombre + ".escritura")),
+                        parseLectura(propiedades.getProperty(PREFIJO_PERFIL + nombre + ".lectura"))));
+            }
+        }
+        for (String clave : propiedades.stringPropertyNames()) {
+            if (clave.startsWith(PREFIJO_OPERACION)) {
+                porOperacion.put(clave.substring(PREFIJO_OPERACION.length()), buscar(propiedades.getProperty(clave)));
+            }
+        }
+        this.porDefecto = porOperacion.remove("defecto");
+    }
+
+    private Perfil buscar(String nombre) {
+        Perfil perfil = perfiles.get(nombre.trim().toUpperCase(Locale.ROOT));
+        if (perfil == null) {
+            throw new IllegalArgumentException("Perfil de durabilidad no definido: " + nombre);
+        }
+        return perfil;
+    }
+
+    // Perfil asignado a la operación (o el perfil por defecto; null si no hay ninguno)
+    public Perfil perfil(String operacion) {
+        return porOperacion.getOrDefault(operacion, porDefecto);
+    }
+
+    // === APLICACIÓN ===
+
+    // Colección con el write concern y el read concern del perfil de la operación
+    public <T> MongoCollection<T> aplicar(String operacion, MongoCollection<T> coleccion) {
+        Perfil perfil = perfil(operacion);
+        if (perfil == null || coleccion == null) {
+            return coleccion;
+        }
+        if (perfil.escritura() != null) {
+            coleccion = coleccion.withWriteConcern(perfil.escritura());
+        }
+        if (perfil.lectura() != null) {
+            coleccion = coleccion.withReadConcern(perfil.lectura());
+        }
+        return coleccion;
+    }
+
+    public GridFSBucket aplicar(String operacion, GridFSBucket bucket) {
+        Perfil perfil = perfil(operacion);
+        if (perfil == null) {
+            return bucket;
+        }
+        if (perfil.escritura() != null) {
+            bucket = bucket.withWriteConcern(perfil.escritura());
+        }
+        if (perfil.lectura() != null) {
+            bucket = bucket.withReadConcern(perfil.lectura());
+        }
+        return bucket;
+    }
+
+    // Opciones de transacción: dentro de una transacción el servidor ignora los concerns de cada
+    // operación y aplica los de la transacción
+    public TransactionOptions transaccion(String operacion) {
+        Perfil perfil = perfil(operacion);
+        TransactionOptions.Builder opciones = TransactionOptions.builder();
+        if (perfil != null) {
+            if (perfil.escritura() != null) opciones.writeConcern(perfil.escritura());
+            if (perfil.lectura() != null) opciones.readConcern(perfil.lectura());
+        }
+        return opciones.build();
+    }
+
+    // === FORMATO ===
+
+    // Formato: w:<n|majority>;j:<true|false>;wtimeout:<ms> (separadores ';' o ',')
+    static WriteConcern parseEscritura(String texto) {
+        if (texto == null || texto.isBlank()) {
+            return null;
+        }
+        String w = null;
+        Boolean j = null;
+        Long wtimeout = null;
+        for (String parte : texto.split("[;,]")) {
+            String[] claveValor = parte.trim().split(":", 2);
+            if (claveValor.length != 2) {
+                throw new IllegalArgumentException("Write concern inválido: " + texto);
+            }
+            String valor = claveValor[1].trim();
+            switch (claveValor[0].trim().toLowerCase(Locale.ROOT)) {
+                case "w" -> w = valor;
+                case "j" -> j = Boolean.parseBoolean(valor);
+                case "wtimeout" -> wtimeout = Long.parseLong(valor);
+                default -> throw new IllegalArgumentException("Opción de write concern desconocida: " + parte);
+            }
+        }
+        WriteConcern concern = w == null ? WriteConcern.ACKNOWLEDGED
+                : w.chars().allMatch(Character::isDigit) ? new WriteConcern(Integer.parseInt(w)) : new WriteConcern(w);
+        if (j != null) concern = concern.withJournal(j);
+        if (wtimeout != null) concern = concern.withWTimeout(wtimeout, TimeUnit.MILLISECONDS);
+        return concern;
+    }
+
+    // Nivel de read concern: local, majority, available, linearizable o snapshot
+    static ReadConcern parseLectura(String texto) {
+        if (texto == null || texto.isBlank()) {
+            return null;
+        }
+        return new ReadConcern(ReadConcernLevel.fromString(texto.trim()));
+    }
+}
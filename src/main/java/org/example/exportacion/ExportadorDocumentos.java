@@ -0,0 +1,266 @@
+package org.example.exportacion;
+
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.example.config.ArranqueMongo;
+import org.example.config.MongoConfig;
+import org.example.metrics.Contador;
+import org.example.metrics.RegistroMetricas;
+import org.example.repository.ConsultaDocumentos;
+import org.example.repository.DisposicionCampos;
+import org.example.repository.DocumentoRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+// Exportación en streaming de resultados de consultas a JSONL o CSV
+// Los registros se escriben a medida que llegan del cursor (memoria constante sea cual sea el
+// tamaño del resultado) sobre un FileChannel con buffer y, opcionalmente, compresión gzip. Sólo
+// se piden al servidor las columnas exportadas. El archivo se escribe con un nombre temporal y se
+// renombra al terminar, de modo que nunca queda una exportación a medias con el nombre final.
+// Uso: java org.example.exportacion.ExportadorDocumentos consulta=autor valor=Ana formato=csv
+//      salida=ana.csv.gz columnas=id,titulo,fechaCreacion [desde=2024-01-01 hasta=2024-12-31] [lote=2000]
+public class ExportadorDocumentos {
+    private static final Logger LOG = LoggerFactory.getLogger(ExportadorDocumentos.class);
+    private static final int BUFFER_BYTES = 256 * 1024;
+
+    public enum Formato { JSONL, CSV }
+
+    // Columnas exportables: "id" y los campos lógicos del documento
+    public static final String ID = "id";
+    public static final List<String> COLUMNAS = List.of(ID, DisposicionCampos.TITULO, DisposicionCampos.AUTOR,
+            DisposicionCampos.TIPO, DisposicionCampos.FECHA_CREACION, DisposicionCampos.FECHA_MODIFICACION,
+            DisposicionCampos.ESTADO, DisposicionCampos.VERSION, DisposicionCampos.ARCHIVO);
+
+    private final DocumentoRepository repositorio;
+    private final Formato formato;
+    private final List<String> columnas;
+    private final boolean comprimir;
+    private final int tamanoLote;
+
+    private final Contador registrosExportados = RegistroMetricas.contador("exportacion.registros");
+    private final Contador bytesExportados = RegistroMetricas.contador("exportacion.bytes");
+
+    public ExportadorDocumentos(DocumentoRepository repositorio, Formato formato, List<String> columnas,
+                                boolean comprimir, int tamanoLote) {
+        for (String columna : columnas) {
+            if (!COLUMNAS.contains(columna)) {
+                throw new IllegalArgumentException("Columna desconocida: " + columna + " (disponibles: " + COLUMNAS + ")");
+            }
+        }
+        if (tamanoLote <= 0) throw new IllegalArgumentException("lote debe ser mayor que cero");
+        this.repositorio = repositorio;
+        this.formato = formato;
+        this.columnas = columnas.isEmpty() ? COLUMNAS : List.copyOf(columnas);
+        this.comprimir = comprimir;
+        this.tamanoLote = tamanoLote;
+    }
+
+    // Exporta el resultado de la consulta al archivo indicado y devuelve los registros escritos
+    public long exportar(ConsultaDocumentos consulta, Path salida) throws IOException {
+        long inicio = System.nanoTime();
+        Path directorio = salida.toAbsolutePath().getParent();
+        Files.createDirectories(directorio);
+        Path temporal = Files.createTempFile(directorio, ".exportacion", ".tmp");
+        long registros;
+        try {
+            try (FileChannel canal = FileChannel.open(temporal, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                OutputStream flujo = Channels.newOutputStream(canal);
+                if (comprimir) {
+                    flujo = new GZIPOutputStream(flujo, BUFFER_BYTES);
+                }
+                try (Writer escritor = new BufferedWriter(new OutputStreamWriter(flujo, StandardCharsets.UTF_8), BUFFER_BYTES)) {
+                    if (formato == Formato.CSV) {
+                        escribirCabeceraCsv(escritor);
+                    }
+                    // _id siempre llega en la proyección: no se pide como columna
+                    List<String> campos = columnas.stream().filter(c -> !c.equals(ID)).toList();
+                    registros = repositorio.recorrerDocumentos(consulta, campos, tamanoLote, registro -> {
+                        try {
+                            escribir(escritor, registro);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    });
+                } catch (UncheckedIOException e) {
+                    throw e.getCause();
+                }
+            }
+            Files.move(temporal, salida, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temporal);
+        }
+        long bytes = Files.size(salida);
+        registrosExportados.sumar(registros);
+        bytesExportados.sumar(bytes);
+        LOG.atInfo().addKeyValue("registros", registros).addKeyValue("bytes", bytes)
+                .addKeyValue("archivo", salida).addKeyValue("formato", formato)
+                .addKeyValue("duracionMs", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - inicio))
+                .log("Exportación completada");
+        return registros;
+    }
+
+    // === FORMATOS ===
+
+    private void escribir(Writer escritor, Document registro) throws IOException {
+        if (formato == Formato.CSV) {
+            for (int i = 0; i < columnas.size(); i++) {
+                if (i > 0) escritor.write(',');
+                String texto = texto(valor(registro, columnas.get(i)));
+                if (texto != null) {
+                    escritor.write(escaparCsv(texto));
+                }
+            }
+        } else {
+            escritor.write('{');
+            for (int i = 0; i < columnas.size(); i++) {
+                if (i > 0) escritor.write(',');
+                escritor.write('"');
+                escritor.write(columnas.get(i));
+                escritor.write("\":");
+                Object valor = valor(registro, columnas.get(i));
+                if (valor instanceof Number || valor instanceof Boolean) {
+                    escritor.write(valor.toString());
+                } else if (valor == null) {
+                    escritor.write("null");
+                } else {
+                    escribirCadenaJson(escritor, texto(valor));
+                }
+            }
+            escritor.write('}');
+        }
+        escritor.write('\n');
+    }
+
+    private void escribirCabeceraCsv(Writer escritor) throws IOException {
+        escritor.write(String.join(",", columnas));
+        escritor.write('\n');
+    }
+
+    private static Object valor(Document registro, String columna) {
+        return registro.get(columna.equals(ID) ? "_id" : columna);
+    }
+
+    // Representación textual: ObjectId en hexadecimal y fechas en ISO-8601 (UTC)
+    private static String texto(Object valor) {
+        if (valor == null) return null;
+        if (valor instanceof ObjectId id) return id.toHexString();
+        if (valor instanceof Date fecha) return fecha.toInstant().toString();
+        return valor.toString();
+    }
+
+    private static String escaparCsv(String texto) {
+        boolean comillas = false;
+        for (int i = 0; i < texto.length() && !comillas; i++) {
+            char c = texto.charAt(i);
+            comillas = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        return comillas ? '"' + texto.replace("\"", "\"\"") + '"' : texto;
+    }
+
+    private static void escribirCadenaJson(Writer escritor, String texto) throws IOException {
+        escritor.write('"');
+        for (int i = 0; i < texto.length(); i++) {
+            char c = texto.charAt(i);
+            switch (c) {
+                case '"' -> escritor.write("\\\"");
+                case '\\' -> escritor.write("\\\\");
+                case '\n' -> escritor.write("\\n");
+                case '\r' -> escritor.write("\\r");
+                case '\t' -> escritor.write("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        escritor.write(String.format("\\u%04x", (int) c));
+                    } else {
+                        escritor.write(c);
+                    }
+                }
+            }
+        }
+        escritor.write('"');
+    }
+
+    // === LÍNEA DE COMANDOS ===
+
+    public static void main(String[] args) {
+        Properties defecto = MongoConfig.getProperties();
+        Properties p = new Properties();
+        p.setProperty("consulta", "todos");
+        p.setProperty("lote", defecto.getProperty("exportacion.lote", "2000"));
+        for (String arg : args) {
+            String limpio = arg.startsWith("--") ? arg.substring(2) : arg;
+            int separador = limpio.indexOf('=');
+            if (separador <= 0) {
+                throw new IllegalArgumentException("Argumento inválido (se esperaba clave=valor): " + arg);
+            }
+            p.setProperty(limpio.substring(0, separador).trim(), limpio.substring(separador + 1).trim());
+        }
+        if (!p.containsKey("salida")) {
+            throw new IllegalArgumentException("Falta el argumento salida=<archivo>");
+        }
+
+        Path salida = Path.of(p.getProperty("salida"));
+        String nombre = salida.getFileName().toString().toLowerCase(Locale.ROOT);
+        boolean comprimir = Boolean.parseBoolean(p.getProperty("gzip", Boolean.toString(nombre.endsWith(".gz"))));
+        Formato formato = Formato.valueOf(p.getProperty("formato",
+                nombre.contains(".csv") ? "csv" : "jsonl").toUpperCase(Locale.ROOT));
+        List<String> columnas = p.containsKey("columnas")
+                ? Arrays.stream(p.getProperty("columnas").split(",")).map(String::trim).filter(c -> !c.isEmpty()).toList()
+                : new ArrayList<>();
+
+        String valor = p.getProperty("valor");
+        ConsultaDocumentos consulta = switch (p.getProperty("consulta").toLowerCase(Locale.ROOT)) {
+            case "todos" -> ConsultaDocumentos.todos();
+            case "autor" -> ConsultaDocumentos.porAutor(requerido(valor, "valor"));
+            case "tipo" -> ConsultaDocumentos.porTipo(requerido(valor, "valor"));
+            case "rango" -> ConsultaDocumentos.porRango(
+                    p.containsKey("desde") ? LocalDate.parse(p.getProperty("desde")).atStartOfDay() : null,
+                    p.containsKey("hasta") ? LocalDate.parse(p.getProperty("hasta")).atTime(LocalTime.MAX) : null);
+            default -> throw new IllegalArgumentException("consulta debe ser todos, autor, tipo o rango");
+        };
+
+        DocumentoRepository repositorio = new DocumentoRepository();
+        try {
+            ArranqueMongo.esperarListo(Duration.ofMinutes(2));
+            long registros = new ExportadorDocumentos(repositorio, formato, columnas, comprimir,
+                    Integer.parseInt(p.getProperty("lote"))).exportar(consulta, salida);
+            System.out.println("Registros exportados: " + registros + " -> " + salida);
+        } catch (IOException e) {
+            System.err.println("Error en la exportación: " + e.getMessage());
+        } finally {
+            repositorio.cerrar();
+            MongoConfig.closeMongoClient();
+        }
+    }
+
+    private static String requerido(String valor, String nombre) {
+        if (valor == null || valor.isBlank()) {
+            throw new IllegalArgumentException("Falta el argumento " + nombre + "=...");
+        }
+        return valor;
+    }
+}
@@ -0,0 +1,29 @@
+package org.example.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+// Contador monotónico de bajo coste para eventos o volúmenes (bytes, reintentos...)
+public class Contador implements ContadorMBean {
+    private final LongAdder valor = new LongAdder();
+
+    Contador() {
+    }
+
+    public void incrementar() {
+        valor.increment();
+    }
+
+    public void sumar(long cantidad) {
+        valor.add(cantidad);
+    }
+
+    @Override
+    public long getValor() {
+        return valor.sum();
+    }
+
+    @Override
+    public void reiniciar() {
+        valor.reset();
+    }
+}
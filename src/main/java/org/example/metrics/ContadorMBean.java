@@ -0,0 +1,7 @@
+package org.example.metrics;
+
+// Vista JMX de un contador monotónico
+public interface ContadorMBean {
+    long getValor();
+    void reiniciar();
+}
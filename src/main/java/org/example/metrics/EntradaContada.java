@@ -0,0 +1,29 @@
+package org.example.metrics;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+// Flujo de entrada que acumula en un contador los bytes leídos
+public class EntradaContada extends FilterInputStream {
+    private final Contador contador;
+
+    public EntradaContada(InputStream entrada, Contador contador) {
+        super(entrada);
+        this.contador = contador;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if (b >= 0) contador.incrementar();
+        return b;
+    }
+
+    @Override
+    public int read(byte[] destino, int offset, int len) throws IOException {
+        int n = super.read(destino, offset, len);
+        if (n > 0) contador.sumar(n);
+        return n;
+    }
+}
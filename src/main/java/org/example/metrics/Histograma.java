@@ -0,0 +1,140 @@
+package org.example.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Histograma de latencias con cubetas log-lineales (estilo HDR)
+// Mantiene tres dígitos significativos de precisión en todo el rango y admite
+// registro concurrente sin bloqueos desde múltiples hilos
+public class Histograma {
+    private static final int BITS_SUBCUBETA = 11;
+    private static final int SUBCUBETAS = 1 << BITS_SUBCUBETA;   // 2048
+    private static final int MEDIA_SUBCUBETA = SUBCUBETAS >> 1;  // 1024
+
+    private final long valorMaximo;
+    private final AtomicLongArray cuentas;
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong suma = new AtomicLong();
+    private final AtomicLong minimo = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong maximo = new AtomicLong();
+
+    // Crea un histograma capaz de registrar valores entre 0 y valorMaximo (inclusive)
+    public Histograma(long valorMaximo) {
+        if (valorMaximo < SUBCUBETAS) {
+            valorMaximo = SUBCUBETAS;
+        }
+        this.valorMaximo = valorMaximo;
+        this.cuentas = new AtomicLongArray(indice(valorMaximo) + 1);
+    }
+
+    // === REGISTRO ===
+
+    // Registra una observación; los valores fuera de rango se acotan al extremo
+    public void registrar(long valor) {
+        if (valor < 0) valor = 0;
+        if (valor > valorMaximo) valor = valorMaximo;
+        cuentas.incrementAndGet(indice(valor));
+        total.incrementAndGet();
+        suma.addAndGet(valor);
+        minimo.accumulateAndGet(valor, Math::min);
+        maximo.accumulateAndGet(valor, Math::max);
+    }
+
+    // Vuelca el contenido en otro histograma y reinicia este (para reportes por intervalo)
+    public void transferirA(Histograma destino) {
+        for (int i = 0; i < cuentas.length(); i++) {
+            long c = cuentas.getAndSet(i, 0);
+            if (c > 0) {
+                destino.cuentas.addAndGet(Math.min(i, destino.cuentas.length() - 1), c);
+            }
+        }
+        destino.total.addAndGet(total.getAndSet(0));
+        destino.suma.addAndGet(suma.getAndSet(0));
+        long min = minimo.getAndSet(Long.MAX_VALUE);
+        long max = maximo.getAndSet(0);
+        destino.minimo.accumulateAndGet(min, Math::min);
+        destino.maximo.accumulateAndGet(max, Math::max);
+    }
+
+    // Acumula el contenido de otro histograma sin modificarlo
+    public void agregar(Histograma origen) {
+        for (int i = 0; i < origen.cuentas.length(); i++) {
+            long c = origen.cuentas.get(i);
+            if (c > 0) {
+                cuentas.addAndGet(Math.min(i, cuentas.length() - 1), c);
+            }
+        }
+        total.addAndGet(origen.total.get());
+        suma.addAndGet(origen.suma.get());
+        minimo.accumulateAndGet(origen.minimo.get(), Math::min);
+        maximo.accumulateAndGet(origen.maximo.get(), Math::max);
+    }
+
+    // Reinicia todas las cuentas
+    public void reiniciar() {
+        for (int i = 0; i < cuentas.length(); i++) {
+            cuentas.set(i, 0);
+        }
+        total.set(0);
+        suma.set(0);
+        minimo.set(Long.MAX_VALUE);
+        maximo.set(0);
+    }
+
+    // === CONSULTAS ===
+
+    public long getTotal() {
+        return total.get();
+    }
+
+    public long getMinimo() {
+        long min = minimo.get();
+        return min == Long.MAX_VALUE ? 0 : min;
+    }
+
+    public long getMaximo() {
+        return maximo.get();
+    }
+
+    public double getMedia() {
+        long n = total.get();
+        return n == 0 ? 0.0 : (double) suma.get() / n;
+    }
+
+    // Devuelve el valor en el percentil indicado (0-100)
+    public long percentil(double percentil) {
+        long n = total.get();
+        if (n == 0) return 0;
+        long objetivo = Math.max(1, (long) Math.ceil(n * Math.min(percentil, 100.0) / 100.0));
+        long acumulado = 0;
+        for (int i = 0; i < cuentas.length(); i++) {
+            acumulado += cuentas.get(i);
+            if (acumulado >= objetivo) {
+                return Math.min(valorMaximoEquivalente(i), getMaximo());
+            }
+        }
+        return getMaximo();
+    }
+
+    // === CÁLCULO DE CUBETAS ===
+
+    // Los valores menores que SUBCUBETAS tienen cubeta propia; por encima, cada
+    // potencia de dos se divide en MEDIA_SUBCUBETA cubetas lineales
+    static int indice(long valor) {
+        if (valor < SUBCUBETAS) {
+            return (int) valor;
+        }
+        int exponente = 63 - Long.numberOfLeadingZeros(valor) - (BITS_SUBCUBETA - 1);
+        int sub = (int) (valor >>> exponente) - MEDIA_SUBCUBETA;
+        return SUBCUBETAS + (exponente - 1) * MEDIA_SUBCUBETA + sub;
+    }
+
+    static long valorMaximoEquivalente(int indice) {
+        if (indice < SUBCUBETAS) {
+            return indice;
+        }
+        int exponente = (indice - SUBCUBETAS) / MEDIA_SUBCUBETA + 1;
+        long sub = (indice - SUBCUBETAS) % MEDIA_SUBCUBETA + MEDIA_SUBCUBETA;
+        return ((sub + 1) << exponente) - 1;
+    }
+}
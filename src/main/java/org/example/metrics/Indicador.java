@@ -0,0 +1,17 @@
+package org.example.metrics;
+
+import java.util.function.DoubleSupplier;
+
+// Indicador cuyo valor se calcula en el momento de la lectura (conexiones en uso, retraso, etc.)
+public class Indicador implements IndicadorMBean {
+    private final DoubleSupplier fuente;
+
+    Indicador(DoubleSupplier fuente) {
+        this.fuente = fuente;
+    }
+
+    @Override
+    public double getValor() {
+        return fuente.getAsDouble();
+    }
+}
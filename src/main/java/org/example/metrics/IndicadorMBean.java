@@ -0,0 +1,6 @@
+package org.example.metrics;
+
+// Vista JMX de un indicador instantáneo
+public interface IndicadorMBean {
+    double getValor();
+}
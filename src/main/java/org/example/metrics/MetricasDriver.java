@@ -0,0 +1,86 @@
+package org.example.metrics;
+
+import com.mongodb.ServerAddress;
+import com.mongodb.event.*;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Instrumentación del driver de MongoDB
+// Registra la latencia por comando y el estado del pool de conexiones (esperas de
+// checkout, conexiones en uso y abiertas) en el RegistroMetricas
+public class MetricasDriver implements CommandListener, ConnectionPoolListener {
+    private final AtomicInteger conexionesEnUso = new AtomicInteger();
+    private final AtomicInteger conexionesAbiertas = new AtomicInteger();
+    private final MetricasOperacion esperaCheckout = RegistroMetricas.operacion("pool.esperaCheckout");
+    private final Contador checkoutsFallidos = RegistroMetricas.contador("pool.checkoutsFallidos");
+    private final Contador poolsLimpiados = RegistroMetricas.contador("pool.limpiezas");
+    private final Map<ServerAddress, AtomicInteger> abiertasPorServidor = new ConcurrentHashMap<>();
+
+    public MetricasDriver() {
+        RegistroMetricas.indicador("pool.conexionesEnUso", conexionesEnUso::get);
+        RegistroMetricas.indicador("pool.conexionesAbiertas", conexionesAbiertas::get);
+    }
+
+    // === COMANDOS ===
+
+    @Override
+    public void commandSucceeded(CommandSucceededEvent event) {
+        RegistroMetricas.operacion("comando." + event.getCommandName())
+                .registrar(event.getElapsedTime(TimeUnit.NANOSECONDS), false);
+    }
+
+    @Override
+    public void commandFailed(CommandFailedEvent event) {
+        RegistroMetricas.operacion("comando." + event.getCommandName())
+                .registrar(event.getElapsedTime(TimeUnit.NANOSECONDS), true);
+    }
+
+    // === POOL DE CONEXIONES ===
+
+    @Override
+    public void connectionCheckedOut(ConnectionCheckedOutEvent event) {
+        conexionesEnUso.incrementAndGet();
+        esperaCheckout.registrar(event.getElapsedTime(TimeUnit.NANOSECONDS), false);
+    }
+
+    @Override
+    public void connectionCheckOutFailed(ConnectionCheckOutFailedEvent event) {
+        checkoutsFallidos.incrementar();
+        esperaCheckout.registrar(event.getElapsedTime(TimeUnit.NANOSECONDS), true);
+    }
+
+    @Override
+    public void connectionCheckedIn(ConnectionCheckedInEvent event) {
+        conexionesEnUso.decrementAndGet();
+    }
+
+    @Override
+    public void connectionCreated(ConnectionCreatedEvent event) {
+        conexionesAbiertas.incrementAndGet();
+        abiertasPorServidor.computeIfAbsent(event.getConnectionId().getServerId().getAddress(),
+                k -> new AtomicInteger()).incrementAndGet();
+    }
+
+    @Override
+    public void connectionClosed(ConnectionClosedEvent event) {
+        conexionesAbiertas.decrementAndGet();
+        AtomicInteger abiertas = abiertasPorServidor.get(event.getConnectionId().getServerId().getAddress());
+        if (abiertas != null) {
+            abiertas.decrementAndGet();
+        }
+    }
+
+    // Conexiones abiertas actualmente en el pool de un miembro concreto
+    public int getConexionesAbiertas(ServerAddress servidor) {
+        AtomicInteger abiertas = abiertasPorServidor.get(servidor);
+        return abiertas != null ? abiertas.get() : 0;
+    }
+
+    @Override
+    public void connectionPoolCleared(ConnectionPoolClearedEvent event) {
+        poolsLimpiados.incrementar();
+    }
+}
@@ -0,0 +1,75 @@
+package org.example.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Métricas de una operación: número de llamadas, errores e histograma de latencias (en microsegundos)
+public class MetricasOperacion implements MetricasOperacionMBean {
+    private static final long LATENCIA_MAXIMA_US = TimeUnit.MINUTES.toMicros(10);
+
+    private final String nombre;
+    private final LongAdder llamadas = new LongAdder();
+    private final LongAdder errores = new LongAdder();
+    private final Histograma latencias = new Histograma(LATENCIA_MAXIMA_US);
+
+    MetricasOperacion(String nombre) {
+        this.nombre = nombre;
+    }
+
+    // Registra una ejecución con su duración en nanosegundos
+    public void registrar(long duracionNanos, boolean error) {
+        llamadas.increment();
+        if (error) errores.increment();
+        latencias.registrar(TimeUnit.NANOSECONDS.toMicros(duracionNanos));
+    }
+
+    public String getNombre() {
+        return nombre;
+    }
+
+    public Histograma getLatencias() {
+        return latencias;
+    }
+
+    @Override
+    public long getLlamadas() {
+        return llamadas.sum();
+    }
+
+    @Override
+    public long getErrores() {
+        return errores.sum();
+    }
+
+    @Override
+    public double getLatenciaMediaMs() {
+        return latencias.getMedia() / 1000.0;
+    }
+
+    @Override
+    public double getLatenciaP50Ms() {
+        return latencias.percentil(50) / 1000.0;
+    }
+
+    @Override
+    public double getLatenciaP99Ms() {
+        return latencias.percentil(99) / 1000.0;
+    }
+
+    @Override
+    public double getLatenciaP999Ms() {
+        return latencias.percentil(99.9) / 1000.0;
+    }
+
+    @Override
+    public double getLatenciaMaximaMs() {
+        return latencias.getMaximo() / 1000.0;
+    }
+
+    @Override
+    public void reiniciar() {
+        llamadas.reset();
+        errores.reset();
+        latencias.reiniciar();
+    }
+}
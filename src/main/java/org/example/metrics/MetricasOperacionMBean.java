@@ -0,0 +1,13 @@
+package org.example.metrics;
+
+// Vista JMX de las métricas de una operación cronometrada
+public interface MetricasOperacionMBean {
+    long getLlamadas();
+    long getErrores();
+    double getLatenciaMediaMs();
+    double getLatenciaP50Ms();
+    double getLatenciaP99Ms();
+    double getLatenciaP999Ms();
+    double getLatenciaMaximaMs();
+    void reiniciar();
+}
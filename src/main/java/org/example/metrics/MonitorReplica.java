@@ -0,0 +1,175 @@
+package org.example.metrics;
+
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoCollection;
+import org.bson.BsonTimestamp;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Monitor de salud del réplica set y del oplog
+// Muestrea periódicamente replSetGetStatus y el primer y último ts de local.oplog.rs para calcular
+// el retraso de replicación de cada secundario y la ventana del oplog (horas entre su primera y su
+// última entrada). Avisa cuando un secundario supera el retraso máximo o cuando la ventana es menor
+// que la mínima configurada: la recuperación con obtenerOperacionesOplogDesde sólo alcanza hasta la
+// primera entrada del oplog. Los valores se publican como indicadores replica.*.
+public class MonitorReplica {
+    private static final Logger LOG = LoggerFactory.getLogger(MonitorReplica.class);
+
+    // Estado de un miembro; retrasoSegundos es -1 en el primario y en miembros sin optime
+    public record Miembro(String nombre, String estado, boolean sano, Date optime, double retrasoSegundos) { }
+
+    // Resultado de un muestreo
+    public record Estado(Date instante, String replicaSet, List<Miembro> miembros, BsonTimestamp primeraOplog,
+                         BsonTimestamp ultimaOplog, double ventanaHoras, List<String> avisos) {
+
+        // Instante más antiguo desde el que aún se puede recuperar con el oplog
+        public Date recuperableDesde() {
+            return primeraOplog != null ? new Date(primeraOplog.getTime() * 1000L) : null;
+        }
+    }
+
+    private final MongoClient cliente;
+    private final long intervaloSegundos;
+    private final double retrasoMaximoSegundos;
+    private final double ventanaMinimaHoras;
+
+    private final Map<String, Double> retrasos = new ConcurrentHashMap<>();
+    private final Contador avisosEmitidos = RegistroMetricas.contador("replica.avisos");
+    private final Contador muestreosFallidos = RegistroMetricas.contador("replica.muestreosFallidos");
+    private volatile Estado ultimo;
+    private ScheduledExecutorService planificador;
+
+    public MonitorReplica(MongoClient cliente, long intervaloSegundos, double retrasoMaximoSegundos, double ventanaMinimaHoras) {
+        this.cliente = cliente;
+        this.intervaloSegundos = intervaloSegundos;
+        this.retrasoMaximoSegundos = retrasoMaximoSegundos;
+        this.ventanaMinimaHoras = ventanaMinimaHoras;
+        RegistroMetricas.indicador("replica.retrasoMaximoSegundos", () ->
+                retrasos.values().stream().mapToDouble(Double::doubleValue).max().orElse(0));
+        RegistroMetricas.indicador("replica.ventanaOplogHoras", () -> ultimo != null ? ultimo.ventanaHoras() : 0);
+        RegistroMetricas.indicador("replica.miembrosSanos", () -> ultimo == null ? 0
+                : ultimo.miembros().stream().filter(Miembro::sano).count());
+    }
+
+    // Inicia el muestreo periódico (intervalo 0 = desactivado)
+    public synchronized void iniciar() {
+        if (planificador != null || intervaloSegundos <= 0) return;
+        planificador = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread hilo = new Thread(r, "monitor-replica");
+            hilo.setDaemon(true);
+            return hilo;
+        });
+        planificador.scheduleWithFixedDelay(() -> {
+            try {
+                muestrear();
+            } catch (RuntimeException e) {
+                muestreosFallidos.incrementar();
+                LOG.warn("Fallo al muestrear el réplica set: {}", e.getMessage());
+            }
+        }, 0, intervaloSegundos, TimeUnit.SECONDS);
+    }
+
+    public synchronized void detener() {
+        if (planificador != null) {
+            planificador.shutdownNow();
+            planificador = null;
+        }
+    }
+
+    // Último muestreo disponible (null si aún no se ha muestreado)
+    public Estado ultimoEstado() {
+        return ultimo;
+    }
+
+    // === MUESTREO ===
+
+    public Estado muestrear() {
+        Document estado = cliente.getDatabase("admin").runCommand(new Document("replSetGetStatus", 1));
+        List<Document> documentosMiembros = estado.getList("members", Document.class, List.of());
+        Date optimePrimario = null;
+        for (Document miembro : documentosMiembros) {
+            if ("PRIMARY".equals(miembro.getString("stateStr"))) {
+                optimePrimario = miembro.getDate("optimeDate");
+            }
+        }
+
+        List<Miembro> miembros = new ArrayList<>();
+        List<String> avisos = new ArrayList<>();
+        Set<String> secundarios = new HashSet<>();
+        for (Document miembro : documentosMiembros) {
+            String nombre = miembro.getString("name");
+            String estadoMiembro = miembro.getString("stateStr");
+            Date optime = miembro.getDate("optimeDate");
+            boolean sano = ((Number) miembro.get("health", 0)).intValue() == 1;
+            double retraso = -1;
+            if ("SECONDARY".equals(estadoMiembro) && optime != null && optimePrimario != null) {
+                retraso = Math.max(0, optimePrimario.getTime() - optime.getTime()) / 1000.0;
+                registrarRetraso(nombre, retraso);
+                secundarios.add(nombre);
+                if (retraso > retrasoMaximoSegundos) {
+                    avisos.add(String.format("%s acumula %.1f s de retraso de replicación (máximo %.1f s)",
+                            nombre, retraso, retrasoMaximoSegundos));
+                }
+            }
+            if (!sano) {
+                avisos.add(nombre + " no responde (estado " + estadoMiembro + ")");
+            }
+            miembros.add(new Miembro(nombre, estadoMiembro, sano, optime, retraso));
+        }
+        // Los miembros que ya no son secundarios (nuevo primario, caídos) dejan de aportar retraso
+        retrasos.replaceAll((nombre, retraso) -> secundarios.contains(nombre) ? retraso : 0.0);
+        if (optimePrimario == null) {
+            avisos.add("El réplica set no tiene primario");
+        }
+
+        MongoCollection<Document> oplog = cliente.getDatabase("local").getCollection("oplog.rs");
+        BsonTimestamp primera = extremoOplog(oplog, 1);
+        BsonTimestamp ultima = extremoOplog(oplog, -1);
+        double ventanaHoras = primera != null && ultima != null ? (ultima.getTime() - primera.getTime()) / 3600.0 : 0;
+        if (primera != null && ventanaHoras < ventanaMinimaHoras) {
+            avisos.add(String.format("La ventana del oplog es de %.1f h (mínimo %.1f h): la recuperación desde el oplog "
+                    + "sólo alcanza hasta %s", ventanaHoras, ventanaMinimaHoras, new Date(primera.getTime() * 1000L)));
+        }
+
+        Estado resultado = new Estado(new Date(), estado.getString("set"), miembros, primera, ultima, ventanaHoras, avisos);
+        ultimo = resultado;
+        for (String aviso : avisos) {
+            LOG.warn(aviso);
+        }
+        avisosEmitidos.sumar(avisos.size());
+        LOG.atDebug().addKeyValue("miembros", miembros.size()).addKeyValue("ventanaHoras", ventanaHoras)
+                .log("Réplica set muestreado");
+        return resultado;
+    }
+
+    // Indica si el oplog todavía contiene operaciones desde el instante indicado
+    public boolean alcanzaHasta(BsonTimestamp desde) {
+        Estado estado = ultimo != null ? ultimo : muestrear();
+        return estado.primeraOplog() == null || desde == null || estado.primeraOplog().compareTo(desde) <= 0;
+    }
+
+    // Un indicador por secundario (replica.retrasoSegundos.<host:puerto>), registrado al verlo por primera vez
+    private void registrarRetraso(String miembro, double retraso) {
+        if (retrasos.put(miembro, retraso) == null) {
+            RegistroMetricas.indicador("replica.retrasoSegundos." + miembro, () -> retrasos.getOrDefault(miembro, 0.0));
+        }
+    }
+
+    private static BsonTimestamp extremoOplog(MongoCollection<Document> oplog, int orden) {
+        Document entrada = oplog.find().sort(new Document("$natural", orden)).limit(1)
+                .projection(new Document("ts", 1)).first();
+        return entrada != null ? entrada.get("ts", BsonTimestamp.class) : null;
+    }
+}
@@ -0,0 +1,121 @@
+package org.example.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.DoubleSupplier;
+
+// Registro central de métricas del sistema
+// Cada métrica se publica como MBean bajo el dominio org.example.docmanage y puede
+// volcarse periódicamente como texto; no depende de servicios externos
+public final class RegistroMetricas {
+    private static final Logger LOG = LoggerFactory.getLogger(RegistroMetricas.class);
+    private static final String DOMINIO_JMX = "org.example.docmanage";
+
+    private static final Map<String, MetricasOperacion> operaciones = new ConcurrentHashMap<>();
+    private static final Map<String, Contador> contadores = new ConcurrentHashMap<>();
+    private static final Map<String, Indicador> indicadores = new ConcurrentHashMap<>();
+
+    private static volatile boolean jmxHabilitado = true;
+    private static ScheduledExecutorService volcador;
+
+    private RegistroMetricas() {
+    }
+
+    // === OBTENCIÓN DE MÉTRICAS ===
+
+    // Obtiene (o crea y publica) las métricas de una operación cronometrada
+    public static MetricasOperacion operacion(String nombre) {
+        return operaciones.computeIfAbsent(nombre, n -> {
+            MetricasOperacion m = new MetricasOperacion(n);
+            publicar("Operacion", n, m);
+            return m;
+        });
+    }
+
+    // Obtiene (o crea y publica) un contador
+    public static Contador contador(String nombre) {
+        return contadores.computeIfAbsent(nombre, n -> {
+            Contador c = new Contador();
+            publicar("Contador", n, c);
+            return c;
+        });
+    }
+
+    // Registra un indicador calculado bajo demanda; si ya existía se conserva el original
+    public static Indicador indicador(String nombre, DoubleSupplier fuente) {
+        return indicadores.computeIfAbsent(nombre, n -> {
+            Indicador i = new Indicador(fuente);
+            publicar("Indicador", n, i);
+            return i;
+        });
+    }
+
+    // === EXPOSICIÓN JMX ===
+
+    public static void setJmxHabilitado(boolean habilitado) {
+        jmxHabilitado = habilitado;
+    }
+
+    private static void publicar(String tipo, String nombre, Object mbean) {
+        if (!jmxHabilitado) return;
+        try {
+            MBeanServer servidor = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName(DOMINIO_JMX + ":type=" + tipo + ",name=" + ObjectName.quote(nombre));
+            if (!servidor.isRegistered(objectName)) {
+                servidor.registerMBean(mbean, objectName);
+            }
+        } catch (JMException e) {
+            LOG.warn("No se pudo publicar la métrica {} por JMX: {}", nombre, e.getMessage());
+        }
+    }
+
+    // === VOLCADO EN TEXTO ===
+
+    // Genera un informe legible con todas las métricas registradas
+    public static String volcarTexto() {
+        StringBuilder sb = new StringBuilder("=== MÉTRICAS DOCMANAGENOSQL ===\n");
+        Map<String, MetricasOperacion> ops = new TreeMap<>(operaciones);
+        if (!ops.isEmpty()) {
+            sb.append(String.format("%-40s %10s %8s %10s %10s %10s %10s%n",
+                    "operacion", "llamadas", "errores", "p50(ms)", "p99(ms)", "p999(ms)", "max(ms)"));
+            ops.forEach((nombre, m) -> sb.append(String.format("%-40s %10d %8d %10.2f %10.2f %10.2f %10.2f%n",
+                    nombre, m.getLlamadas(), m.getErrores(), m.getLatenciaP50Ms(),
+                    m.getLatenciaP99Ms(), m.getLatenciaP999Ms(), m.getLatenciaMaximaMs())));
+        }
+        new TreeMap<>(contadores).forEach((nombre, c) ->
+                sb.append(String.format("%-40s %10d%n", nombre, c.getValor())));
+        new TreeMap<>(indicadores).forEach((nombre, i) ->
+                sb.append(String.format("%-40s %10.2f%n", nombre, i.getValor())));
+        return sb.toString();
+    }
+
+    // Inicia el volcado periódico de métricas en el registro de eventos
+    public static synchronized void iniciarVolcadoPeriodico(long intervaloSegundos) {
+        if (volcador != null || intervaloSegundos <= 0) return;
+        volcador = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread hilo = new Thread(r, "metricas-volcado");
+            hilo.setDaemon(true);
+            return hilo;
+        });
+        volcador.scheduleAtFixedRate(() -> LOG.info("\n{}", volcarTexto()),
+                intervaloSegundos, intervaloSegundos, TimeUnit.SECONDS);
+    }
+
+    public static synchronized void detenerVolcadoPeriodico() {
+        if (volcador != null) {
+            volcador.shutdownNow();
+            volcador = null;
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package org.example.metrics;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+// Flujo de salida que acumula en un contador los bytes escritos
+public class SalidaContada extends FilterOutputStream {
+    private final Contador contador;
+
+    public SalidaContada(OutputStream salida, Contador contador) {
+        super(salida);
+        this.contador = contador;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        out.write(b);
+        contador.incrementar();
+    }
+
+    @Override
+    public void write(byte[] origen, int offset, int len) throws IOException {
+        out.write(origen, offset, len);
+        contador.sumar(len);
+    }
+}
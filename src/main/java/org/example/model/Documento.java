@@ -31,6 +31,19 @@ public class Documento {
         this.tipoDocumento = tipoDocumento;
     }
 
+    // Constructor de copia
+    public Documento(Documento otro) {
+        this.id = otro.id;
+        this.titulo = otro.titulo;
+        this.autor = otro.autor;
+        this.tipoDocumento = otro.tipoDocumento;
+        this.fechaCreacion = otro.fechaCreacion;
+        this.fechaModificacion = otro.fechaModificacion;
+        this.estado = otro.estado;
+        this.version = otro.version;
+        this.archivoId = otro.archivoId;
+    }
+
     // Getters y Setters
     public ObjectId getId() {
         return id;
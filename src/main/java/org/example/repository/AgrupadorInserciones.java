@@ -0,0 +1,210 @@
+package org.example.repository;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.MongoNamespace;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.InsertManyOptions;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.example.metrics.Contador;
+import org.example.metrics.MetricasOperacion;
+import org.example.metrics.RegistroMetricas;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+// Agrupación de inserciones concurrentes (group commit)
+// Las inserciones se encolan y un único hilo las escribe con insertMany cuando el lote alcanza
+// su tamaño máximo o cuando vence el plazo contado desde la primera inserción del lote. Así,
+// con muchos escritores concurrentes, la espera del write concern se paga una vez por lote y no
+// una vez por documento. Cada llamador recibe un futuro que se completa con el _id asignado o con
+// el error de su propio documento. La cola está acotada: con ella llena, encolar bloquea.
+public class AgrupadorInserciones {
+    private static final Logger LOG = LoggerFactory.getLogger(AgrupadorInserciones.class);
+    // Cadencia con la que el hilo escritor y los llamadores bloqueados comprueban si se cerró
+    private static final long SONDEO_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final int tamanoLote;
+    private final long esperaMaximaNanos;
+    private final BlockingQueue<Pendiente> cola;
+    private final Thread escritor;
+    private volatile boolean activo = true;
+
+    private final MetricasOperacion metricasLote;
+    private final Contador documentos;
+    private final Contador lotes;
+    private final Contador fallidos;
+
+    private record Pendiente(MongoCollection<Document> coleccion, Document documento, CompletableFuture<ObjectId> futuro) { }
+
+    public AgrupadorInserciones(int tamanoLote, long esperaMaximaMicros, int capacidadCola) {
+        this("insercion.agrupada", tamanoLote, esperaMaximaMicros, capacidadCola);
+    }
+
+    // "nombre" identifica al agrupador en sus métricas (<nombre>.*) y en el nombre de su hilo
+    public AgrupadorInserciones(String nombre, int tamanoLote, long esperaMaximaMicros, int capacidadCola) {
+        this.metricasLote = RegistroMetricas.operacion(nombre + ".lote");
+        this.documentos = RegistroMetricas.contador(nombre + ".documentos");
+        this.lotes = RegistroMetricas.contador(nombre + ".lotes");
+        this.fallidos = RegistroMetricas.contador(nombre + ".fallidos");
+        this.tamanoLote = Math.max(1, tamanoLote);
+        this.esperaMaximaNanos = TimeUnit.MICROSECONDS.toNanos(Math.max(0, esperaMaximaMicros));
+        this.cola = new ArrayBlockingQueue<>(Math.max(this.tamanoLote, capacidadCola));
+        RegistroMetricas.indicador(nombre + ".tamanoMedioLote", () -> {
+            long n = lotes.getValor();
+            return n == 0 ? 0.0 : (double) documentos.getValor() / n;
+        });
+        RegistroMetricas.indicador(nombre + ".enCola", cola::size);
+        this.escritor = new Thread(this::escribirLotes, nombre.replace('.', '-'));
+        this.escritor.setDaemon(true);
+        this.escritor.start();
+    }
+
+    // Encola la inserción; el _id se asigna aquí para poder devolverlo aunque falle el lote
+    public CompletableFuture<ObjectId> insertar(MongoCollection<Document> coleccion, Document documento) {
+        CompletableFuture<ObjectId> futuro = new CompletableFuture<>();
+        if (!activo) {
+            futuro.completeExceptionally(new IllegalStateException("Agrupador de inserciones detenido"));
+            return futuro;
+        }
+        if (documento.get("_id") == null) {
+            documento.put("_id", new ObjectId());
+        }
+        Pendiente pendiente = new Pendiente(coleccion, documento, futuro);
+        try {
+            // Con la cola llena se espera, pero sin quedarse bloqueado si el agrupador se cierra
+            while (!cola.offer(pendiente, SONDEO_NANOS, TimeUnit.NANOSECONDS)) {
+                if (!activo) {
+                    futuro.completeExceptionally(new IllegalStateException("Agrupador de inserciones detenido"));
+                    return futuro;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            futuro.completeExceptionally(e);
+            return futuro;
+        }
+        // Si cerrar() llegó entre la comprobación y el encolado, el escritor puede haber terminado ya:
+        // lo que siga en la cola se retira y se rechaza (si no está, el escritor lo tomó y lo escribirá)
+        if (!activo && cola.remove(pendiente)) {
+            futuro.completeExceptionally(new IllegalStateException("Agrupador de inserciones detenido"));
+        }
+        return futuro;
+    }
+
+    // Detiene el hilo escritor tras vaciar la cola. No se interrumpe al escritor: una interrupción
+    // dentro del driver haría fallar el lote en curso y los siguientes.
+    public void cerrar() {
+        activo = false;
+        try {
+            escritor.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Si el escritor no terminó a tiempo, lo que queda en la cola se rechaza en lugar de perderse
+        List<Pendiente> restantes = new ArrayList<>();
+        cola.drainTo(restantes);
+        for (Pendiente pendiente : restantes) {
+            pendiente.futuro().completeExceptionally(new IllegalStateException("Agrupador de inserciones detenido"));
+        }
+        if (!restantes.isEmpty()) {
+            fallidos.sumar(restantes.size());
+            LOG.warn("Inserciones agrupadas descartadas al cerrar: {}", restantes.size());
+        }
+    }
+
+    // === HILO ESCRITOR ===
+
+    private void escribirLotes() {
+        List<Pendiente> lote = new ArrayList<>(tamanoLote);
+        while (activo || !cola.isEmpty()) {
+            try {
+                // Espera acotada: el cierre se detecta sin interrumpir al hilo
+                Pendiente primero = activo ? cola.poll(SONDEO_NANOS, TimeUnit.NANOSECONDS) : cola.poll();
+                if (primero == null) continue;
+                lote.add(primero);
+                // Se acumulan inserciones hasta llenar el lote o vencer el plazo del primero
+                long plazo = System.nanoTime() + esperaMaximaNanos;
+                while (lote.size() < tamanoLote) {
+                    if (cola.drainTo(lote, tamanoLote - lote.size()) > 0) continue;
+                    long restante = plazo - System.nanoTime();
+                    if (restante <= 0 || !activo) break;
+                    Pendiente siguiente = cola.poll(restante, TimeUnit.NANOSECONDS);
+                    if (siguiente == null) break;
+                    lote.add(siguiente);
+                }
+            } catch (InterruptedException e) {
+                // Interrupción ajena: se escribe lo acumulado y se sigue hasta el cierre
+            }
+            if (!lote.isEmpty()) {
+                escribir(lote);
+                lote.clear();
+            }
+        }
+        LOG.debug("Hilo de inserción agrupada finalizado");
+    }
+
+    private void escribir(List<Pendiente> lote) {
+        // Las inserciones pueden ir a particiones distintas: un insertMany por colección
+        Map<MongoNamespace, List<Pendiente>> porColeccion = new LinkedHashMap<>();
+        for (Pendiente pendiente : lote) {
+            porColeccion.computeIfAbsent(pendiente.coleccion().getNamespace(), k -> new ArrayList<>()).add(pendiente);
+        }
+        for (List<Pendiente> grupo : porColeccion.values()) {
+            long inicio = System.nanoTime();
+            boolean error = false;
+            List<Document> documentosGrupo = new ArrayList<>(grupo.size());
+            for (Pendiente pendiente : grupo) {
+                documentosGrupo.add(pendiente.documento());
+            }
+            try {
+                grupo.get(0).coleccion().insertMany(documentosGrupo, new InsertManyOptions().ordered(false));
+                for (Pendiente pendiente : grupo) {
+                    pendiente.futuro().complete(pendiente.documento().getObjectId("_id"));
+                }
+            } catch (MongoBulkWriteException e) {
+                // Con ordered(false) el resto del lote se escribe; sólo fallan los documentos señalados
+                error = true;
+                Map<Integer, BulkWriteError> errores = new LinkedHashMap<>();
+                for (BulkWriteError fallo : e.getWriteErrors()) {
+                    errores.put(fallo.getIndex(), fallo);
+                }
+                boolean errorGlobal = e.getWriteConcernError() != null;
+                for (int i = 0; i < grupo.size(); i++) {
+                    Pendiente pendiente = grupo.get(i);
+                    BulkWriteError fallo = errores.get(i);
+                    if (fallo != null) {
+                        pendiente.futuro().completeExceptionally(new IllegalStateException(
+                                "Inserción rechazada (código " + fallo.getCode() + "): " + fallo.getMessage()));
+                        fallidos.incrementar();
+                    } else if (errorGlobal) {
+                        pendiente.futuro().completeExceptionally(e);
+                        fallidos.incrementar();
+                    } else {
+                        pendiente.futuro().complete(pendiente.documento().getObjectId("_id"));
+                    }
+                }
+            } catch (RuntimeException e) {
+                error = true;
+                for (Pendiente pendiente : grupo) {
+                    pendiente.futuro().completeExceptionally(e);
+                }
+                fallidos.sumar(grupo.size());
+                LOG.atWarn().addKeyValue("documentos", grupo.size()).log("Fallo en inserción agrupada: {}", e.getMessage());
+            } finally {
+                metricasLote.registrar(System.nanoTime() - inicio, error);
+                lotes.incrementar();
+                documentos.sumar(grupo.size());
+            }
+        }
+    }
+}
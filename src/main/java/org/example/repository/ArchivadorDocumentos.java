@@ -0,0 +1,298 @@
+package org.example.repository;
+
+import com.mongodb.MongoException;
+import com.mongodb.MongoGridFSException;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.gridfs.GridFSBucket;
+import com.mongodb.client.gridfs.GridFSDownloadStream;
+import com.mongodb.client.gridfs.model.GridFSFile;
+import com.mongodb.client.gridfs.model.GridFSUploadOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Sorts;
+import org.bson.BsonObjectId;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
+import org.example.config.MongoConfig;
+import org.example.metrics.Contador;
+import org.example.metrics.MetricasOperacion;
+import org.example.metrics.RegistroMetricas;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Archivado por niveles de documentos fríos
+// Los documentos en el estado configurado y sin modificar desde la fecha límite se trasladan, junto
+// con su adjunto de GridFS, a un archivo local comprimido (ArchivoFrio). En la colección queda un
+// registro mínimo {_id, fechaCreacion, archivado: {ruta, fecha, archivoId}} que mantiene el documento
+// en su partición y en las consultas por rango de fechas. El documento se restaura de forma perezosa
+// la primera vez que se necesita completo (lectura por id, actualización o descarga del adjunto).
+public class ArchivadorDocumentos {
+    private static final Logger LOG = LoggerFactory.getLogger(ArchivadorDocumentos.class);
+    static final String CAMPO_ARCHIVADO = "archivado";
+    private static final List<String> CAMPOS_RESTO = List.of(DisposicionCampos.FECHA_CREACION, DisposicionCampos.AUTOR,
+            DisposicionCampos.TIPO, DisposicionCampos.ESTADO, DisposicionCampos.VERSION);
+
+    private final ParticionesDocumentos particiones;
+    private final EsquemaDocumento esquema;
+    private final GridFSBucket gridFSBucket;
+    private final ArchivoFrio archivo;
+
+    // Un cerrojo por documento para no restaurar el mismo dos veces a la vez desde este proceso
+    private final Map<ObjectId, Object> cerrojos = new ConcurrentHashMap<>();
+
+    private final MetricasOperacion metricasArchivar = RegistroMetricas.operacion("archivado.archivar");
+    private final MetricasOperacion metricasRestaurar = RegistroMetricas.operacion("archivado.restaurar");
+    private final Contador documentosArchivados = RegistroMetricas.contador("archivado.documentos");
+    private final Contador bytesEnDisco = RegistroMetricas.contador("archivado.bytesEnDisco");
+    private final Contador restauraciones = RegistroMetricas.contador("archivado.restauraciones");
+
+    public ArchivadorDocumentos(ParticionesDocumentos particiones, EsquemaDocumento esquema,
+                                GridFSBucket gridFSBucket, ArchivoFrio archivo) {
+        this.particiones = particiones;
+        this.esquema = esquema;
+        this.gridFSBucket = gridFSBucket;
+        this.archivo = archivo;
+    }
+
+    // Indica si el registro leído es un resto de un documento archivado
+    public static boolean esArchivado(Document registro) {
+        return registro != null && registro.containsKey(CAMPO_ARCHIVADO);
+    }
+
+    // === ARCHIVADO ===
+
+    // Archiva los documentos en el estado indicado cuya última modificación es anterior al límite
+    public long archivar(String estado, Date limite, int tamanoLote) {
+        long archivados = 0;
+        Bson criterio = Filters.and(
+                esquema.filtro(DisposicionCampos.ESTADO, estado, Filters::eq),
+                esquema.filtroRango(DisposicionCampos.FECHA_MODIFICACION, null, limite),
+                Filters.exists(CAMPO_ARCHIVADO, false));
+        for (MongoCollection<Document> coleccion : particiones.todas()) {
+            ObjectId cursor = null;
+            while (true) {
+                Bson filtro = cursor != null ? Filters.and(criterio, Filters.gt("_id", cursor)) : criterio;
+                List<Document> lote = coleccion.find(filtro)
+                        .sort(Sorts.ascending("_id"))
+                        .limit(tamanoLote)
+                        .into(new ArrayList<>(tamanoLote));
+                if (lote.isEmpty()) {
+                    break;
+                }
+                cursor = lote.get(lote.size() - 1).getObjectId("_id");
+                for (Document registro : lote) {
+                    long inicio = System.nanoTime();
+                    boolean error = true;
+                    try {
+                        if (archivarUno(coleccion, registro)) {
+                            archivados++;
+                        }
+                        error = false;
+                    } catch (IOException | RuntimeException e) {
+                        LOG.atWarn().addKeyValue("id", registro.get("_id"))
+                                .log("No se pudo archivar el documento: {}", e.getMessage());
+                    } finally {
+                        metricasArchivar.registrar(System.nanoTime() - inicio, error);
+                    }
+                }
+            }
+        }
+        LOG.atInfo().addKeyValue("estado", estado).addKeyValue("limite", limite)
+                .addKeyValue("archivados", archivados).log("Archivado de documentos fríos completado");
+        return archivados;
+    }
+
+    private boolean archivarUno(MongoCollection<Document> coleccion, Document registro) throws IOException {
+        ObjectId id = registro.getObjectId("_id");
+        DisposicionCampos disposicion = DisposicionCampos.de(registro);
+        ObjectId archivoId = disposicion.aLogico(registro).getObjectId(DisposicionCampos.ARCHIVO);
+        String ruta = archivo.rutaDe(id);
+
+        // 1. Copia local comprimida (registro + adjunto), forzada a disco antes de tocar la base de datos
+        long bytes;
+        boolean adjuntoArchivado = false;
+        if (archivoId != null) {
+            GridFSDownloadStream descarga;
+            try {
+                descarga = gridFSBucket.openDownloadStream(archivoId);
+            } catch (MongoGridFSException e) {
+                descarga = null;
+                LOG.atWarn().addKeyValue("id", id).addKeyValue("archivoId", archivoId).log("Adjunto inexistente; se archiva sólo el registro");
+            }
+            if (descarga != null) {
+                try (GridFSDownloadStream entrada = descarga) {
+                    GridFSFile fichero = entrada.getGridFSFile();
+                    Document adjunto = new Document("archivoId", archivoId)
+                            .append("nombre", fichero.getFilename())
+                            .append("longitud", fichero.getLength())
+                            .append("tamanoBloque", fichero.getChunkSize())
+                            .append("metadatos", fichero.getMetadata());
+                    bytes = archivo.escribir(ruta, registro, adjunto, entrada);
+                }
+                adjuntoArchivado = true;
+            } else {
+                bytes = archivo.escribir(ruta, registro, null, null);
+            }
+        } else {
+            bytes = archivo.escribir(ruta, registro, null, null);
+        }
+
+        // 2. Sustitución por el resto, condicionada a que el registro no haya cambiado desde su lectura.
+        // El resto conserva, con sus nombres físicos, los campos por los que se filtra (para que las
+        // consultas lo encuentren y lo hidraten) y la versión, que identifica su disposición.
+        Document resto = new Document("_id", id);
+        for (String logico : CAMPOS_RESTO) {
+            String campo = disposicion.campo(logico);
+            if (registro.containsKey(campo)) {
+                resto.append(campo, registro.get(campo));
+            }
+        }
+        resto.append(CAMPO_ARCHIVADO, new Document("ruta", ruta)
+                        .append("fecha", new Date())
+                        .append("archivoId", archivoId));
+        if (coleccion.replaceOne(registro, resto).getMatchedCount() == 0) {
+            archivo.eliminar(ruta);
+            LOG.atDebug().addKeyValue("id", id).log("Documento modificado durante el archivado; se omite");
+            return false;
+        }
+
+        // 3. Liberación del adjunto en GridFS
+        if (adjuntoArchivado) {
+            try {
+                gridFSBucket.delete(archivoId);
+            } catch (MongoGridFSException e) {
+                LOG.atWarn().addKeyValue("archivoId", archivoId).log("No se pudo liberar el adjunto archivado");
+            }
+        }
+        documentosArchivados.incrementar();
+        bytesEnDisco.sumar(bytes);
+        LOG.atDebug().addKeyValue("id", id).addKeyValue("ruta", ruta).addKeyValue("bytes", bytes).log("Documento archivado");
+        return true;
+    }
+
+    // === LECTURA Y RESTAURACIÓN ===
+
+    // Registro original de un documento archivado, leído del archivo local sin restaurarlo
+    public Document leer(Document resto) {
+        String ruta = resto.get(CAMPO_ARCHIVADO, Document.class).getString("ruta");
+        try {
+            return archivo.leerCabecera(ruta).get("registro", Document.class);
+        } catch (IOException e) {
+            LOG.atWarn().addKeyValue("id", resto.get("_id")).addKeyValue("ruta", ruta)
+                    .log("No se pudo leer el documento archivado: {}", e.getMessage());
+            return resto;
+        }
+    }
+
+    // Devuelve el documento y su adjunto a la base de datos; devuelve el registro vigente
+    public Document restaurar(MongoCollection<Document> coleccion, Document resto) {
+        ObjectId id = resto.getObjectId("_id");
+        Object cerrojo = cerrojos.computeIfAbsent(id, k -> new Object());
+        long inicio = System.nanoTime();
+        boolean error = true;
+        try {
+            synchronized (cerrojo) {
+                Document vigente = coleccion.find(Filters.eq("_id", id)).first();
+                if (!esArchivado(vigente)) {
+                    // Restaurado entretanto por otro hilo o proceso (o eliminado)
+                    error = false;
+                    return vigente;
+                }
+                Document registro = restaurarDesdeArchivo(coleccion, vigente);
+                error = false;
+                return registro;
+            }
+        } finally {
+            cerrojos.remove(id, cerrojo);
+            metricasRestaurar.registrar(System.nanoTime() - inicio, error);
+        }
+    }
+
+    private Document restaurarDesdeArchivo(MongoCollection<Document> coleccion, Document resto) {
+        ObjectId id = resto.getObjectId("_id");
+        String ruta = resto.get(CAMPO_ARCHIVADO, Document.class).getString("ruta");
+        Document[] cabecera = new Document[1];
+        try (DataInputStream entrada = archivo.abrirAdjunto(ruta, cabecera)) {
+            Document registro = cabecera[0].get("registro", Document.class);
+            Document adjunto = cabecera[0].get("adjunto", Document.class);
+
+            // 1. Adjunto de vuelta a GridFS con su identificador original
+            if (adjunto != null) {
+                ObjectId archivoId = adjunto.getObjectId("archivoId");
+                if (gridFSBucket.find(Filters.eq("_id", archivoId)).first() == null) {
+                    GridFSUploadOptions opciones = new GridFSUploadOptions()
+                            .chunkSizeBytes(adjunto.getInteger("tamanoBloque"))
+                            .metadata(adjunto.get("metadatos", Document.class));
+                    try {
+                        gridFSBucket.uploadFromStream(new BsonObjectId(archivoId), adjunto.getString("nombre"), entrada, opciones);
+                    } catch (MongoException e) {
+                        // Otro proceso pudo restaurarlo a la vez; sólo es un error si sigue sin existir
+                        if (gridFSBucket.find(Filters.eq("_id", archivoId)).first() == null) {
+                            throw e;
+                        }
+                    }
+                }
+            }
+
+            // 2. Registro completo en lugar del resto
+            if (coleccion.replaceOne(Filters.and(Filters.eq("_id", id), Filters.exists(CAMPO_ARCHIVADO)), registro)
+                    .getMatchedCount() == 0) {
+                return coleccion.find(Filters.eq("_id", id)).first();
+            }
+            restauraciones.incrementar();
+            LOG.atInfo().addKeyValue("id", id).addKeyValue("ruta", ruta).log("Documento restaurado desde el archivo");
+        } catch (IOException e) {
+            throw new UncheckedIOException("No se pudo restaurar el documento archivado " + id, e);
+        }
+
+        // 3. La copia local deja de ser necesaria
+        descartar(resto);
+        return coleccion.find(Filters.eq("_id", id)).first();
+    }
+
+    // Restaura el documento archivado cuyo adjunto es el indicado; false si ninguno lo referencia
+    public boolean restaurarPorAdjunto(ObjectId archivoId) {
+        Bson filtro = Filters.eq(CAMPO_ARCHIVADO + ".archivoId", archivoId);
+        List<MongoCollection<Document>> colecciones = particiones.todas();
+        List<List<Document>> encontrados = particiones.enParalelo(colecciones,
+                coleccion -> coleccion.find(filtro).limit(1).into(new ArrayList<>(1)));
+        for (int i = 0; i < colecciones.size(); i++) {
+            if (!encontrados.get(i).isEmpty()) {
+                restaurar(colecciones.get(i), encontrados.get(i).get(0));
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Elimina la copia local de un documento archivado (tras restaurarlo o al eliminar el documento)
+    public void descartar(Document resto) {
+        String ruta = resto.get(CAMPO_ARCHIVADO, Document.class).getString("ruta");
+        try {
+            archivo.eliminar(ruta);
+        } catch (IOException e) {
+            LOG.atWarn().addKeyValue("ruta", ruta).log("No se pudo eliminar el archivo local: {}", e.getMessage());
+        }
+    }
+
+    // === EJECUCIÓN DESDE LÍNEA DE COMANDOS ===
+
+    // Ejecuta una pasada de archivado con la configuración de mongodb.properties
+    public static void main(String[] args) {
+        try {
+            long archivados = new DocumentoRepository().archivarDocumentosFrios();
+            LOG.atInfo().addKeyValue("archivados", archivados).log("Pasada de archivado finalizada");
+        } finally {
+            MongoConfig.closeMongoClient();
+        }
+    }
+}
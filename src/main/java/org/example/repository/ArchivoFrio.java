@@ -0,0 +1,144 @@
+package org.example.repository;
+
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.DocumentCodec;
+import org.bson.types.ObjectId;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+// Almacenamiento local comprimido de documentos fríos
+// Cada documento archivado ocupa un archivo <directorio>/<xx>/<id>.arc.gz (xx = últimos dígitos
+// del ObjectId) con una cabecera BSON {registro, adjunto?} seguida de los bytes del adjunto.
+// La escritura es atómica (archivo temporal + fsync + rename) para no dejar archivos a medias.
+public class ArchivoFrio {
+    private static final int MAGICO = 0x444D4131; // "DMA1"
+    private static final DocumentCodec CODEC = new DocumentCodec();
+
+    private final Path directorio;
+
+    public ArchivoFrio(Path directorio) {
+        this.directorio = directorio;
+    }
+
+    // Ruta relativa (respecto al directorio de archivo) del documento indicado
+    public String rutaDe(ObjectId id) {
+        String hex = id.toHexString();
+        return hex.substring(hex.length() - 2) + "/" + hex + ".arc.gz";
+    }
+
+    // === ESCRITURA ===
+
+    // Escribe el registro y, si se indica, el contenido del adjunto; devuelve los bytes ocupados en disco
+    public long escribir(String ruta, Document registro, Document adjunto, InputStream contenidoAdjunto) throws IOException {
+        Path destino = directorio.resolve(ruta);
+        Files.createDirectories(destino.getParent());
+        Path temporal = Files.createTempFile(destino.getParent(), ".arc", ".tmp");
+        try {
+            try (FileChannel canal = FileChannel.open(temporal, StandardOpenOption.WRITE)) {
+                // El flujo se cierra (liberando el deflater) también si la escritura falla
+                try (DataOutputStream salida = new DataOutputStream(new BufferedOutputStream(
+                        new GZIPOutputStream(new SalidaCanal(canal), 64 * 1024)))) {
+                    Document cabecera = new Document("registro", registro);
+                    if (adjunto != null) {
+                        cabecera.append("adjunto", adjunto);
+                    }
+                    ByteBuffer bson = new RawBsonDocument(cabecera, CODEC).getByteBuffer().asNIO();
+                    byte[] bytes = new byte[bson.remaining()];
+                    bson.get(bytes);
+                    salida.writeInt(MAGICO);
+                    salida.writeInt(bytes.length);
+                    salida.write(bytes);
+                    if (contenidoAdjunto != null) {
+                        contenidoAdjunto.transferTo(salida);
+                    }
+                }
+                canal.force(true);
+            }
+            Files.move(temporal, destino, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            return Files.size(destino);
+        } finally {
+            Files.deleteIfExists(temporal);
+        }
+    }
+
+    // === LECTURA ===
+
+    // Lee sólo la cabecera {registro, adjunto?} sin descomprimir el contenido del adjunto
+    public Document leerCabecera(String ruta) throws IOException {
+        try (DataInputStream entrada = abrir(ruta)) {
+            return leerCabecera(entrada);
+        }
+    }
+
+    // Abre el archivo posicionado tras la cabecera; el llamador lee el adjunto y cierra el flujo
+    public DataInputStream abrirAdjunto(String ruta, Document[] cabecera) throws IOException {
+        DataInputStream entrada = abrir(ruta);
+        try {
+            cabecera[0] = leerCabecera(entrada);
+            return entrada;
+        } catch (IOException | RuntimeException e) {
+            entrada.close();
+            throw e;
+        }
+    }
+
+    public void eliminar(String ruta) throws IOException {
+        Files.deleteIfExists(directorio.resolve(ruta));
+    }
+
+    private DataInputStream abrir(String ruta) throws IOException {
+        return new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(Files.newInputStream(directorio.resolve(ruta)), 64 * 1024)));
+    }
+
+    private static Document leerCabecera(DataInputStream entrada) throws IOException {
+        if (entrada.readInt() != MAGICO) {
+            throw new IOException("Formato de archivo frío no reconocido");
+        }
+        byte[] bytes = new byte[entrada.readInt()];
+        entrada.readFully(bytes);
+        return new RawBsonDocument(bytes).decode(CODEC);
+    }
+
+    // Adaptador de FileChannel a OutputStream que no cierra el canal (se fuerza a disco antes de cerrarlo)
+    private static final class SalidaCanal extends OutputStream {
+        private final FileChannel canal;
+
+        SalidaCanal(FileChannel canal) {
+            this.canal = canal;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+            while (buffer.hasRemaining()) {
+                canal.write(buffer);
+            }
+        }
+
+        @Override
+        public void close() {
+            // El canal lo cierra quien lo abrió
+        }
+    }
+}
@@ -0,0 +1,298 @@
+package org.example.repository;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.MongoCommandException;
+import com.mongodb.client.ClientSession;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.CreateCollectionOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.InsertManyOptions;
+import com.mongodb.client.model.Sorts;
+import com.mongodb.client.model.TimeSeriesGranularity;
+import com.mongodb.client.model.TimeSeriesOptions;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
+import org.example.config.PerfilesDurabilidad;
+import org.example.metrics.Contador;
+import org.example.metrics.RegistroMetricas;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Registro de auditoría en una colección de series temporales
+// Cada evento es {fecha, meta: {docId, usuario}, accion}; los eventos de un mismo documento y usuario
+// se agrupan en buckets y caducan a los 'diasRetencion' días (expireAfterSeconds). Las colecciones de
+// series temporales no admiten escrituras dentro de transacciones multi-documento, así que:
+//   - los eventos transaccionales (aprobaciones) se escriben en la bandeja "auditoria_bandeja", una
+//     colección normal, dentro de la propia transacción, y un hilo los traslada por lotes a la serie
+//     temporal (al menos una vez: tras una caída entre la copia y el borrado puede duplicarse alguno);
+//   - el resto de eventos se encolan y se escriben con inserciones agrupadas (en la bandeja mientras
+//     la serie temporal no esté preparada, para no crearla implícitamente como colección normal).
+// La preparación de la colección corre a cargo de las tareas en segundo plano, nunca del llamador.
+// Las consultas leen la serie temporal y la bandeja, de modo que los eventos pendientes de traslado
+// también aparecen. Fuera de transacción, las escrituras y lecturas usan el perfil de durabilidad de
+// la operación "auditoria": el traslado sólo borra de la bandeja lo que la serie temporal confirmó
+// con ese write concern, de modo que una conmutación no puede revertir eventos ya retirados.
+// Las aprobaciones de la antigua colección "auditoria_aprobaciones" se migran una sola vez a la
+// bandeja (con su _id, así que repetir la migración tras una caída no duplica eventos).
+public class AuditoriaDocumentos {
+    private static final Logger LOG = LoggerFactory.getLogger(AuditoriaDocumentos.class);
+    private static final String COLECCION = "auditoria";
+    private static final String BANDEJA = "auditoria_bandeja";
+    private static final String ANTERIOR = "auditoria_aprobaciones";
+    private static final int CLAVE_DUPLICADA = 11000;
+
+    private final MongoDatabase database;
+    private final MongoCollection<Document> eventos;
+    private final MongoCollection<Document> bandeja;
+    private final MongoCollection<Document> bandejaTransaccional;
+    private final MongoCollection<Document> anterior;
+    private final long diasRetencion;
+    private final int tamanoLote;
+    private final AgrupadorInserciones agrupador;
+    private ScheduledExecutorService trasladador;
+    private final Object traslado = new Object();
+    private volatile boolean preparada;
+
+    private final Contador trasladados = RegistroMetricas.contador("auditoria.trasladados");
+    private final Contador migrados = RegistroMetricas.contador("auditoria.migrados");
+
+    public AuditoriaDocumentos(MongoDatabase database, PerfilesDurabilidad durabilidad, long diasRetencion,
+                               int tamanoLote, long esperaMaximaMicros, int capacidadCola) {
+        this.database = database;
+        this.eventos = durabilidad.aplicar("auditoria", database.getCollection(COLECCION));
+        this.bandeja = durabilidad.aplicar("auditoria", database.getCollection(BANDEJA));
+        // Dentro de una transacción los concerns son los de la transacción
+        this.bandejaTransaccional = database.getCollection(BANDEJA);
+        this.anterior = durabilidad.aplicar("auditoria", database.getCollection(ANTERIOR));
+        this.diasRetencion = diasRetencion;
+        this.tamanoLote = Math.max(1, tamanoLote);
+        this.agrupador = new AgrupadorInserciones("auditoria.insercion", this.tamanoLote, esperaMaximaMicros, capacidadCola);
+    }
+
+    // Crea la colección de series temporales (o ajusta su retención si ya existe) y sus índices.
+    // Hasta que termina, nada se escribe en la serie temporal: insertar en una colección inexistente
+    // la crearía como colección normal.
+    public synchronized void crearColeccion() {
+        Document existente = database.listCollections().filter(Filters.eq("name", COLECCION)).first();
+        if (existente != null && !"timeseries".equals(existente.getString("type"))) {
+            LOG.warn("La colección {} existe y no es de series temporales; se usa sin retención", COLECCION);
+        } else if (existente == null) {
+            CreateCollectionOptions opciones = new CreateCollectionOptions().timeSeriesOptions(
+                    new TimeSeriesOptions("fecha").metaField("meta").granularity(TimeSeriesGranularity.SECONDS));
+            if (diasRetencion > 0) {
+                opciones.expireAfter(diasRetencion, TimeUnit.DAYS);
+            }
+            try {
+                database.createCollection(COLECCION, opciones);
+                LOG.atInfo().addKeyValue("retencionDias", diasRetencion).log("Colección de auditoría creada");
+            } catch (MongoCommandException e) {
+                // Creada entretanto por otro proceso
+                if (e.getErrorCode() != 48) throw e;
+            }
+        } else {
+            // La retención se ajusta a la configuración vigente en cada arranque
+            database.runCommand(new Document("collMod", COLECCION)
+                    .append("expireAfterSeconds", diasRetencion > 0 ? TimeUnit.DAYS.toSeconds(diasRetencion) : "off"));
+        }
+        // Historial de un documento y actividad de un usuario, ambos por fecha descendente
+        for (MongoCollection<Document> coleccion : List.of(eventos, bandeja)) {
+            coleccion.createIndex(Indexes.compoundIndex(Indexes.ascending("meta.docId"), Indexes.descending("fecha")));
+            coleccion.createIndex(Indexes.compoundIndex(Indexes.ascending("meta.usuario"), Indexes.descending("fecha")));
+        }
+        preparada = true;
+        try {
+            migrarAnteriores();
+        } catch (RuntimeException e) {
+            // Lo no migrado sigue en la colección anterior y se reintenta en el siguiente arranque
+            LOG.warn("Fallo al migrar la auditoría anterior: {}", e.getMessage());
+        }
+    }
+
+    private void asegurarColeccion() {
+        if (!preparada) {
+            crearColeccion();
+        }
+    }
+
+    // === REGISTRO ===
+
+    // Evento dentro de la transacción de la sesión: se confirma o se descarta con ella
+    public void registrarEnTransaccion(ClientSession session, ObjectId docId, String usuario, String accion) {
+        bandejaTransaccional.insertOne(session, evento(docId, usuario, accion));
+    }
+
+    // Evento fuera de transacción: se escribe con el siguiente lote, sin esperar
+    public CompletableFuture<ObjectId> registrar(ObjectId docId, String usuario, String accion) {
+        return agrupador.insertar(preparada ? eventos : bandeja, evento(docId, usuario, accion)).whenComplete((id, error) -> {
+            if (error != null) {
+                LOG.atWarn().addKeyValue("docId", docId).addKeyValue("accion", accion)
+                        .log("No se pudo registrar el evento de auditoría: {}", error.getMessage());
+            }
+        });
+    }
+
+    private static Document evento(ObjectId docId, String usuario, String accion) {
+        return new Document("fecha", new Date())
+                .append("meta", new Document("docId", docId).append("usuario", usuario))
+                .append("accion", accion);
+    }
+
+    // === TRASLADO DE LA BANDEJA ===
+
+    // Inicia el traslado periódico de la bandeja transaccional a la serie temporal
+    public synchronized void iniciar(long intervaloMs) {
+        if (trasladador != null || intervaloMs <= 0) return;
+        trasladador = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread hilo = new Thread(r, "auditoria-bandeja");
+            hilo.setDaemon(true);
+            return hilo;
+        });
+        trasladador.scheduleWithFixedDelay(() -> {
+            try {
+                trasladarBandeja();
+            } catch (RuntimeException e) {
+                LOG.warn("Fallo al trasladar la bandeja de auditoría: {}", e.getMessage());
+            }
+        }, intervaloMs, intervaloMs, TimeUnit.MILLISECONDS);
+    }
+
+    // Copia los eventos de la bandeja por lotes y los borra una vez escritos; devuelve los trasladados
+    public long trasladarBandeja() {
+        synchronized (traslado) {
+            asegurarColeccion();
+            return trasladarLotes();
+        }
+    }
+
+    private long trasladarLotes() {
+        long total = 0;
+        while (true) {
+            List<Document> lote = bandeja.find().sort(Sorts.ascending("_id")).limit(tamanoLote).into(new ArrayList<>());
+            if (lote.isEmpty()) break;
+            eventos.insertMany(lote, new InsertManyOptions().ordered(false));
+            List<Object> ids = new ArrayList<>(lote.size());
+            for (Document evento : lote) {
+                ids.add(evento.get("_id"));
+            }
+            bandeja.deleteMany(Filters.in("_id", ids));
+            total += lote.size();
+            if (lote.size() < tamanoLote) break;
+        }
+        if (total > 0) {
+            trasladados.sumar(total);
+            LOG.atDebug().addKeyValue("eventos", total).log("Bandeja de auditoría trasladada");
+        }
+        return total;
+    }
+
+    // === MIGRACIÓN DE LA COLECCIÓN ANTERIOR ===
+
+    // Copia las aprobaciones de "auditoria_aprobaciones" ({docId, fechaAprobacion, accion, usuario})
+    // a la bandeja en formato de evento, borra cada lote copiado y elimina la colección al vaciarse.
+    // El traslado periódico las lleva después a la serie temporal; devuelve los eventos migrados.
+    public long migrarAnteriores() {
+        if (database.listCollections().filter(Filters.eq("name", ANTERIOR)).first() == null) {
+            return 0;
+        }
+        long total = 0;
+        while (true) {
+            List<Document> lote = anterior.find().sort(Sorts.ascending("_id")).limit(tamanoLote).into(new ArrayList<>());
+            if (lote.isEmpty()) break;
+            List<Document> convertidos = new ArrayList<>(lote.size());
+            List<Object> ids = new ArrayList<>(lote.size());
+            for (Document aprobacion : lote) {
+                convertidos.add(eventoAnterior(aprobacion));
+                ids.add(aprobacion.get("_id"));
+            }
+            try {
+                bandeja.insertMany(convertidos, new InsertManyOptions().ordered(false));
+            } catch (MongoBulkWriteException e) {
+                // Los ya copiados en un intento anterior (mismo _id) se dan por migrados
+                if (e.getWriteConcernError() != null
+                        || e.getWriteErrors().stream().anyMatch(fallo -> fallo.getCode() != CLAVE_DUPLICADA)) {
+                    throw e;
+                }
+            }
+            anterior.deleteMany(Filters.in("_id", ids));
+            total += lote.size();
+            if (lote.size() < tamanoLote) break;
+        }
+        anterior.drop();
+        if (total > 0) {
+            migrados.sumar(total);
+        }
+        LOG.atInfo().addKeyValue("eventos", total).log("Auditoría anterior migrada");
+        return total;
+    }
+
+    private static Document eventoAnterior(Document aprobacion) {
+        Object id = aprobacion.get("_id");
+        Date fecha = aprobacion.getDate("fechaAprobacion");
+        if (fecha == null && id instanceof ObjectId objectId) {
+            fecha = objectId.getDate();
+        }
+        return new Document("_id", id)
+                .append("fecha", fecha != null ? fecha : new Date())
+                .append("meta", new Document("docId", aprobacion.get("docId")).append("usuario", aprobacion.getString("usuario")))
+                .append("accion", aprobacion.getString("accion"));
+    }
+
+    // Escribe los eventos encolados, traslada lo pendiente de la bandeja y detiene los hilos
+    public void cerrar() {
+        synchronized (this) {
+            if (trasladador != null) {
+                trasladador.shutdownNow();
+                trasladador = null;
+            }
+        }
+        agrupador.cerrar();
+        try {
+            trasladarBandeja();
+        } catch (RuntimeException e) {
+            LOG.warn("La bandeja de auditoría queda pendiente de traslado: {}", e.getMessage());
+        }
+    }
+
+    // === CONSULTAS ===
+
+    // Eventos de un documento, del más reciente al más antiguo
+    public List<Document> historialDocumento(ObjectId docId, int limite) {
+        return consultar(Filters.eq("meta.docId", docId), limite);
+    }
+
+    // Eventos en el intervalo [desde, hasta] (extremos opcionales), opcionalmente de un usuario
+    public List<Document> actividad(Date desde, Date hasta, String usuario, int limite) {
+        List<Bson> condiciones = new ArrayList<>();
+        if (usuario != null && !usuario.isBlank()) condiciones.add(Filters.eq("meta.usuario", usuario));
+        if (desde != null) condiciones.add(Filters.gte("fecha", desde));
+        if (hasta != null) condiciones.add(Filters.lte("fecha", hasta));
+        return consultar(condiciones.isEmpty() ? new Document() : Filters.and(condiciones), limite);
+    }
+
+    // Un evento en pleno traslado puede estar a la vez en la bandeja y en la serie: se cuenta una vez
+    private List<Document> consultar(Bson filtro, int limite) {
+        Map<Object, Document> porId = new LinkedHashMap<>();
+        for (MongoCollection<Document> coleccion : List.of(eventos, bandeja)) {
+            for (Document evento : coleccion.find(filtro).sort(Sorts.descending("fecha")).limit(limite)) {
+                porId.putIfAbsent(evento.get("_id"), evento);
+            }
+        }
+        List<Document> resultado = new ArrayList<>(porId.values());
+        resultado.sort(Comparator.comparing((Document evento) -> evento.getDate("fecha")).reversed());
+        return resultado.size() > limite ? new ArrayList<>(resultado.subList(0, limite)) : resultado;
+    }
+}
@@ -0,0 +1,233 @@
+package org.example.repository;
+
+import org.bson.types.ObjectId;
+import org.example.metrics.Contador;
+import org.example.metrics.RegistroMetricas;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Caché local en disco de adjuntos de GridFS
+// Cada entrada es el archivo <directorio>/<archivoId>-<longitud>.bin; la clave incluye la longitud
+// para descartar copias de un archivo distinto con el mismo identificador. El tamaño total está
+// acotado y se desalojan primero las entradas usadas hace más tiempo (LRU). Los aciertos se sirven
+// con FileChannel.transferTo, que evita copiar los datos al espacio de usuario cuando el destino
+// es un archivo.
+public class CacheAdjuntos {
+    private static final Logger LOG = LoggerFactory.getLogger(CacheAdjuntos.class);
+    private static final Pattern NOMBRE_ENTRADA = Pattern.compile("([0-9a-f]{24})-(\\d+)\\.bin");
+
+    private final Path directorio;
+    private final long bytesMaximos;
+
+    // Índice en memoria en orden de acceso (la primera entrada es la menos reciente)
+    private final LinkedHashMap<ObjectId, Entrada> entradas = new LinkedHashMap<>(256, 0.75f, true);
+    private long bytesOcupados;
+
+    private final Contador aciertos = RegistroMetricas.contador("cache.adjuntos.aciertos");
+    private final Contador fallos = RegistroMetricas.contador("cache.adjuntos.fallos");
+    private final Contador bytesAhorrados = RegistroMetricas.contador("cache.adjuntos.bytesAhorrados");
+    private final Contador desalojos = RegistroMetricas.contador("cache.adjuntos.desalojos");
+    private final AtomicLong ocupacion = new AtomicLong();
+
+    private record Entrada(Path ruta, long longitud) { }
+
+    public CacheAdjuntos(Path directorio, long bytesMaximos) throws IOException {
+        this.directorio = directorio;
+        this.bytesMaximos = bytesMaximos;
+        Files.createDirectories(directorio);
+        recuperarEntradas();
+        RegistroMetricas.indicador("cache.adjuntos.tasaAciertos", () -> {
+            long total = aciertos.getValor() + fallos.getValor();
+            return total == 0 ? 0.0 : (double) aciertos.getValor() / total;
+        });
+        RegistroMetricas.indicador("cache.adjuntos.bytesOcupados", ocupacion::get);
+    }
+
+    // === LECTURA ===
+
+    // Copia la entrada al destino si está en caché con la longitud indicada; false si no está
+    public boolean servir(ObjectId archivoId, long longitud, OutputStream destino) throws IOException {
+        Entrada entrada;
+        synchronized (this) {
+            entrada = entradas.get(archivoId);
+        }
+        if (entrada == null || entrada.longitud() != longitud) {
+            if (entrada != null) {
+                invalidar(archivoId);
+            }
+            fallos.incrementar();
+            return false;
+        }
+        // Un desalojo concurrente puede borrar el archivo, pero el descriptor abierto sigue siendo válido
+        FileChannel canal;
+        try {
+            canal = FileChannel.open(entrada.ruta(), StandardOpenOption.READ);
+        } catch (NoSuchFileException e) {
+            invalidar(archivoId);
+            fallos.incrementar();
+            return false;
+        }
+        try (canal) {
+            // Un archivo más corto que la entrada (truncado o dañado) no se sirve: se descarga de GridFS
+            if (canal.size() < longitud) {
+                invalidar(archivoId);
+                fallos.incrementar();
+                return false;
+            }
+            WritableByteChannel salida = destino instanceof FileOutputStream archivo
+                    ? archivo.getChannel() : Channels.newChannel(destino);
+            long posicion = 0;
+            while (posicion < longitud) {
+                long transferidos = canal.transferTo(posicion, longitud - posicion, salida);
+                if (transferidos <= 0) {
+                    // Truncado durante la copia: el destino ya recibió parte, así que no cabe reintentar
+                    invalidar(archivoId);
+                    throw new IOException("Entrada de caché truncada durante la lectura: " + archivoId);
+                }
+                posicion += transferidos;
+            }
+        }
+        aciertos.incrementar();
+        bytesAhorrados.sumar(longitud);
+        return true;
+    }
+
+    // === ESCRITURA ===
+
+    // Copia el contenido al destino y, a la vez, a un archivo temporal que se incorpora a la caché
+    // si se leyó completo con la longitud esperada
+    public void copiarYGuardar(ObjectId archivoId, long longitud, InputStream contenido, OutputStream destino)
+            throws IOException {
+        if (longitud > bytesMaximos) {
+            contenido.transferTo(destino);
+            return;
+        }
+        Path temporal = Files.createTempFile(directorio, ".adjunto", ".tmp");
+        try {
+            long copiados = 0;
+            try (OutputStream copia = Files.newOutputStream(temporal)) {
+                byte[] buffer = new byte[64 * 1024];
+                int leidos;
+                while ((leidos = contenido.read(buffer)) != -1) {
+                    destino.write(buffer, 0, leidos);
+                    copia.write(buffer, 0, leidos);
+                    copiados += leidos;
+                }
+            }
+            if (copiados == longitud) {
+                Path ruta = directorio.resolve(archivoId.toHexString() + "-" + longitud + ".bin");
+                Files.move(temporal, ruta, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                incorporar(archivoId, new Entrada(ruta, longitud));
+            }
+        } finally {
+            Files.deleteIfExists(temporal);
+        }
+    }
+
+    // Elimina la entrada de un archivo que ya no existe en GridFS
+    public void invalidar(ObjectId archivoId) {
+        Entrada entrada;
+        synchronized (this) {
+            entrada = entradas.remove(archivoId);
+            if (entrada != null) {
+                bytesOcupados -= entrada.longitud();
+                ocupacion.set(bytesOcupados);
+            }
+        }
+        if (entrada != null) {
+            borrar(entrada.ruta());
+            LOG.atDebug().addKeyValue("archivoId", archivoId).log("Entrada de caché invalidada");
+        }
+    }
+
+    // === DESALOJO ===
+
+    private void incorporar(ObjectId archivoId, Entrada nueva) {
+        List<Path> desalojadas = new ArrayList<>();
+        synchronized (this) {
+            Entrada anterior = entradas.put(archivoId, nueva);
+            if (anterior != null) {
+                bytesOcupados -= anterior.longitud();
+                if (!anterior.ruta().equals(nueva.ruta())) {
+                    desalojadas.add(anterior.ruta());
+                }
+            }
+            bytesOcupados += nueva.longitud();
+            Iterator<Map.Entry<ObjectId, Entrada>> menosRecientes = entradas.entrySet().iterator();
+            while (bytesOcupados > bytesMaximos && menosRecientes.hasNext()) {
+                Map.Entry<ObjectId, Entrada> candidata = menosRecientes.next();
+                if (candidata.getKey().equals(archivoId)) continue;
+                bytesOcupados -= candidata.getValue().longitud();
+                desalojadas.add(candidata.getValue().ruta());
+                menosRecientes.remove();
+            }
+            ocupacion.set(bytesOcupados);
+        }
+        // El borrado en disco se hace fuera del cerrojo
+        for (Path ruta : desalojadas) {
+            borrar(ruta);
+            desalojos.incrementar();
+        }
+    }
+
+    // Reconstruye el índice a partir del directorio, en orden de última modificación
+    private void recuperarEntradas() throws IOException {
+        List<Path> archivos = new ArrayList<>();
+        try (DirectoryStream<Path> contenido = Files.newDirectoryStream(directorio)) {
+            for (Path ruta : contenido) {
+                if (ruta.getFileName().toString().endsWith(".tmp")) {
+                    borrar(ruta); // Restos de copias interrumpidas
+                } else if (NOMBRE_ENTRADA.matcher(ruta.getFileName().toString()).matches()) {
+                    archivos.add(ruta);
+                }
+            }
+        }
+        archivos.sort((a, b) -> {
+            try {
+                return Files.getLastModifiedTime(a).compareTo(Files.getLastModifiedTime(b));
+            } catch (IOException e) {
+                return 0;
+            }
+        });
+        for (Path ruta : archivos) {
+            Matcher m = NOMBRE_ENTRADA.matcher(ruta.getFileName().toString());
+            if (m.matches() && Files.size(ruta) == Long.parseLong(m.group(2))) {
+                incorporar(new ObjectId(m.group(1)), new Entrada(ruta, Long.parseLong(m.group(2))));
+            } else {
+                borrar(ruta);
+            }
+        }
+        LOG.atInfo().addKeyValue("entradas", entradas.size()).addKeyValue("bytes", bytesOcupados)
+                .log("Caché de adjuntos cargada");
+    }
+
+    private static void borrar(Path ruta) {
+        try {
+            Files.deleteIfExists(ruta);
+        } catch (IOException e) {
+            LOG.atWarn().addKeyValue("ruta", ruta).log("No se pudo borrar la entrada de caché: {}", e.getMessage());
+        }
+    }
+}
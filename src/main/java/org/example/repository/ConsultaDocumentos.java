@@ -0,0 +1,27 @@
+package org.example.repository;
+
+import java.time.LocalDateTime;
+
+// Criterio de consulta del repositorio para recorridos masivos (exportaciones, informes):
+// todos los documentos, por autor, por tipo o por rango de fechas de creación
+public record ConsultaDocumentos(Criterio criterio, String valor, LocalDateTime desde, LocalDateTime hasta) {
+
+    public enum Criterio { TODOS, AUTOR, TIPO, RANGO }
+
+    public static ConsultaDocumentos todos() {
+        return new ConsultaDocumentos(Criterio.TODOS, null, null, null);
+    }
+
+    public static ConsultaDocumentos porAutor(String autor) {
+        return new ConsultaDocumentos(Criterio.AUTOR, autor, null, null);
+    }
+
+    public static ConsultaDocumentos porTipo(String tipoDocumento) {
+        return new ConsultaDocumentos(Criterio.TIPO, tipoDocumento, null, null);
+    }
+
+    // Cualquiera de los dos extremos puede ser null (rango abierto)
+    public static ConsultaDocumentos porRango(LocalDateTime desde, LocalDateTime hasta) {
+        return new ConsultaDocumentos(Criterio.RANGO, null, desde, hasta);
+    }
+}
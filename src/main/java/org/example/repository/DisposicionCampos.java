@@ -0,0 +1,132 @@
+package org.example.repository;
+
+import com.mongodb.client.model.Updates;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+
+import java.util.List;
+import java.util.Map;
+
+// Disposición física de los campos de un registro de la colección "documentos"
+// EXTENDIDA: nombres largos y valores en texto, con nulos explícitos (formato original)
+// COMPACTA: nombres cortos, tipo y estado como enteros pequeños y campos ausentes en lugar de nulos
+public enum DisposicionCampos {
+    EXTENDIDA,
+    COMPACTA;
+
+    // Campos lógicos del documento
+    public static final String TITULO = "titulo";
+    public static final String AUTOR = "autor";
+    public static final String TIPO = "tipoDocumento";
+    public static final String FECHA_CREACION = "fechaCreacion";
+    public static final String FECHA_MODIFICACION = "fechaModificacion";
+    public static final String ESTADO = "estado";
+    public static final String VERSION = "version";
+    public static final String ARCHIVO = "archivoId";
+
+    static final List<String> CAMPOS = List.of(
+            TITULO, AUTOR, TIPO, FECHA_CREACION, FECHA_MODIFICACION, ESTADO, VERSION, ARCHIVO);
+
+    private static final Map<String, String> NOMBRES_CORTOS = Map.of(
+            TITULO, "t",
+            AUTOR, "a",
+            TIPO, "tp",
+            FECHA_CREACION, "fc",
+            FECHA_MODIFICACION, "fm",
+            ESTADO, "e",
+            VERSION, "v",
+            ARCHIVO, "f");
+
+    // Diccionarios de valores de baja cardinalidad; los valores no catalogados se guardan como texto
+    private static final List<String> TIPOS = List.of("PDF", "DOC", "IMAGEN", "VIDEO", "TXT");
+    private static final List<String> ESTADOS = List.of("BORRADOR", "APROBADO", "ARCHIVADO");
+
+    // Determina la disposición de un registro leído de la base de datos
+    public static DisposicionCampos de(Document registro) {
+        return registro.containsKey(NOMBRES_CORTOS.get(VERSION)) ? COMPACTA : EXTENDIDA;
+    }
+
+    // Nombre físico de un campo lógico
+    public String campo(String logico) {
+        if (this == EXTENDIDA) return logico;
+        String corto = NOMBRES_CORTOS.get(logico);
+        return corto != null ? corto : logico;
+    }
+
+    // Valor físico de un campo lógico
+    public Object codificar(String logico, Object valor) {
+        if (this == EXTENDIDA || !(valor instanceof String texto)) return valor;
+        List<String> diccionario = diccionario(logico);
+        if (diccionario == null) return valor;
+        int indice = diccionario.indexOf(texto);
+        return indice >= 0 ? indice + 1 : valor;
+    }
+
+    private Object decodificar(String logico, Object valor) {
+        if (this == EXTENDIDA || !(valor instanceof Integer codigo)) return valor;
+        List<String> diccionario = diccionario(logico);
+        if (diccionario == null || codigo < 1 || codigo > diccionario.size()) return valor;
+        return diccionario.get(codigo - 1);
+    }
+
+    // Texto de un código de diccionario de la disposición compacta (null si no es un código válido)
+    static String textoDeCodigo(String logico, int codigo) {
+        List<String> diccionario = diccionario(logico);
+        return diccionario == null || codigo < 1 || codigo > diccionario.size() ? null : diccionario.get(codigo - 1);
+    }
+
+    private static List<String> diccionario(String logico) {
+        if (TIPO.equals(logico)) return TIPOS;
+        if (ESTADO.equals(logico)) return ESTADOS;
+        return null;
+    }
+
+    // Asignación de un campo; en disposición compacta un valor nulo elimina el campo
+    public Bson set(String logico, Object valor) {
+        if (valor == null && this == COMPACTA) {
+            return Updates.unset(campo(logico));
+        }
+        return Updates.set(campo(logico), codificar(logico, valor));
+    }
+
+    // Construye un registro físico a partir de valores lógicos
+    // (el _id y los campos no catalogados se copian sin cambios)
+    public Document escribir(Document logico) {
+        Document registro = new Document();
+        if (logico.containsKey("_id")) {
+            registro.append("_id", logico.get("_id"));
+        }
+        for (String campo : CAMPOS) {
+            Object valor = logico.get(campo);
+            if (valor == null && this == COMPACTA) continue;
+            registro.append(campo(campo), codificar(campo, valor));
+        }
+        logico.forEach((clave, valor) -> {
+            if (!clave.equals("_id") && !CAMPOS.contains(clave)) {
+                registro.append(clave, valor);
+            }
+        });
+        return registro;
+    }
+
+    // Normaliza un registro físico a nombres y valores lógicos (formato extendido)
+    public Document aLogico(Document registro) {
+        if (this == EXTENDIDA) return registro;
+        Document logico = new Document("_id", registro.get("_id"));
+        for (String campo : CAMPOS) {
+            Object valor = registro.get(campo(campo));
+            logico.append(campo, decodificar(campo, valor));
+        }
+        registro.forEach((clave, valor) -> {
+            if (!clave.equals("_id") && !NOMBRES_CORTOS.containsValue(clave)) {
+                logico.append(clave, valor);
+            }
+        });
+        return logico;
+    }
+
+    // Atajo: normaliza un registro sea cual sea su disposición
+    public static Document normalizar(Document registro) {
+        return registro == null ? null : de(registro).aLogico(registro);
+    }
+}
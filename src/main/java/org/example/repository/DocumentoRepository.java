@@ -1,24 +1,54 @@
 package org.example.repository;
 
 import com.mongodb.client.*;
+import com.mongodb.MongoGridFSException;
+import com.mongodb.ReadConcern;
+import com.mongodb.ReadPreference;
 import com.mongodb.client.gridfs.GridFSBucket;
+import com.mongodb.client.gridfs.GridFSDownloadStream;
+import com.mongodb.client.gridfs.model.GridFSFile;
 import com.mongodb.client.gridfs.GridFSBuckets;
 import com.mongodb.client.model.*;
 import com.mongodb.client.result.DeleteResult;
 import com.mongodb.client.result.UpdateResult;
 import org.bson.BsonTimestamp;
 import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.DocumentCodec;
 import org.bson.types.ObjectId;
 import org.example.config.MongoConfig;
+import org.example.config.PerfilesDurabilidad;
+import org.example.metrics.Contador;
+import org.example.metrics.EntradaContada;
+import org.example.metrics.MetricasOperacion;
+import org.example.metrics.RegistroMetricas;
+import org.example.metrics.SalidaContada;
 import org.example.model.Documento;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.spi.LoggingEventBuilder;
 
 import java.io.FileInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.List;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 import static com.mongodb.client.model.Filters.*;
 import static com.mongodb.client.model.Sorts.descending;
@@ -31,129 +61,341 @@ import com.mongodb.client.model.Filters;
 // Repositorio principal para gestión documental con MongoDB
 // Implementa transacciones ACID multi-documento, versionamiento y recuperación ante fallos
 public class DocumentoRepository {
-    private final MongoCollection<Document> collection; // Colección principal de documentos
+    // Registro de eventos por operación; el nivel de cada una se ajusta en logback.xml
+    private static final Logger LOG = LoggerFactory.getLogger(DocumentoRepository.class);
+    private static final Logger LOG_GUARDAR = registroOperacion("guardar");
+    private static final Logger LOG_CONSULTA = registroOperacion("consulta");
+    private static final Logger LOG_ACTUALIZAR = registroOperacion("actualizar");
+    private static final Logger LOG_ELIMINAR = registroOperacion("eliminar");
+    private static final Logger LOG_APROBAR = registroOperacion("aprobar");
+    private static final Logger LOG_DESCARGA = registroOperacion("descarga");
+    private static final Logger LOG_OPLOG = registroOperacion("oplog");
+    private static final Logger LOG_RECUPERACION = registroOperacion("recuperacion");
+
+    private final ParticionesDocumentos particiones; // Colección principal de documentos y particiones temporales
     private final GridFSBucket gridFSBucket; // Bucket GridFS para archivos grandes
+    private final EsquemaDocumento esquema; // Disposición de campos (extendida, compacta o mixta)
+    private final PerfilesDurabilidad durabilidad; // Write/read concern por operación
+
+    // Métricas por operación pública (llamadas, errores y latencia), publicadas por JMX
+    private final MetricasOperacion metricasGuardar = RegistroMetricas.operacion("repositorio.guardarDocumento");
+    private final MetricasOperacion metricasGuardarAsincrono = RegistroMetricas.operacion("repositorio.guardarDocumentoAsincrono");
+    private final MetricasOperacion metricasPorAutor = RegistroMetricas.operacion("repositorio.obtenerDocumentosPorAutor");
+    private final MetricasOperacion metricasPorTipo = RegistroMetricas.operacion("repositorio.obtenerDocumentosPorTipo");
+    private final MetricasOperacion metricasTodos = RegistroMetricas.operacion("repositorio.obtenerTodosLosDocumentos");
+    private final MetricasOperacion metricasPorId = RegistroMetricas.operacion("repositorio.obtenerDocumentoPorId");
+    private final MetricasOperacion metricasActualizar = RegistroMetricas.operacion("repositorio.actualizarDocumento");
+    private final MetricasOperacion metricasEliminar = RegistroMetricas.operacion("repositorio.eliminarDocumento");
+    private final MetricasOperacion metricasAprobar = RegistroMetricas.operacion("repositorio.aprobarDocumentoConTransaccion");
+    private final MetricasOperacion metricasUltimasOplog = RegistroMetricas.operacion("repositorio.obtenerUltimasOperacionesOplog");
+    private final MetricasOperacion metricasOplogDesde = RegistroMetricas.operacion("repositorio.obtenerOperacionesOplogDesde");
+    private final MetricasOperacion metricasRecuperacion = RegistroMetricas.operacion("repositorio.aplicarRecuperacionOplog");
+    private final MetricasOperacion metricasRangoFechas = RegistroMetricas.operacion("repositorio.buscarPorRangoFechas");
+    private final MetricasOperacion metricasSimularDesastre = RegistroMetricas.operacion("repositorio.simularDesastre");
+    private final MetricasOperacion metricasDescargar = RegistroMetricas.operacion("repositorio.descargarArchivoAdjunto");
+    private final MetricasOperacion metricasRecorrer = RegistroMetricas.operacion("repositorio.recorrerDocumentos");
+    private final MetricasOperacion metricasRecorrerLotes = RegistroMetricas.operacion("repositorio.recorrerEnLotes");
+    private final Contador bytesSubidos = RegistroMetricas.contador("gridfs.bytesSubidos");
+    private final Contador bytesDescargados = RegistroMetricas.contador("gridfs.bytesDescargados");
+    private final Contador reintentosTransaccion = RegistroMetricas.contador("transaccion.reintentos");
+    private final MetricasOperacion metricasActualizarFusion = RegistroMetricas.operacion("repositorio.actualizarDocumentoConFusion");
+    private final Contador reintentosFusion = RegistroMetricas.contador("actualizacion.fusion.reintentos");
+    private final Contador conflictosFusion = RegistroMetricas.contador("actualizacion.fusion.conflictos");
+    private final Contador actualizacionesFusionadas = RegistroMetricas.contador("actualizacion.fusion.fusionadas");
+
+    // Campos que admiten fusión a tres vías en actualizaciones concurrentes
+    private static final List<String> CAMPOS_FUSIONABLES = List.of("titulo", "autor", "tipoDocumento", "estado");
+    private final int intentosMaximosFusion;
+
+    // Historial de versiones por deltas (null si está desactivado)
+    private final HistorialVersiones historial;
+    private final boolean conservarAdjuntosHistoricos;
+    private final MetricasOperacion metricasObtenerVersion = RegistroMetricas.operacion("repositorio.obtenerVersion");
+    private final MetricasOperacion metricasListarVersiones = RegistroMetricas.operacion("repositorio.listarVersiones");
+    private final MetricasOperacion metricasHistorialAuditoria = RegistroMetricas.operacion("repositorio.obtenerHistorialAuditoria");
+    private final MetricasOperacion metricasActividadAuditoria = RegistroMetricas.operacion("repositorio.obtenerActividadAuditoria");
+
+    // Retención por particiones temporales
+    private final MetricasOperacion metricasRetencion = RegistroMetricas.operacion("repositorio.eliminarParticionesAnterioresA");
+    private static final int LOTE_LIMPIEZA = 1000;
+    private final int mesesRetencion;
+
+    // Archivado de documentos fríos en almacenamiento local comprimido
+    private final ArchivadorDocumentos archivador;
+    private final String estadoArchivable;
+    private final int mesesHastaArchivado;
+    private final int loteArchivado;
+
+    // Caché local de adjuntos descargados (null si está desactivada)
+    private final CacheAdjuntos cacheAdjuntos;
+
+    // Auditoría en serie temporal
+    private final AuditoriaDocumentos auditoria;
+    private final String usuarioAuditoria;
+
+    // Eliminación diferida de adjuntos de GridFS
+    private final RecolectorAdjuntos recolector;
+    private final long intervaloRecoleccion;
+
+    // Agrupación de inserciones concurrentes en insertMany (null si está desactivada)
+    private final AgrupadorInserciones agrupador;
 
-    // Constructor: inicializa conexión, colección y configura índices compuestos
+    // Constructor: inicializa el cliente y las colecciones sin esperar al servidor; los índices se
+    // verifican aparte con verificarIndicesEnSegundoPlano()
     public DocumentoRepository() {
         MongoDatabase database = MongoConfig.getMongoClient().getDatabase(MongoConfig.getDatabaseName());
-        this.collection = database.getCollection("documentos");
         this.gridFSBucket = GridFSBuckets.create(database, "archivos");
+        Properties propiedades = MongoConfig.getProperties();
+        this.durabilidad = new PerfilesDurabilidad(propiedades);
+        this.esquema = new EsquemaDocumento(EsquemaDocumento.Modo.valueOf(
+                propiedades.getProperty("esquema.documentos", "EXTENDIDO").trim().toUpperCase()));
+        this.particiones = new ParticionesDocumentos(database, "documentos",
+                ParticionesDocumentos.Periodo.valueOf(propiedades.getProperty("particiones.periodo", "NINGUNO").trim().toUpperCase()),
+                Integer.parseInt(propiedades.getProperty("particiones.hilosConsulta", "4")),
+                this::crearIndices);
+        this.mesesRetencion = Integer.parseInt(propiedades.getProperty("particiones.retencion.meses", "0"));
+        this.archivador = new ArchivadorDocumentos(particiones, esquema, gridFSBucket,
+                new ArchivoFrio(Path.of(propiedades.getProperty("archivado.directorio", "archivo_frio"))));
+        this.estadoArchivable = propiedades.getProperty("archivado.estado", "APROBADO");
+        this.mesesHastaArchivado = Integer.parseInt(propiedades.getProperty("archivado.antiguedadMeses", "12"));
+        this.loteArchivado = Integer.parseInt(propiedades.getProperty("archivado.lote", "200"));
+        this.cacheAdjuntos = crearCacheAdjuntos(propiedades);
+        this.agrupador = Boolean.parseBoolean(propiedades.getProperty("insercion.agrupada.habilitado", "false"))
+                ? new AgrupadorInserciones(
+                        Integer.parseInt(propiedades.getProperty("insercion.agrupada.lote", "256")),
+                        Long.parseLong(propiedades.getProperty("insercion.agrupada.esperaMaximaMicros", "2000")),
+                        Integer.parseInt(propiedades.getProperty("insercion.agrupada.cola", "10000")))
+                : null;
+        this.intentosMaximosFusion = Math.max(1, Integer.parseInt(
+                propiedades.getProperty("actualizacion.fusion.intentos", "5")));
+        if (Boolean.parseBoolean(propiedades.getProperty("historial.habilitado", "true"))) {
+            this.historial = new HistorialVersiones(database,
+                    Integer.parseInt(propiedades.getProperty("historial.intervaloCheckpoint", "10")));
+            this.conservarAdjuntosHistoricos = Boolean.parseBoolean(
+                    propiedades.getProperty("historial.conservarAdjuntos", "true"));
+        } else {
+            this.historial = null;
+            this.conservarAdjuntosHistoricos = false;
+        }
+        this.recolector = new RecolectorAdjuntos(database, "archivos", particiones,
+                historial != null && conservarAdjuntosHistoricos ? historial.coleccion() : null, cacheAdjuntos,
+                Integer.parseInt(propiedades.getProperty("gc.adjuntos.lote", "200")),
+                Double.parseDouble(propiedades.getProperty("gc.adjuntos.archivosPorSegundo", "500")),
+                Long.parseLong(propiedades.getProperty("gc.adjuntos.graciaSegundos", "3600")));
+        this.intervaloRecoleccion = Long.parseLong(propiedades.getProperty("gc.adjuntos.intervaloSegundos", "300"));
+        this.auditoria = new AuditoriaDocumentos(database, durabilidad,
+                Long.parseLong(propiedades.getProperty("auditoria.retencionDias", "365")),
+                Integer.parseInt(propiedades.getProperty("auditoria.lote", "500")),
+                Long.parseLong(propiedades.getProperty("auditoria.esperaMaximaMicros", "50000")),
+                Integer.parseInt(propiedades.getProperty("auditoria.cola", "10000")));
+        this.auditoria.iniciar(Long.parseLong(propiedades.getProperty("auditoria.bandeja.intervaloMs", "1000")));
+        this.usuarioAuditoria = propiedades.getProperty("auditoria.usuario", "admin");
+        RegistroMetricas.indicador("actualizacion.fusion.tasaConflictos", () -> {
+            long llamadas = metricasActualizarFusion.getLlamadas();
+            return llamadas == 0 ? 0.0 : (double) conflictosFusion.getValor() / llamadas;
+        });
+    }
 
-        // Creación de índice compuesto para optimizar búsquedas frecuentes
-        collection.createIndex(Indexes.compoundIndex(
-                Indexes.ascending("tipoDocumento"),
-                Indexes.descending("fechaCreacion"),
-                Indexes.ascending("autor")
-        ));
-        System.out.println("Índice compuesto creado: tipoDocumento, fechaCreacion, autor");
+    private static CacheAdjuntos crearCacheAdjuntos(Properties propiedades) {
+        if (!Boolean.parseBoolean(propiedades.getProperty("cache.adjuntos.habilitado", "false"))) {
+            return null;
+        }
+        Path directorio = Path.of(propiedades.getProperty("cache.adjuntos.directorio", "cache_adjuntos"));
+        long bytesMaximos = Long.parseLong(propiedades.getProperty("cache.adjuntos.megas", "512")) * 1024 * 1024;
+        try {
+            return new CacheAdjuntos(directorio, bytesMaximos);
+        } catch (IOException e) {
+            LOG.atWarn().addKeyValue("directorio", directorio).log("Caché de adjuntos desactivada: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    // Creación de índice compuesto para optimizar búsquedas frecuentes (uno por disposición legible);
+    // se aplica a la colección base y a cada partición nueva
+    private void crearIndices(MongoCollection<Document> coleccion) {
+        for (DisposicionCampos disposicion : esquema.lectura()) {
+            coleccion.createIndex(Indexes.compoundIndex(
+                    Indexes.ascending(disposicion.campo(DisposicionCampos.TIPO)),
+                    Indexes.descending(disposicion.campo(DisposicionCampos.FECHA_CREACION)),
+                    Indexes.ascending(disposicion.campo(DisposicionCampos.AUTOR))
+            ));
+        }
+        // Comprobación de referencias a adjuntos (recolector de GridFS)
+        for (DisposicionCampos disposicion : DisposicionCampos.values()) {
+            coleccion.createIndex(Indexes.ascending(disposicion.campo(DisposicionCampos.ARCHIVO)),
+                    new IndexOptions().sparse(true));
+        }
+        // Localización de documentos archivados a partir de su adjunto
+        coleccion.createIndex(Indexes.ascending(ArchivadorDocumentos.CAMPO_ARCHIVADO + ".archivoId"),
+                new IndexOptions().sparse(true));
+        LOG.atInfo().addKeyValue("coleccion", coleccion.getNamespace().getCollectionName())
+                .addKeyValue("esquema", esquema.getModo())
+                .log("Índice compuesto creado: tipoDocumento, fechaCreacion, autor");
     }
 
     // === OPERACIONES CRUD BÁSICAS ===
 
     // Guarda un documento sin archivo adjunto
     public void guardarDocumento(Documento documento) {
-        guardarDocumentoConArchivo(documento, null, null);
+        guardarDocumentoConArchivo(documento, (InputStream) null, null);
     }
 
     // Guarda un documento con archivo adjunto en GridFS
     public void guardarDocumentoConArchivo(Documento documento, String rutaArchivo, String nombreArchivo) {
+        if (rutaArchivo == null || rutaArchivo.isBlank()) {
+            guardarDocumentoConArchivo(documento, (InputStream) null, null);
+            return;
+        }
+
+        // Procesar archivo adjunto desde la ruta proporcionada
+        String nombre = nombreArchivo != null && !nombreArchivo.isBlank()
+                ? nombreArchivo : new java.io.File(rutaArchivo).getName();
+        try (InputStream stream = new FileInputStream(rutaArchivo)) {
+            guardarDocumentoConArchivo(documento, stream, nombre);
+        } catch (IOException e) {
+            LOG_GUARDAR.atError().addKeyValue("ruta", rutaArchivo).log("Error crítico al subir archivo: {}", e.getMessage());
+            throw new RuntimeException("Fallo en almacenamiento de archivo", e);
+        }
+    }
+
+    // Guarda un documento con archivo adjunto leído desde un flujo arbitrario
+    public void guardarDocumentoConArchivo(Documento documento, InputStream contenido, String nombreArchivo) {
+        medir(metricasGuardar, LOG_GUARDAR, null, () -> {
+            CompletableFuture<ObjectId> insercion = insertarDocumento(documento, contenido, nombreArchivo);
+            try {
+                insercion.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException r ? r : e;
+            }
+        });
+    }
+
+    // Guarda un documento sin esperar a su escritura; con la inserción agrupada activa, el futuro se
+    // completa cuando se confirma el lote que lo contiene (con su _id o con el error de ese documento).
+    // El adjunto, si lo hay, se sube antes de devolver el futuro.
+    public CompletableFuture<ObjectId> guardarDocumentoAsincrono(Documento documento, InputStream contenido,
+                                                                 String nombreArchivo) {
+        // La latencia abarca desde la encolación hasta que se completa el futuro
+        return medirAsincrono(metricasGuardarAsincrono, LOG_GUARDAR, null,
+                () -> insertarDocumento(documento, contenido, nombreArchivo));
+    }
+
+    private CompletableFuture<ObjectId> insertarDocumento(Documento documento, InputStream contenido, String nombreArchivo) {
         ObjectId archivoId = null;
 
-        // Procesar archivo adjunto si se proporciona ruta
-        if (rutaArchivo != null && !rutaArchivo.isBlank()) {
-            try (InputStream stream = new FileInputStream(rutaArchivo)) {
-                String nombre = nombreArchivo != null && !nombreArchivo.isBlank()
-                        ? nombreArchivo : new java.io.File(rutaArchivo).getName();
-                archivoId = gridFSBucket.uploadFromStream(nombre, stream);
-                System.out.println("Archivo subido a GridFS con ID: " + archivoId);
+        // Procesar archivo adjunto si se proporciona contenido
+        if (contenido != null) {
+            try {
+                archivoId = durabilidad.aplicar("guardar", gridFSBucket)
+                        .uploadFromStream(nombreArchivo, new EntradaContada(contenido, bytesSubidos));
+                LOG_GUARDAR.atDebug().addKeyValue("archivoId", archivoId).log("Archivo subido a GridFS");
             } catch (Exception e) {
-                System.err.println("Error crítico al subir archivo: " + e.getMessage());
+                LOG_GUARDAR.error("Error crítico al subir archivo: {}", e.getMessage());
                 throw new RuntimeException("Fallo en almacenamiento de archivo", e);
             }
         }
 
-        // Crear documento BSON para inserción en MongoDB
-        Document doc = new Document("titulo", documento.getTitulo())
+        // Crear documento BSON para inserción en MongoDB en la disposición de escritura activa
+        Document doc = esquema.escritura().escribir(new Document("titulo", documento.getTitulo())
                 .append("autor", documento.getAutor())
                 .append("tipoDocumento", documento.getTipoDocumento())
                 .append("fechaCreacion", Documento.convertirLocalDateTimeADate(documento.getFechaCreacion()))
                 .append("fechaModificacion", Documento.convertirLocalDateTimeADate(documento.getFechaModificacion()))
                 .append("estado", documento.getEstado())
                 .append("version", documento.getVersion())
-                .append("archivoId", archivoId);
+                .append("archivoId", archivoId));
 
-        collection.insertOne(doc);
-        documento.setId(doc.getObjectId("_id"));
+        MongoCollection<Document> coleccion = durabilidad.aplicar("guardar", particiones.paraFecha(
+                Documento.convertirLocalDateTimeADate(documento.getFechaCreacion())));
         documento.setArchivoId(archivoId);
-        System.out.println("Documento guardado con ID: " + documento.getId());
+        if (agrupador == null) {
+            coleccion.insertOne(doc);
+            documento.setId(doc.getObjectId("_id"));
+            auditar(documento.getId(), "CREADO");
+            LOG_GUARDAR.atDebug().addKeyValue("id", documento.getId()).log("Documento guardado");
+            return CompletableFuture.completedFuture(documento.getId());
+        }
+
+        // Inserción agrupada: el _id se asigna al encolar; si el documento no llega a escribirse
+        // se libera su adjunto
+        ObjectId adjunto = archivoId;
+        CompletableFuture<ObjectId> futuro = agrupador.insertar(coleccion, doc);
+        documento.setId(doc.getObjectId("_id"));
+        return futuro.whenCompleteAsync((id, error) -> {
+            if (error != null) {
+                LOG_GUARDAR.atWarn().addKeyValue("id", documento.getId()).log("Error en inserción agrupada: {}", error.getMessage());
+                if (adjunto != null) {
+                    marcarArchivoParaEliminar(adjunto);
+                }
+            } else {
+                auditar(id, "CREADO");
+                LOG_GUARDAR.atDebug().addKeyValue("id", id).log("Documento guardado");
+            }
+        });
     }
 
     // === CONSULTAS Y BÚSQUEDAS ===
 
-    // Metodo auxiliar para mapear documentos BSON a objetos del dominio
+    // Metodo auxiliar para mapear documentos BSON a objetos del dominio (consulta todas las particiones en paralelo)
     private List<Documento> mapearDocumentos(Bson filtro) {
         List<Documento> documentos = new ArrayList<>();
-        collection.find(filtro).forEach(document -> {
-            Documento doc = new Documento();
-            doc.setId(document.getObjectId("_id"));
-            doc.setTitulo(document.getString("titulo"));
-            doc.setAutor(document.getString("autor"));
-            doc.setTipoDocumento(document.getString("tipoDocumento"));
-            doc.setFechaCreacion(convertirDateALocalDateTime(document.get("fechaCreacion", Date.class)));
-            doc.setFechaModificacion(convertirDateALocalDateTime(document.get("fechaModificacion", Date.class)));
-            doc.setEstado(document.getString("estado"));
-            doc.setVersion(document.getInteger("version", 1));
-            doc.setArchivoId(document.getObjectId("archivoId"));
-            documentos.add(doc);
-        });
+        for (List<Documento> parcial : particiones.enParalelo(particiones.todas(),
+                coleccion -> durabilidad.aplicar("consulta", coleccion).find(filtro)
+                        .map(this::convertirADocumento).into(new ArrayList<>()))) {
+            documentos.addAll(parcial);
+        }
         return documentos;
     }
 
     // Consulta documentos por autor específico
     public List<Documento> obtenerDocumentosPorAutor(String autor) {
-        System.out.println("Consultando documentos del autor: " + autor);
-        return mapearDocumentos(Filters.eq("autor", autor));
+        return medir(metricasPorAutor, LOG_CONSULTA, null, () -> {
+            LOG_CONSULTA.atDebug().addKeyValue("autor", autor).log("Consultando documentos por autor");
+            return mapearDocumentos(esquema.filtro(DisposicionCampos.AUTOR, autor, Filters::eq));
+        });
     }
 
     // Consulta documentos por tipo específico
     public List<Documento> obtenerDocumentosPorTipo(String tipoDocumento) {
-        System.out.println("Consultando documentos del tipo: " + tipoDocumento);
-        return mapearDocumentos(Filters.eq("tipoDocumento", tipoDocumento));
+        return medir(metricasPorTipo, LOG_CONSULTA, null, () -> {
+            LOG_CONSULTA.atDebug().addKeyValue("tipo", tipoDocumento).log("Consultando documentos por tipo");
+            return mapearDocumentos(esquema.filtro(DisposicionCampos.TIPO, tipoDocumento, Filters::eq));
+        });
     }
 
     // Obtiene todos los documentos del sistema
     public List<Documento> obtenerTodosLosDocumentos() {
-        System.out.println("Obteniendo todos los documentos del repositorio");
-        return mapearDocumentos(new Document());
+        return medir(metricasTodos, LOG_CONSULTA, null, () -> {
+            LOG_CONSULTA.debug("Obteniendo todos los documentos del repositorio");
+            return mapearDocumentos(new Document());
+        });
     }
 
     // Búsqueda específica por identificador único
     public Documento obtenerDocumentoPorId(String id) {
-        try {
-            ObjectId objectId = new ObjectId(id);
-            Document document = collection.find(Filters.eq("_id", objectId)).first();
-            if (document == null) {
-                System.out.println("Documento no encontrado con ID: " + id);
+        return medir(metricasPorId, LOG_CONSULTA, id, () -> {
+            try {
+                ObjectId objectId = new ObjectId(id);
+                ParticionesDocumentos.Localizado localizado = particiones.localizar(objectId,
+                        c -> durabilidad.aplicar("consulta", c).find(Filters.eq("_id", objectId)).first());
+                Document document = localizado != null ? localizado.registro() : null;
+                if (ArchivadorDocumentos.esArchivado(document)) {
+                    // Restauración perezosa desde el almacenamiento frío
+                    document = archivador.restaurar(durabilidad.aplicar("consulta", localizado.coleccion()), document);
+                }
+                if (document == null) {
+                    LOG_CONSULTA.atDebug().addKeyValue("id", id).log("Documento no encontrado");
+                    return null;
+                }
+
+                Documento doc = convertirADocumento(document);
+                LOG_CONSULTA.atDebug().addKeyValue("id", id).log("Documento encontrado");
+                return doc;
+            } catch (IllegalArgumentException e) {
+                LOG_CONSULTA.atWarn().addKeyValue("id", id).log("ID inválido proporcionado");
                 return null;
             }
-
-            Documento doc = new Documento();
-            doc.setId(document.getObjectId("_id"));
-            doc.setTitulo(document.getString("titulo"));
-            doc.setAutor(document.getString("autor"));
-            doc.setTipoDocumento(document.getString("tipoDocumento"));
-            doc.setFechaCreacion(Documento.convertirDateALocalDateTime(document.get("fechaCreacion", Date.class)));
-            doc.setFechaModificacion(Documento.convertirDateALocalDateTime(document.get("fechaModificacion", Date.class)));
-            doc.setEstado(document.getString("estado"));
-            doc.setVersion(document.getInteger("version", 1));
-            doc.setArchivoId(document.getObjectId("archivoId"));
-            System.out.println("Documento encontrado: " + doc.getTitulo());
-            return doc;
-        } catch (IllegalArgumentException e) {
-            System.err.println("ID inválido proporcionado: " + id);
-            return null;
-        }
+        });
     }
 
     // === ACTUALIZACIÓN CON CONTROL DE CONCURRENCIA ===
@@ -166,123 +408,512 @@ public class DocumentoRepository {
     // Actualización completa con soporte para reemplazo de archivos
     public boolean actualizarDocumentoConArchivo(String id, Documento documentoActualizado, int versionActual,
                                                  String nuevaRutaArchivo, String nuevoNombreArchivo) {
-        try {
-            ObjectId objectId = new ObjectId(id);
+        return medir(metricasActualizar, LOG_ACTUALIZAR, id, () -> {
+            try {
+                ObjectId objectId = new ObjectId(id);
+
+                // Obtener documento actual (y su partición) para gestión de archivos antiguos
+                ParticionesDocumentos.Localizado localizado = particiones.localizar(objectId,
+                        c -> lecturaPrevia(durabilidad.aplicar("actualizar", c)).find(Filters.eq("_id", objectId)).first());
+                MongoCollection<Document> coleccion = durabilidad.aplicar("actualizar",
+                        localizado != null ? localizado.coleccion() : particiones.base());
+                Document registroActual = localizado != null ? localizado.registro() : null;
+                if (ArchivadorDocumentos.esArchivado(registroActual)) {
+                    registroActual = archivador.restaurar(coleccion, registroActual);
+                }
+                DisposicionCampos disposicion = registroActual != null
+                        ? DisposicionCampos.de(registroActual) : esquema.escritura();
+                Document docActual = DisposicionCampos.normalizar(registroActual);
+                ObjectId archivoIdAntiguo = docActual != null ? docActual.getObjectId("archivoId") : null;
+
+                ObjectId nuevoArchivoId = null;
+                if (nuevaRutaArchivo != null && !nuevaRutaArchivo.isBlank()) {
+                    try (InputStream stream = new FileInputStream(nuevaRutaArchivo)) {
+                        String nombre = nuevoNombreArchivo != null && !nuevoNombreArchivo.isBlank()
+                                ? nuevoNombreArchivo : new java.io.File(nuevaRutaArchivo).getName();
+                        nuevoArchivoId = durabilidad.aplicar("actualizar", gridFSBucket)
+                                .uploadFromStream(nombre, new EntradaContada(stream, bytesSubidos));
+                        LOG_ACTUALIZAR.atDebug().addKeyValue("id", id).addKeyValue("archivoId", nuevoArchivoId).log("Nuevo archivo subido");
+                    } catch (Exception e) {
+                        LOG_ACTUALIZAR.atWarn().addKeyValue("id", id).log("Error en carga de nuevo archivo: {}", e.getMessage());
+                    }
+                }
+
+                // Actualización con condición de versión para control de concurrencia
+                boolean exito = aplicarActualizacionVersionada(coleccion, objectId, disposicion, versionActual,
+                        Updates.combine(
+                                disposicion.set("titulo", documentoActualizado.getTitulo()),
+                                disposicion.set("autor", documentoActualizado.getAutor()),
+                                disposicion.set("tipoDocumento", documentoActualizado.getTipoDocumento()),
+                                disposicion.set("fechaModificacion", Documento.convertirLocalDateTimeADate(LocalDateTime.now())),
+                                disposicion.set("estado", documentoActualizado.getEstado()),
+                                disposicion.set("archivoId", nuevoArchivoId != null ? nuevoArchivoId : archivoIdAntiguo),
+                                Updates.inc(disposicion.campo("version"), 1)
+                        )
+                );
+
+                // Eliminación diferida del archivo antiguo si fue reemplazado (salvo que el historial lo conserve)
+                if (exito && nuevoArchivoId != null && archivoIdAntiguo != null && !conservarAdjuntosHistoricos) {
+                    marcarArchivoParaEliminar(archivoIdAntiguo);
+                    LOG_ACTUALIZAR.atDebug().addKeyValue("archivoId", archivoIdAntiguo).log("Archivo antiguo marcado para eliminación");
+                }
+                // Si la actualización no se aplicó, el archivo recién subido no lo referencia nadie
+                if (!exito && nuevoArchivoId != null) {
+                    marcarArchivoParaEliminar(nuevoArchivoId);
+                }
+
+                if (exito) {
+                    auditar(objectId, "ACTUALIZADO");
+                    LOG_ACTUALIZAR.atDebug().addKeyValue("id", id).log("Actualización exitosa del documento");
+                } else {
+                    LOG_ACTUALIZAR.atInfo().addKeyValue("id", id).addKeyValue("version", versionActual)
+                            .log("Fallo en actualización (posible conflicto de versión)");
+                }
+                return exito;
+            } catch (IllegalArgumentException e) {
+                LOG_ACTUALIZAR.atWarn().addKeyValue("id", id).log("ID de documento inválido");
+                return false;
+            }
+        });
+    }
 
-            // Obtener documento actual para gestión de archivos antiguos
-            Document docActual = collection.find(Filters.eq("_id", objectId)).first();
-            ObjectId archivoIdAntiguo = docActual != null ? docActual.getObjectId("archivoId") : null;
+    // === ACTUALIZACIÓN CON RESOLUCIÓN AUTOMÁTICA DE CONFLICTOS ===
 
+    // Actualización con fusión a tres vías ante conflictos de versión.
+    // "base" es el documento tal como lo leyó el llamador (incluida su versión) y "modificado"
+    // contiene los valores deseados. Si otro escritor actualizó el documento entretanto, se relee
+    // y se combinan los cambios de campos distintos; sólo se informa conflicto cuando ambos
+    // modificaron el mismo campo con valores diferentes. Los reintentos están acotados.
+    public ResultadoActualizacion actualizarDocumentoConFusion(String id, Documento base, Documento modificado,
+                                                               String nuevaRutaArchivo, String nuevoNombreArchivo) {
+        return medir(metricasActualizarFusion, LOG_ACTUALIZAR, id, () -> {
+            ObjectId objectId;
+            try {
+                objectId = new ObjectId(id);
+            } catch (IllegalArgumentException e) {
+                LOG_ACTUALIZAR.atWarn().addKeyValue("id", id).log("ID de documento inválido");
+                return new ResultadoActualizacion(ResultadoActualizacion.Estado.ID_INVALIDO, null, 0, 0, false);
+            }
+
+            // El nuevo adjunto se sube una sola vez, fuera del ciclo de reintentos
             ObjectId nuevoArchivoId = null;
             if (nuevaRutaArchivo != null && !nuevaRutaArchivo.isBlank()) {
                 try (InputStream stream = new FileInputStream(nuevaRutaArchivo)) {
                     String nombre = nuevoNombreArchivo != null && !nuevoNombreArchivo.isBlank()
                             ? nuevoNombreArchivo : new java.io.File(nuevaRutaArchivo).getName();
-                    nuevoArchivoId = gridFSBucket.uploadFromStream(nombre, stream);
-                    System.out.println("Nuevo archivo subido con ID: " + nuevoArchivoId);
-                } catch (Exception e) {
-                    System.err.println("Error en carga de nuevo archivo: " + e.getMessage());
-                }
-            }
-
-            // Actualización con condición de versión para control de concurrencia
-            UpdateResult result = collection.updateOne(
-                    Filters.and(Filters.eq("_id", objectId), Filters.eq("version", versionActual)),
-                    Updates.combine(
-                            Updates.set("titulo", documentoActualizado.getTitulo()),
-                            Updates.set("autor", documentoActualizado.getAutor()),
-                            Updates.set("tipoDocumento", documentoActualizado.getTipoDocumento()),
-                            Updates.set("fechaModificacion", Documento.convertirLocalDateTimeADate(LocalDateTime.now())),
-                            Updates.set("estado", documentoActualizado.getEstado()),
-                            Updates.set("archivoId", nuevoArchivoId != null ? nuevoArchivoId : archivoIdAntiguo),
-                            Updates.inc("version", 1)
-                    )
-            );
-
-            // Eliminación segura de archivo antiguo si fue reemplazado
-            if (result.getModifiedCount() > 0 && nuevoArchivoId != null && archivoIdAntiguo != null) {
-                try {
-                    gridFSBucket.delete(archivoIdAntiguo);
-                    System.out.println("Archivo antiguo eliminado: " + archivoIdAntiguo);
+                    nuevoArchivoId = durabilidad.aplicar("actualizar", gridFSBucket)
+                            .uploadFromStream(nombre, new EntradaContada(stream, bytesSubidos));
                 } catch (Exception e) {
-                    System.err.println("Advertencia: No se pudo eliminar archivo antiguo: " + archivoIdAntiguo);
+                    LOG_ACTUALIZAR.atWarn().addKeyValue("id", id).log("Error en carga de nuevo archivo: {}", e.getMessage());
                 }
             }
 
-            boolean exito = result.getModifiedCount() > 0;
-            System.out.println(exito ? "Actualización exitosa del documento: " + id :
-                    "Fallo en actualización (posible conflicto de versión): " + id);
-            return exito;
-        } catch (IllegalArgumentException e) {
-            System.err.println("Error: ID de documento inválido: " + id);
-            return false;
+            ResultadoActualizacion resultado = fusionarYActualizar(objectId, base, modificado, nuevoArchivoId);
+            if (!resultado.isExito() && nuevoArchivoId != null) {
+                // El adjunto nunca llegó a referenciarse
+                marcarArchivoParaEliminar(nuevoArchivoId);
+            }
+            if (resultado.getEstado() == ResultadoActualizacion.Estado.CONFLICTO) {
+                conflictosFusion.incrementar();
+            }
+            return resultado;
+        });
+    }
+
+    // Lectura previa a una actualización condicionada: se hace en el primario con read concern local
+    // para ver las escrituras propias aún no replicadas (guardar puede usar w:1). La actualización va
+    // condicionada a la versión leída, así que leer algo no confirmado por mayoría no la hace insegura.
+    private static MongoCollection<Document> lecturaPrevia(MongoCollection<Document> coleccion) {
+        return coleccion.withReadConcern(ReadConcern.LOCAL).withReadPreference(ReadPreference.primary());
+    }
+
+    private ResultadoActualizacion fusionarYActualizar(ObjectId objectId, Documento base, Documento modificado,
+                                                       ObjectId nuevoArchivoId) {
+        // La fecha de creación no cambia, así que el documento permanece en la misma partición
+        ParticionesDocumentos.Localizado localizado = particiones.localizar(objectId,
+                c -> lecturaPrevia(durabilidad.aplicar("actualizar", c)).find(Filters.eq("_id", objectId)).first());
+        if (localizado == null) {
+            return new ResultadoActualizacion(ResultadoActualizacion.Estado.NO_ENCONTRADO, null, 1, 0, false);
         }
+        MongoCollection<Document> coleccion = durabilidad.aplicar("actualizar", localizado.coleccion());
+        boolean fusionado = false;
+        for (int intento = 1; intento <= intentosMaximosFusion; intento++) {
+            if (intento > 1) {
+                reintentosFusion.incrementar();
+                esperarAntesDeReintentar(intento);
+            }
+
+            // Relectura del estado actual dentro de la misma operación (el primer intento usa la lectura de la localización)
+            Document registro = intento == 1
+                    ? localizado.registro() : lecturaPrevia(coleccion).find(Filters.eq("_id", objectId)).first();
+            if (ArchivadorDocumentos.esArchivado(registro)) {
+                registro = archivador.restaurar(coleccion, registro);
+            }
+            if (registro == null) {
+                return new ResultadoActualizacion(ResultadoActualizacion.Estado.NO_ENCONTRADO, null, intento, 0, fusionado);
+            }
+            DisposicionCampos disposicion = DisposicionCampos.de(registro);
+            Document actual = disposicion.aLogico(registro);
+            int versionActual = actual.getInteger("version", 1);
+            ObjectId archivoIdActual = actual.getObjectId("archivoId");
+            fusionado = versionActual != base.getVersion();
+
+            // Fusión a tres vías campo a campo (base / cambios propios / cambios concurrentes)
+            List<String> conflictos = new ArrayList<>();
+            List<Bson> cambios = new ArrayList<>();
+            for (String campo : CAMPOS_FUSIONABLES) {
+                Object valorBase = valorCampo(base, campo);
+                Object valorPropio = valorCampo(modificado, campo);
+                Object valorActual = actual.get(campo);
+                boolean cambioPropio = !Objects.equals(valorBase, valorPropio);
+                boolean cambioAjeno = !Objects.equals(valorBase, valorActual);
+                if (cambioPropio && cambioAjeno && !Objects.equals(valorPropio, valorActual)) {
+                    conflictos.add(campo);
+                } else if (cambioPropio) {
+                    cambios.add(disposicion.set(campo, valorPropio));
+                }
+            }
+            boolean archivoCambiadoAjeno = !Objects.equals(base.getArchivoId(), archivoIdActual);
+            if (nuevoArchivoId != null && archivoCambiadoAjeno) {
+                conflictos.add("archivoId");
+            }
+            if (!conflictos.isEmpty()) {
+                LOG_ACTUALIZAR.atInfo().addKeyValue("id", objectId).addKeyValue("campos", conflictos)
+                        .log("Conflicto de actualización no resoluble");
+                return new ResultadoActualizacion(ResultadoActualizacion.Estado.CONFLICTO, conflictos, intento, versionActual, fusionado);
+            }
+            if (nuevoArchivoId != null) {
+                cambios.add(disposicion.set("archivoId", nuevoArchivoId));
+            }
+            cambios.add(disposicion.set("fechaModificacion", Documento.convertirLocalDateTimeADate(LocalDateTime.now())));
+            cambios.add(Updates.inc(disposicion.campo("version"), 1));
+
+            if (aplicarActualizacionVersionada(coleccion, objectId, disposicion, versionActual, Updates.combine(cambios))) {
+                if (nuevoArchivoId != null && archivoIdActual != null && !conservarAdjuntosHistoricos) {
+                    marcarArchivoParaEliminar(archivoIdActual);
+                }
+                if (fusionado) {
+                    actualizacionesFusionadas.incrementar();
+                }
+                auditar(objectId, "ACTUALIZADO");
+                LOG_ACTUALIZAR.atDebug().addKeyValue("id", objectId).addKeyValue("intentos", intento)
+                        .addKeyValue("fusionado", fusionado).log("Actualización con fusión aplicada");
+                return new ResultadoActualizacion(ResultadoActualizacion.Estado.ACTUALIZADO, null, intento, versionActual + 1, fusionado);
+            }
+            // Otro escritor ganó la carrera entre la relectura y la escritura: reintentar
+        }
+        LOG_ACTUALIZAR.atWarn().addKeyValue("id", objectId).addKeyValue("intentos", intentosMaximosFusion)
+                .log("Reintentos de actualización agotados");
+        return new ResultadoActualizacion(ResultadoActualizacion.Estado.REINTENTOS_AGOTADOS, null, intentosMaximosFusion, 0, fusionado);
     }
 
-    // === ELIMINACIÓN SEGURA ===
+    // Aplica una actualización condicionada por versión. Con el historial activo, la escritura
+    // y el registro de la nueva versión se confirman en la misma transacción.
+    private boolean aplicarActualizacionVersionada(MongoCollection<Document> collection, ObjectId objectId,
+                                                   DisposicionCampos disposicion, int versionEsperada, Bson actualizacion) {
+        Bson filtro = Filters.and(Filters.eq("_id", objectId), Filters.eq(disposicion.campo("version"), versionEsperada));
+        if (historial == null) {
+            return collection.updateOne(filtro, actualizacion).getModifiedCount() > 0;
+        }
+        try (ClientSession session = MongoConfig.getMongoClient().startSession()) {
+            return session.withTransaction(() -> {
+                Document anterior = collection.find(session, filtro).first();
+                if (anterior == null) {
+                    return false;
+                }
+                Document posterior = collection.findOneAndUpdate(session, filtro, actualizacion,
+                        new FindOneAndUpdateOptions().returnDocument(ReturnDocument.AFTER));
+                if (posterior == null) {
+                    return false;
+                }
+                historial.registrar(session, disposicion.aLogico(anterior), disposicion.aLogico(posterior));
+                return true;
+            }, durabilidad.transaccion("actualizar"));
+        }
+    }
 
-    // Elimina documento y sus archivos asociados
-    public boolean eliminarDocumento(String id) {
+    private static Object valorCampo(Documento documento, String campo) {
+        return switch (campo) {
+            case "titulo" -> documento.getTitulo();
+            case "autor" -> documento.getAutor();
+            case "tipoDocumento" -> documento.getTipoDocumento();
+            case "estado" -> documento.getEstado();
+            default -> throw new IllegalArgumentException("Campo no fusionable: " + campo);
+        };
+    }
+
+    // Espera breve y aleatoria para que escritores concurrentes no colisionen en cada intento
+    private static void esperarAntesDeReintentar(int intento) {
+        long maximoMs = Math.min(50, 1L << Math.min(intento, 6));
         try {
-            ObjectId objectId = new ObjectId(id);
-            Document doc = collection.find(Filters.eq("_id", objectId)).first();
-            if (doc == null) {
-                System.out.println("Documento no existe para eliminación: " + id);
-                return false;
+            Thread.sleep(ThreadLocalRandom.current().nextLong(maximoMs + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Marca un adjunto para el recolector; si la marca falla, el adjunto queda como huérfano y lo
+    // encontrará igualmente la búsqueda de archivos sin referencias
+    private void marcarArchivoParaEliminar(ObjectId archivoId) {
+        try {
+            recolector.marcar(archivoId);
+        } catch (Exception e) {
+            LOG_ACTUALIZAR.atWarn().addKeyValue("archivoId", archivoId).log("No se pudo marcar archivo: {}", e.getMessage());
+        }
+    }
+
+    private void invalidarCache(ObjectId archivoId) {
+        if (cacheAdjuntos != null) {
+            cacheAdjuntos.invalidar(archivoId);
+        }
+    }
+
+    // === HISTORIAL DE VERSIONES ===
+
+    // Reconstruye la versión indicada de un documento a partir del historial por deltas
+    public Documento obtenerVersion(String id, int version) {
+        return medir(metricasObtenerVersion, LOG_CONSULTA, id, () -> {
+            ObjectId objectId;
+            try {
+                objectId = new ObjectId(id);
+            } catch (IllegalArgumentException e) {
+                LOG_CONSULTA.atWarn().addKeyValue("id", id).log("ID inválido proporcionado");
+                return null;
+            }
+
+            Document reconstruido = historial != null ? historial.obtenerVersion(objectId, version) : null;
+            if (reconstruido == null) {
+                // Documentos sin actualizaciones registradas: la versión vigente es la única disponible
+                ParticionesDocumentos.Localizado localizado = particiones.localizar(objectId,
+                        c -> durabilidad.aplicar("consulta", c).find(Filters.eq("_id", objectId)).first());
+                Document actual = localizado != null
+                        ? DisposicionCampos.normalizar(hidratar(localizado.registro())) : null;
+                if (actual == null || actual.getInteger("version", 1) != version) {
+                    LOG_CONSULTA.atDebug().addKeyValue("id", id).addKeyValue("version", version)
+                            .log("Versión no disponible en el historial");
+                    return null;
+                }
+                reconstruido = actual;
             }
+            return convertirADocumento(reconstruido);
+        });
+    }
 
-            ObjectId archivoId = doc.getObjectId("archivoId");
-            if (archivoId != null) {
-                gridFSBucket.delete(archivoId);
-                System.out.println("Archivo asociado eliminado: " + archivoId);
+    // Versiones registradas en el historial, de la más reciente a la más antigua (vacío si no hay
+    // historial: entonces sólo está disponible la versión vigente)
+    public List<Integer> listarVersiones(String id) {
+        return medir(metricasListarVersiones, LOG_CONSULTA, id, () -> {
+            try {
+                return historial != null ? historial.listarVersiones(new ObjectId(id)) : List.<Integer>of();
+            } catch (IllegalArgumentException e) {
+                LOG_CONSULTA.atWarn().addKeyValue("id", id).log("ID inválido proporcionado");
+                return List.<Integer>of();
             }
+        });
+    }
 
-            DeleteResult result = collection.deleteOne(Filters.eq("_id", objectId));
-            boolean exito = result.getDeletedCount() > 0;
-            System.out.println(exito ? "Documento eliminado correctamente: " + id :
-                    "Error en eliminación del documento: " + id);
-            return exito;
-        } catch (IllegalArgumentException e) {
-            System.err.println("ID inválido para eliminación: " + id);
-            return false;
-        }
+    // Metodo auxiliar para mapear un documento BSON (en cualquier disposición) al objeto del dominio;
+    // los documentos archivados se leen del archivo local sin restaurarlos
+    private Documento convertirADocumento(Document registro) {
+        Document document = DisposicionCampos.normalizar(hidratar(registro));
+        Documento doc = new Documento();
+        doc.setId(document.getObjectId("_id"));
+        doc.setTitulo(document.getString("titulo"));
+        doc.setAutor(document.getString("autor"));
+        doc.setTipoDocumento(document.getString("tipoDocumento"));
+        doc.setFechaCreacion(convertirDateALocalDateTime(document.get("fechaCreacion", Date.class)));
+        doc.setFechaModificacion(convertirDateALocalDateTime(document.get("fechaModificacion", Date.class)));
+        doc.setEstado(document.getString("estado"));
+        doc.setVersion(document.getInteger("version", 1));
+        doc.setArchivoId(document.getObjectId("archivoId"));
+        return doc;
+    }
+
+    // Registro completo de un documento, leyendo del archivo local si sólo queda su resto en la colección
+    private Document hidratar(Document registro) {
+        return ArchivadorDocumentos.esArchivado(registro) ? archivador.leer(registro) : registro;
+    }
+
+    // === ELIMINACIÓN SEGURA ===
+
+    // Elimina documento y sus archivos asociados
+    public boolean eliminarDocumento(String id) {
+        return medir(metricasEliminar, LOG_ELIMINAR, id, () -> {
+            try {
+                ObjectId objectId = new ObjectId(id);
+                ParticionesDocumentos.Localizado localizado = particiones.localizar(objectId,
+                        c -> durabilidad.aplicar("eliminar", c).find(Filters.eq("_id", objectId)).first());
+                if (localizado == null) {
+                    LOG_ELIMINAR.atDebug().addKeyValue("id", id).log("Documento no existe para eliminación");
+                    return false;
+                }
+                MongoCollection<Document> coleccion = durabilidad.aplicar("eliminar", localizado.coleccion());
+                Document doc = localizado.registro();
+
+                boolean archivado = ArchivadorDocumentos.esArchivado(doc);
+                ObjectId archivoId = archivado ? null : DisposicionCampos.normalizar(doc).getObjectId("archivoId");
+
+                DeleteResult result = coleccion.deleteOne(Filters.eq("_id", objectId));
+                boolean exito = result.getDeletedCount() > 0;
+                if (exito && archivoId != null) {
+                    // El adjunto se marca y lo elimina el recolector en segundo plano
+                    marcarArchivoParaEliminar(archivoId);
+                    LOG_ELIMINAR.atDebug().addKeyValue("id", id).addKeyValue("archivoId", archivoId).log("Archivo asociado marcado para eliminación");
+                }
+                if (exito && archivado) {
+                    // El adjunto de un documento archivado sólo existe en la copia local
+                    archivador.descartar(doc);
+                }
+                if (exito) {
+                    auditar(objectId, "ELIMINADO");
+                    LOG_ELIMINAR.atDebug().addKeyValue("id", id).log("Documento eliminado correctamente");
+                } else {
+                    LOG_ELIMINAR.atWarn().addKeyValue("id", id).log("Error en eliminación del documento");
+                }
+                return exito;
+            } catch (IllegalArgumentException e) {
+                LOG_ELIMINAR.atWarn().addKeyValue("id", id).log("ID inválido para eliminación");
+                return false;
+            }
+        });
     }
 
     // === TRANSACCIONES ACID MULTI-DOCUMENTO ===
 
     // Implementación de transacción para workflow de aprobación
     public void aprobarDocumentoConTransaccion(String idDoc) {
-        System.out.println("Iniciando transacción de aprobación para documento: " + idDoc);
+        LOG_APROBAR.atDebug().addKeyValue("id", idDoc).log("Iniciando transacción de aprobación");
+        AtomicInteger intentos = new AtomicInteger();
         try (ClientSession session = MongoConfig.getMongoClient().startSession()) {
-            session.withTransaction(() -> {
+            medir(metricasAprobar, LOG_APROBAR, idDoc, () -> session.withTransaction(() -> {
+                intentos.incrementAndGet();
                 ObjectId docId = new ObjectId(idDoc);
+                // La localización lee dentro de la sesión para formar parte de la transacción
+                ParticionesDocumentos.Localizado localizado = particiones.localizar(session, docId);
+                MongoCollection<Document> coleccion = localizado != null ? localizado.coleccion() : null;
 
-                // Fase 1: Actualización del estado del documento
-                UpdateResult res = collection.updateOne(session,
-                        Filters.eq("_id", docId),
-                        Updates.set("estado", "APROBADO"));
+                // Fase 1: Actualización del estado del documento (en la disposición en que esté guardado)
+                long modificados = 0;
+                for (DisposicionCampos disposicion : coleccion != null ? esquema.lectura() : List.<DisposicionCampos>of()) {
+                    UpdateResult res = coleccion.updateOne(session,
+                            Filters.and(Filters.eq("_id", docId), Filters.exists(disposicion.campo("version"))),
+                            disposicion.set("estado", "APROBADO"));
+                    modificados += res.getModifiedCount();
+                    if (res.getMatchedCount() > 0) break;
+                }
 
-                if (res.getModifiedCount() == 0) {
-                    System.out.println("Transacción abortada: Documento no encontrado o ya aprobado.");
+                if (modificados == 0) {
+                    LOG_APROBAR.atInfo().addKeyValue("id", idDoc).log("Transacción abortada: documento no encontrado o ya aprobado");
                     return null;
                 }
 
-                // Fase 2: Registro en auditoría (operación multi-documento)
-                MongoDatabase db = MongoConfig.getMongoClient().getDatabase(MongoConfig.getDatabaseName());
-                db.getCollection("auditoria_aprobaciones").insertOne(session,
-                        new Document("docId", docId)
-                                .append("fechaAprobacion", new Date())
-                                .append("accion", "APROBADO_GERENCIA")
-                                .append("usuario", "admin"));
+                // Fase 2: Registro en auditoría (operación multi-documento, a través de la bandeja transaccional)
+                auditoria.registrarEnTransaccion(session, docId, usuarioAuditoria, "APROBADO_GERENCIA");
 
-                System.out.println("Transacción completada exitosamente. Documento aprobado y auditado.");
+                LOG_APROBAR.atInfo().addKeyValue("id", idDoc).log("Transacción completada: documento aprobado y auditado");
                 return null;
-            });
+            }, durabilidad.transaccion("aprobar")));
         } catch (Exception e) {
-            System.err.println("Error en transacción (Rollback automático aplicado): " + e.getMessage());
+            LOG_APROBAR.atError().addKeyValue("id", idDoc).log("Error en transacción (rollback automático aplicado): {}", e.getMessage());
+        } finally {
+            // withTransaction reintenta ante errores transitorios; cada ejecución extra del cuerpo es un reintento
+            if (intentos.get() > 1) {
+                reintentosTransaccion.sumar(intentos.get() - 1);
+            }
         }
     }
 
+    // === AUDITORÍA ===
+
+    // Evento de auditoría fuera de transacción (se escribe por lotes; un fallo no afecta a la operación)
+    private void auditar(ObjectId docId, String accion) {
+        try {
+            auditoria.registrar(docId, usuarioAuditoria, accion);
+        } catch (RuntimeException e) {
+            LOG.atWarn().addKeyValue("docId", docId).log("No se pudo auditar la operación {}: {}", accion, e.getMessage());
+        }
+    }
+
+    // Eventos de auditoría de un documento (creación, cambios, aprobaciones...), del más reciente al más antiguo
+    public List<Document> obtenerHistorialAuditoria(String id, int limite) {
+        return medir(metricasHistorialAuditoria, LOG_CONSULTA, id, () -> {
+            try {
+                return auditoria.historialDocumento(new ObjectId(id), limite);
+            } catch (IllegalArgumentException e) {
+                LOG_CONSULTA.atWarn().addKeyValue("id", id).log("ID inválido proporcionado");
+                return List.<Document>of();
+            }
+        });
+    }
+
+    // Actividad de auditoría en un intervalo de fechas (extremos opcionales), opcionalmente de un usuario
+    public List<Document> obtenerActividadAuditoria(LocalDateTime desde, LocalDateTime hasta, String usuario, int limite) {
+        return medir(metricasActividadAuditoria, LOG_CONSULTA, null, () ->
+                auditoria.actividad(Documento.convertirLocalDateTimeADate(desde),
+                        Documento.convertirLocalDateTimeADate(hasta), usuario, limite));
+    }
+
+    // === MEDICIÓN Y REGISTRO DE OPERACIONES ===
+
+    // Ejecuta una operación registrando su latencia en las métricas y emitiendo un evento
+    // estructurado (operacion, id, latencia, resultado). Con el nivel DEBUG desactivado
+    // el evento no construye ningún objeto.
+    private <T> T medir(MetricasOperacion metricas, Logger log, Object id, Supplier<T> accion) {
+        long inicio = System.nanoTime();
+        String resultado = "error";
+        try {
+            T valor = accion.get();
+            resultado = Boolean.FALSE.equals(valor) ? "rechazado" : "ok";
+            return valor;
+        } finally {
+            registrarMedicion(metricas, log, id, System.nanoTime() - inicio, resultado);
+        }
+    }
+
+    // Variante para operaciones asíncronas: la medición termina al completarse el futuro
+    // y el resultado se toma de su desenlace (error si se completa excepcionalmente)
+    private <T> CompletableFuture<T> medirAsincrono(MetricasOperacion metricas, Logger log, Object id,
+                                                    Supplier<CompletableFuture<T>> accion) {
+        long inicio = System.nanoTime();
+        CompletableFuture<T> futuro;
+        try {
+            futuro = accion.get();
+        } catch (RuntimeException e) {
+            registrarMedicion(metricas, log, id, System.nanoTime() - inicio, "error");
+            throw e;
+        }
+        futuro.whenComplete((valor, fallo) -> registrarMedicion(metricas, log, id, System.nanoTime() - inicio,
+                fallo != null ? "error" : Boolean.FALSE.equals(valor) ? "rechazado" : "ok"));
+        return futuro;
+    }
+
+    private static void registrarMedicion(MetricasOperacion metricas, Logger log, Object id, long duracion,
+                                          String resultado) {
+        boolean error = "error".equals(resultado);
+        metricas.registrar(duracion, error);
+        if (error ? log.isWarnEnabled() : log.isDebugEnabled()) {
+            LoggingEventBuilder evento = (error ? log.atWarn() : log.atDebug())
+                    .addKeyValue("operacion", metricas.getNombre());
+            if (id != null) {
+                evento = evento.addKeyValue("id", id);
+            }
+            evento.addKeyValue("latenciaUs", TimeUnit.NANOSECONDS.toMicros(duracion))
+                    .addKeyValue("resultado", resultado)
+                    .log("Operación finalizada");
+        }
+    }
+
+    private void medir(MetricasOperacion metricas, Logger log, Object id, Runnable accion) {
+        medir(metricas, log, id, () -> {
+            accion.run();
+            return null;
+        });
+    }
+
+    private static Logger registroOperacion(String operacion) {
+        return LoggerFactory.getLogger(DocumentoRepository.class.getName() + "." + operacion);
+    }
+
     // Metodo auxiliar para conversión de tipos de fecha
     private LocalDateTime convertirDateALocalDateTime(java.util.Date date) {
         return Documento.convertirDateALocalDateTime(date);
@@ -292,172 +923,453 @@ public class DocumentoRepository {
 
     // Obtiene operaciones recientes del oplog para monitoreo
     public List<Document> obtenerUltimasOperacionesOplog(int limite) {
-        System.out.println("Consultando últimas " + limite + " operaciones del oplog");
-        MongoDatabase localDb = MongoConfig.getMongoClient().getDatabase("local");
-        MongoCollection<Document> oplog = localDb.getCollection("oplog.rs");
-        Bson filtro = Filters.eq("ns", MongoConfig.getDatabaseName() + ".documentos");
-        return oplog.find(filtro)
-                .sort(Sorts.descending("ts"))
-                .limit(limite)
-                .into(new ArrayList<>());
+        return medir(metricasUltimasOplog, LOG_OPLOG, null, () -> {
+            LOG_OPLOG.atDebug().addKeyValue("limite", limite).log("Consultando últimas operaciones del oplog");
+            MongoDatabase localDb = MongoConfig.getMongoClient().getDatabase("local");
+            MongoCollection<Document> oplog = localDb.getCollection("oplog.rs");
+            Bson filtro = particiones.filtroNamespace();
+            return oplog.find(filtro)
+                    .sort(Sorts.descending("ts"))
+                    .limit(limite)
+                    .into(new ArrayList<>());
+        });
     }
 
     // Obtiene operaciones desde timestamp específico para recuperación incremental
     public List<Document> obtenerOperacionesOplogDesde(BsonTimestamp desdeTs, int limiteSiNoHayTs) {
-        System.out.println("Consultando oplog desde timestamp: " + (desdeTs != null ? desdeTs.getValue() : "inicio"));
-        MongoDatabase localDb = MongoConfig.getMongoClient().getDatabase("local");
-        MongoCollection<Document> oplog = localDb.getCollection("oplog.rs");
-        Bson filtro = Filters.eq("ns", MongoConfig.getDatabaseName() + ".documentos");
-        if (desdeTs != null) {
-            filtro = Filters.and(filtro, Filters.gt("ts", desdeTs));
-        }
-        FindIterable<Document> query = oplog.find(filtro).sort(Sorts.ascending("ts"));
-        if (desdeTs == null) query = query.limit(limiteSiNoHayTs);
-        return query.into(new ArrayList<>());
+        return medir(metricasOplogDesde, LOG_OPLOG, null, () -> {
+            LOG_OPLOG.atDebug().addKeyValue("desdeTs", desdeTs).log("Consultando oplog desde timestamp");
+            MongoDatabase localDb = MongoConfig.getMongoClient().getDatabase("local");
+            MongoCollection<Document> oplog = localDb.getCollection("oplog.rs");
+            Bson filtro = particiones.filtroNamespace();
+            if (desdeTs != null) {
+                filtro = Filters.and(filtro, Filters.gt("ts", desdeTs));
+                // Si el oplog ya se ha truncado por delante del punto pedido, la recuperación será incompleta
+                Document primera = oplog.find().sort(new Document("$natural", 1)).limit(1).first();
+                if (primera != null && primera.get("ts", BsonTimestamp.class).compareTo(desdeTs) > 0) {
+                    LOG_OPLOG.atWarn().addKeyValue("desdeTs", desdeTs).addKeyValue("primeraTs", primera.get("ts"))
+                            .log("El oplog no alcanza el instante pedido: faltarán operaciones en la recuperación");
+                }
+            }
+            FindIterable<Document> query = oplog.find(filtro).sort(Sorts.ascending("ts"));
+            if (desdeTs == null) query = query.limit(limiteSiNoHayTs);
+            return query.into(new ArrayList<>());
+        });
     }
 
     // Aplica operaciones del oplog para recuperación ante desastres
     public int aplicarRecuperacionOplog(List<Document> operaciones) {
-        System.out.println("Iniciando recuperación con " + operaciones.size() + " operaciones del oplog");
-        int aplicadas = 0;
-        MongoCollection<Document> collection = MongoConfig.getMongoClient()
-                .getDatabase(MongoConfig.getDatabaseName())
-                .getCollection("documentos");
-
-        for (Document op : operaciones) {
-            String operacion = op.getString("op");
-            try {
-                switch (operacion) {
-                    case "i": // Operación de inserción
-                        Document docToInsert = op.get("o", Document.class);
-                        ObjectId idInsert = docToInsert.getObjectId("_id");
-                        if (collection.find(Filters.eq("_id", idInsert)).first() == null) {
-                            collection.insertOne(docToInsert);
-                            aplicadas++;
-                            System.out.println("Recuperado INSERT exitoso: " + idInsert);
-                        } else {
-                            System.out.println("Documento existente omitido (duplicado): " + idInsert);
-                        }
-                        break;
-
-                    case "u": // Operación de actualización
-                        Document o2 = op.get("o2", Document.class);
-                        if (o2 == null || !o2.containsKey("_id")) break;
-
-                        ObjectId idUpdate = o2.getObjectId("_id");
-                        Document updateObj = op.get("o", Document.class);
-
-                        Document setFields = new Document();
-                        Document unsetFields = new Document();
-                        AtomicBoolean hasChanges = new AtomicBoolean(false);
-
-                        // Procesamiento de formatos diff del oplog
-                        if (updateObj.containsKey("$v") || updateObj.containsKey("diff")) {
-                            Document diff = updateObj.get("diff", Document.class);
-                            if (diff != null) {
-                                diff.forEach((key, value) -> {
-                                    if (key.equals("u") && value instanceof Document subDoc) {
-                                        subDoc.forEach((subKey, subValue) -> {
-                                            setFields.append(subKey, subValue);
+        return medir(metricasRecuperacion, LOG_RECUPERACION, null, () -> {
+            LOG_RECUPERACION.atInfo().addKeyValue("operaciones", operaciones.size()).log("Iniciando recuperación desde oplog");
+            int aplicadas = 0;
+
+            for (Document op : operaciones) {
+                String operacion = op.getString("op");
+                try {
+                    // Cada operación se aplica sobre la colección (base o partición) en la que se registró
+                    String ns = op.getString("ns");
+                    MongoCollection<Document> collection = ns != null && ns.indexOf('.') > 0
+                            ? particiones.porNombre(ns.substring(ns.indexOf('.') + 1)) : particiones.base();
+                    switch (operacion) {
+                        case "i": // Operación de inserción
+                            Document docToInsert = op.get("o", Document.class);
+                            ObjectId idInsert = docToInsert.getObjectId("_id");
+                            if (collection.find(Filters.eq("_id", idInsert)).first() == null) {
+                                collection.insertOne(docToInsert);
+                                aplicadas++;
+                                LOG_RECUPERACION.atDebug().addKeyValue("op", "i").addKeyValue("id", idInsert).log("Recuperado INSERT");
+                            } else {
+                                LOG_RECUPERACION.atDebug().addKeyValue("op", "i").addKeyValue("id", idInsert).log("Documento existente omitido (duplicado)");
+                            }
+                            break;
+
+                        case "u": // Operación de actualización
+                            Document o2 = op.get("o2", Document.class);
+                            if (o2 == null || !o2.containsKey("_id")) break;
+
+                            ObjectId idUpdate = o2.getObjectId("_id");
+                            Document updateObj = op.get("o", Document.class);
+
+                            Document setFields = new Document();
+                            Document unsetFields = new Document();
+                            AtomicBoolean hasChanges = new AtomicBoolean(false);
+
+                            // Procesamiento de formatos diff del oplog
+                            if (updateObj.containsKey("$v") || updateObj.containsKey("diff")) {
+                                Document diff = updateObj.get("diff", Document.class);
+                                if (diff != null) {
+                                    diff.forEach((key, value) -> {
+                                        if (key.equals("u") && value instanceof Document subDoc) {
+                                            subDoc.forEach((subKey, subValue) -> {
+                                                setFields.append(subKey, subValue);
+                                                hasChanges.set(true);
+                                            });
+                                        } else if (key.startsWith("u.") && key.length() > 2) {
+                                            String field = key.substring(2);
+                                            setFields.append(field, value);
+                                            hasChanges.set(true);
+                                        } else if (key.startsWith("i")) {
+                                            String field = key.substring(1);
+                                            setFields.append(field, value);
                                             hasChanges.set(true);
-                                        });
-                                    } else if (key.startsWith("u.") && key.length() > 2) {
-                                        String field = key.substring(2);
-                                        setFields.append(field, value);
-                                        hasChanges.set(true);
-                                    } else if (key.startsWith("i")) {
-                                        String field = key.substring(1);
-                                        setFields.append(field, value);
-                                        hasChanges.set(true);
-                                    } else if (key.startsWith("d")) {
-                                        String field = key.substring(1);
-                                        unsetFields.append(field, 1);
-                                        hasChanges.set(true);
-                                    }
-                                });
+                                        } else if (key.startsWith("d")) {
+                                            String field = key.substring(1);
+                                            unsetFields.append(field, 1);
+                                            hasChanges.set(true);
+                                        }
+                                    });
+                                }
+                            } else {
+                                collection.replaceOne(Filters.eq("_id", idUpdate), updateObj);
+                                aplicadas++;
+                                LOG_RECUPERACION.atDebug().addKeyValue("op", "u").addKeyValue("id", idUpdate).log("Recuperado UPDATE completo");
+                                continue;
                             }
-                        } else {
-                            collection.replaceOne(Filters.eq("_id", idUpdate), updateObj);
-                            aplicadas++;
-                            System.out.println("Recuperado UPDATE completo: " + idUpdate);
-                            continue;
-                        }
 
-                        Document updateCommand = new Document();
-                        if (!setFields.isEmpty()) updateCommand.append("$set", setFields);
-                        if (!unsetFields.isEmpty()) updateCommand.append("$unset", unsetFields);
+                            Document updateCommand = new Document();
+                            if (!setFields.isEmpty()) updateCommand.append("$set", setFields);
+                            if (!unsetFields.isEmpty()) updateCommand.append("$unset", unsetFields);
 
-                        if (hasChanges.get() && !updateCommand.isEmpty()) {
-                            collection.updateOne(Filters.eq("_id", idUpdate), updateCommand);
-                            aplicadas++;
-                            System.out.println("Recuperado UPDATE parcial: " + idUpdate);
-                        } else {
-                            System.out.println("UPDATE omitido (sin cambios válidos): " + idUpdate);
-                        }
-                        break;
-
-                    case "d": // Operación de eliminación
-                        Document deleteFilter = op.get("o", Document.class);
-                        if (deleteFilter != null && deleteFilter.containsKey("_id")) {
-                            ObjectId idDelete = deleteFilter.getObjectId("_id");
-                            collection.deleteOne(Filters.eq("_id", idDelete));
-                            aplicadas++;
-                            System.out.println("Recuperado DELETE: " + idDelete);
-                        }
-                        break;
+                            if (hasChanges.get() && !updateCommand.isEmpty()) {
+                                collection.updateOne(Filters.eq("_id", idUpdate), updateCommand);
+                                aplicadas++;
+                                LOG_RECUPERACION.atDebug().addKeyValue("op", "u").addKeyValue("id", idUpdate).log("Recuperado UPDATE parcial");
+                            } else {
+                                LOG_RECUPERACION.atDebug().addKeyValue("op", "u").addKeyValue("id", idUpdate).log("UPDATE omitido (sin cambios válidos)");
+                            }
+                            break;
+
+                        case "d": // Operación de eliminación
+                            Document deleteFilter = op.get("o", Document.class);
+                            if (deleteFilter != null && deleteFilter.containsKey("_id")) {
+                                ObjectId idDelete = deleteFilter.getObjectId("_id");
+                                collection.deleteOne(Filters.eq("_id", idDelete));
+                                aplicadas++;
+                                LOG_RECUPERACION.atDebug().addKeyValue("op", "d").addKeyValue("id", idDelete).log("Recuperado DELETE");
+                            }
+                            break;
+                    }
+                } catch (Exception e) {
+                    LOG_RECUPERACION.atError().addKeyValue("op", operacion).log("Error crítico en recuperación oplog: {}", e.getMessage());
                 }
-            } catch (Exception e) {
-                System.err.println("Error crítico en recuperación oplog: " + e.getMessage());
             }
-        }
-        System.out.println("Recuperación completada. Operaciones aplicadas: " + aplicadas);
-        return aplicadas;
+            LOG_RECUPERACION.atInfo().addKeyValue("aplicadas", aplicadas).log("Recuperación completada");
+            return aplicadas;
+        });
     }
 
     // === CONSULTAS AVANZADAS CON ÍNDICES ===
 
     // Búsqueda por rango de fechas utilizando índice compuesto
     public List<Documento> buscarPorRangoFechas(LocalDateTime desde, LocalDateTime hasta) {
-        System.out.println("Búsqueda por rango de fechas: " + desde + " hasta " + hasta);
-        Bson filtro = new Document();
-
-        if (desde != null && hasta != null) {
-            filtro = and(
-                    gte("fechaCreacion", Documento.convertirLocalDateTimeADate(desde)),
-                    lte("fechaCreacion", Documento.convertirLocalDateTimeADate(hasta))
-            );
-        } else if (desde != null) {
-            filtro = gte("fechaCreacion", Documento.convertirLocalDateTimeADate(desde));
-        } else if (hasta != null) {
-            filtro = lte("fechaCreacion", Documento.convertirLocalDateTimeADate(hasta));
+        return medir(metricasRangoFechas, LOG_CONSULTA, null, () -> {
+            LOG_CONSULTA.atDebug().addKeyValue("desde", desde).addKeyValue("hasta", hasta).log("Búsqueda por rango de fechas");
+            Bson filtro = new Document();
+            if (desde != null || hasta != null) {
+                filtro = esquema.filtroRango(DisposicionCampos.FECHA_CREACION,
+                        desde != null ? Documento.convertirLocalDateTimeADate(desde) : null,
+                        hasta != null ? Documento.convertirLocalDateTimeADate(hasta) : null);
+            }
+
+            // Sólo se consultan las particiones que se solapan con el rango, en paralelo
+            Bson filtroFinal = filtro;
+            Comparator<Documento> orden = Comparator.comparing(Documento::getFechaCreacion,
+                    Comparator.nullsLast(Comparator.reverseOrder()));
+            List<MongoCollection<Document>> destino = particiones.solapadas(
+                    Documento.convertirLocalDateTimeADate(desde), Documento.convertirLocalDateTimeADate(hasta));
+            List<List<Documento>> parciales = particiones.enParalelo(destino, coleccion -> {
+                List<Documento> documentos = durabilidad.aplicar("consulta", coleccion).find(filtroFinal)
+                        .sort(descending(esquema.escritura().campo(DisposicionCampos.FECHA_CREACION)))
+                        .map(this::convertirADocumento)
+                        .into(new ArrayList<>());
+                // Con registros en ambas disposiciones el orden del servidor sólo cubre una de ellas
+                if (esquema.esMixto()) {
+                    documentos.sort(orden);
+                }
+                return documentos;
+            });
+            LOG_CONSULTA.atDebug().addKeyValue("particiones", destino.size()).log("Particiones consultadas");
+            // Cada resultado parcial ya está ordenado: basta una mezcla de k vías
+            return ParticionesDocumentos.mezclarOrdenado(parciales, orden);
+        });
+    }
+
+    // === RECORRIDO EN STREAMING ===
+
+    // Recorre los registros que cumplen la consulta sin materializar la lista: partición a partición,
+    // con cursores de 'tamanoLote' registros y una proyección limitada a los campos lógicos pedidos
+    // (vacío = todos). Cada registro se entrega normalizado a nombres lógicos; los archivados se leen
+    // del archivo local. En consultas por rango, cada partición se recorre por fecha descendente.
+    public long recorrerDocumentos(ConsultaDocumentos consulta, List<String> campos, int tamanoLote,
+                                   Consumer<Document> accion) {
+        return medir(metricasRecorrer, LOG_CONSULTA, null, () -> {
+            Bson filtro = filtroConsulta(consulta);
+            List<MongoCollection<Document>> destino = consulta.criterio() == ConsultaDocumentos.Criterio.RANGO
+                    ? particiones.solapadas(Documento.convertirLocalDateTimeADate(consulta.desde()),
+                            Documento.convertirLocalDateTimeADate(consulta.hasta()))
+                    : particiones.todas();
+            Bson proyeccion = proyeccion(campos);
+            long recorridos = 0;
+            for (MongoCollection<Document> coleccion : destino) {
+                FindIterable<Document> cursor = durabilidad.aplicar("consulta", coleccion).find(filtro)
+                        .batchSize(tamanoLote);
+                if (proyeccion != null) {
+                    cursor = cursor.projection(proyeccion);
+                }
+                if (consulta.criterio() == ConsultaDocumentos.Criterio.RANGO) {
+                    cursor = cursor.sort(descending(esquema.escritura().campo(DisposicionCampos.FECHA_CREACION)));
+                }
+                try (MongoCursor<Document> registros = cursor.iterator()) {
+                    while (registros.hasNext()) {
+                        accion.accept(DisposicionCampos.normalizar(hidratar(registros.next())));
+                        recorridos++;
+                    }
+                }
+            }
+            LOG_CONSULTA.atDebug().addKeyValue("criterio", consulta.criterio()).addKeyValue("registros", recorridos)
+                    .addKeyValue("particiones", destino.size()).log("Recorrido completado");
+            return recorridos;
+        });
+    }
+
+    // Variante columnar del recorrido: entrega los resultados en lotes de hasta 'tamanoLote' filas
+    // decodificadas directamente del BSON (sin Document ni Documento por fila). Los lotes comparten
+    // diccionarios; el consumidor puede conservarlos (recortar()) o procesarlos y descartarlos.
+    public long recorrerEnLotes(ConsultaDocumentos consulta, int tamanoLote, Consumer<LoteColumnar> accion) {
+        return medir(metricasRecorrerLotes, LOG_CONSULTA, null, () -> {
+            Bson filtro = filtroConsulta(consulta);
+            List<MongoCollection<Document>> destino = consulta.criterio() == ConsultaDocumentos.Criterio.RANGO
+                    ? particiones.solapadas(Documento.convertirLocalDateTimeADate(consulta.desde()),
+                            Documento.convertirLocalDateTimeADate(consulta.hasta()))
+                    : particiones.todas();
+            long recorridos = 0;
+            LoteColumnar lote = new LoteColumnar(tamanoLote);
+            for (MongoCollection<Document> coleccion : destino) {
+                FindIterable<RawBsonDocument> cursor = durabilidad.aplicar("consulta", coleccion)
+                        .withDocumentClass(RawBsonDocument.class).find(filtro).batchSize(tamanoLote);
+                if (consulta.criterio() == ConsultaDocumentos.Criterio.RANGO) {
+                    cursor = cursor.sort(descending(esquema.escritura().campo(DisposicionCampos.FECHA_CREACION)));
+                }
+                try (MongoCursor<RawBsonDocument> registros = cursor.iterator()) {
+                    while (registros.hasNext()) {
+                        RawBsonDocument registro = registros.next();
+                        if (registro.containsKey(ArchivadorDocumentos.CAMPO_ARCHIVADO)) {
+                            lote.agregar(DisposicionCampos.normalizar(
+                                    archivador.leer(registro.decode(new DocumentCodec()))));
+                        } else {
+                            lote.agregar(registro);
+                        }
+                        recorridos++;
+                        if (lote.lleno()) {
+                            accion.accept(lote);
+                            lote = new LoteColumnar(tamanoLote, lote);
+                        }
+                    }
+                }
+            }
+            if (lote.tamano() > 0) {
+                accion.accept(lote);
+            }
+            return recorridos;
+        });
+    }
+
+    private Bson filtroConsulta(ConsultaDocumentos consulta) {
+        return switch (consulta.criterio()) {
+            case TODOS -> new Document();
+            case AUTOR -> esquema.filtro(DisposicionCampos.AUTOR, consulta.valor(), Filters::eq);
+            case TIPO -> esquema.filtro(DisposicionCampos.TIPO, consulta.valor(), Filters::eq);
+            case RANGO -> consulta.desde() == null && consulta.hasta() == null ? new Document()
+                    : esquema.filtroRango(DisposicionCampos.FECHA_CREACION,
+                            Documento.convertirLocalDateTimeADate(consulta.desde()),
+                            Documento.convertirLocalDateTimeADate(consulta.hasta()));
+        };
+    }
+
+    // Proyección de los campos lógicos en todas las disposiciones legibles; incluye siempre el resto
+    // de archivado para poder leer del archivo local los documentos fríos y la versión, que identifica
+    // la disposición de cada registro al normalizarlo (null = sin proyección)
+    private Bson proyeccion(List<String> campos) {
+        if (campos == null || campos.isEmpty()) {
+            return null;
+        }
+        List<String> logicos = new ArrayList<>(campos);
+        if (!logicos.contains(DisposicionCampos.VERSION)) {
+            logicos.add(DisposicionCampos.VERSION);
+        }
+        List<String> fisicos = new ArrayList<>();
+        fisicos.add(ArchivadorDocumentos.CAMPO_ARCHIVADO);
+        for (DisposicionCampos disposicion : esquema.lectura()) {
+            for (String campo : logicos) {
+                String fisico = disposicion.campo(campo);
+                if (!fisico.equals("_id") && !fisicos.contains(fisico)) {
+                    fisicos.add(fisico);
+                }
+            }
         }
+        return Projections.include(fisicos);
+    }
 
-        return collection.find(filtro)
-                .sort(descending("fechaCreacion"))
-                .map(doc -> {
-                    Documento d = new Documento();
-                    d.setId(doc.getObjectId("_id"));
-                    d.setTitulo(doc.getString("titulo"));
-                    d.setAutor(doc.getString("autor"));
-                    d.setTipoDocumento(doc.getString("tipoDocumento"));
-                    d.setFechaCreacion(convertirDateALocalDateTime(doc.getDate("fechaCreacion")));
-                    d.setFechaModificacion(convertirDateALocalDateTime(doc.getDate("fechaModificacion")));
-                    d.setEstado(doc.getString("estado"));
-                    d.setVersion(doc.getInteger("version", 1));
-                    d.setArchivoId(doc.getObjectId("archivoId"));
-                    return d;
-                })
-                .into(new ArrayList<>());
+    // === DESCARGA DE ARCHIVOS ADJUNTOS ===
+
+    // Transfiere el contenido de un archivo GridFS al flujo de destino; si el adjunto se archivó,
+    // se restaura antes su documento. Con la caché activa, los aciertos se sirven desde disco local
+    // tras comprobar en GridFS que el archivo sigue existiendo con la misma longitud.
+    public void descargarArchivoAdjunto(ObjectId archivoId, OutputStream destino) {
+        medir(metricasDescargar, LOG_DESCARGA, archivoId, () -> {
+            GridFSFile fichero = gridFSBucket.find(Filters.eq("_id", archivoId)).first();
+            if (fichero == null) {
+                invalidarCache(archivoId);
+                if (!archivador.restaurarPorAdjunto(archivoId)) {
+                    throw new MongoGridFSException("No file found with the id: " + archivoId);
+                }
+                LOG_DESCARGA.atDebug().addKeyValue("archivoId", archivoId).log("Adjunto restaurado desde el archivo");
+            }
+            try {
+                if (cacheAdjuntos != null && fichero != null
+                        && cacheAdjuntos.servir(archivoId, fichero.getLength(), destino)) {
+                    LOG_DESCARGA.atDebug().addKeyValue("archivoId", archivoId).log("Adjunto servido desde la caché local");
+                    return;
+                }
+                try (GridFSDownloadStream entrada = gridFSBucket.openDownloadStream(archivoId)) {
+                    OutputStream salida = new SalidaContada(destino, bytesDescargados);
+                    if (cacheAdjuntos != null) {
+                        cacheAdjuntos.copiarYGuardar(archivoId, entrada.getGridFSFile().getLength(), entrada, salida);
+                    } else {
+                        entrada.transferTo(salida);
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Error al transferir el adjunto " + archivoId, e);
+            }
+        });
     }
 
     // === SIMULACIÓN DE DESASTRES PARA PRUEBAS ===
 
     // Elimina todos los documentos (solo para pruebas de recuperación)
     public long simularDesastre() {
-        System.out.println("ADVERTENCIA: Simulando desastre - eliminando todos los documentos");
-        long eliminados = collection.deleteMany(new Document()).getDeletedCount();
-        System.out.println("Documentos eliminados en simulación: " + eliminados);
-        return eliminados;
+        return medir(metricasSimularDesastre, LOG, null, () -> {
+            LOG.warn("Simulando desastre: eliminando todos los documentos");
+            long eliminados = particiones.vaciar();
+            LOG.atWarn().addKeyValue("eliminados", eliminados).log("Simulación de desastre completada");
+            return eliminados;
+        });
+    }
+
+    // === ARCHIVADO DE DOCUMENTOS FRÍOS ===
+
+    // Traslada al almacenamiento local los documentos en archivado.estado sin modificar
+    // desde hace archivado.antiguedadMeses meses
+    public long archivarDocumentosFrios() {
+        LocalDateTime limite = LocalDateTime.now().minusMonths(mesesHastaArchivado);
+        return archivador.archivar(estadoArchivable, Documento.convertirLocalDateTimeADate(limite), loteArchivado);
+    }
+
+    // === RETENCIÓN POR PARTICIONES ===
+
+    // Elimina de una vez las particiones cuyo periodo terminó antes del límite (sin borrar registro a registro).
+    // Antes de cada drop se retiran el historial y los archivos locales de sus documentos; sus adjuntos de
+    // GridFS quedan sin referencias y el recolector los libera pasado el periodo de gracia.
+    public List<String> eliminarParticionesAnterioresA(LocalDateTime limite) {
+        return medir(metricasRetencion, LOG_ELIMINAR, null, () -> {
+            List<String> eliminadas = particiones.eliminarAnterioresA(Documento.convertirLocalDateTimeADate(limite),
+                    this::limpiarParticion);
+            LOG_ELIMINAR.atInfo().addKeyValue("limite", limite).addKeyValue("particiones", eliminadas)
+                    .log("Retención aplicada");
+            return eliminadas;
+        });
+    }
+
+    // Historial y archivos fríos de los documentos de una partición que va a eliminarse
+    private void limpiarParticion(MongoCollection<Document> coleccion) {
+        List<ObjectId> lote = new ArrayList<>(LOTE_LIMPIEZA);
+        long archivados = 0;
+        long historial = 0;
+        for (Document registro : coleccion.find()
+                .projection(Projections.include("_id", ArchivadorDocumentos.CAMPO_ARCHIVADO))
+                .batchSize(LOTE_LIMPIEZA)) {
+            if (ArchivadorDocumentos.esArchivado(registro)) {
+                archivador.descartar(registro);
+                archivados++;
+            }
+            lote.add(registro.getObjectId("_id"));
+            if (lote.size() == LOTE_LIMPIEZA) {
+                historial += eliminarHistorial(lote);
+                lote.clear();
+            }
+        }
+        if (!lote.isEmpty()) {
+            historial += eliminarHistorial(lote);
+        }
+        LOG_ELIMINAR.atInfo().addKeyValue("particion", coleccion.getNamespace().getCollectionName())
+                .addKeyValue("archivados", archivados).addKeyValue("entradasHistorial", historial)
+                .log("Dependencias de la partición eliminadas");
+    }
+
+    private long eliminarHistorial(List<ObjectId> docIds) {
+        return historial != null ? historial.eliminar(docIds) : 0;
+    }
+
+    // Aplica la retención configurada en particiones.retencion.meses (0 = sin retención)
+    public List<String> aplicarRetencionParticiones() {
+        if (mesesRetencion <= 0) {
+            return List.of();
+        }
+        return eliminarParticionesAnterioresA(LocalDateTime.now().minusMonths(mesesRetencion));
+    }
+
+    // === ÍNDICES ===
+
+    // Verifica los índices de documentos, particiones e historial en un hilo propio, para que el
+    // arranque no espere a createIndex; el futuro se completa al terminar (o con el error)
+    public CompletableFuture<Void> verificarIndicesEnSegundoPlano() {
+        CompletableFuture<Void> resultado = new CompletableFuture<>();
+        Thread hilo = new Thread(() -> {
+            long inicio = System.nanoTime();
+            try {
+                particiones.prepararExistentes();
+                if (historial != null) {
+                    historial.crearIndices();
+                }
+                recolector.crearIndices();
+                auditoria.crearColeccion();
+                LOG.atInfo().addKeyValue("duracionMs", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - inicio))
+                        .log("Índices verificados");
+                resultado.complete(null);
+            } catch (RuntimeException e) {
+                LOG.error("Error al verificar índices: {}", e.getMessage());
+                resultado.completeExceptionally(e);
+            }
+        }, "verificacion-indices");
+        hilo.setDaemon(true);
+        hilo.start();
+        return resultado;
+    }
+
+    // === RECOLECCIÓN DE ADJUNTOS ===
+
+    // Inicia las pasadas periódicas del recolector (gc.adjuntos.intervaloSegundos; 0 = desactivadas)
+    public void iniciarRecoleccionAdjuntos() {
+        recolector.iniciar(intervaloRecoleccion);
+    }
+
+    // Pasada inmediata del recolector; devuelve los adjuntos eliminados
+    public long recolectarAdjuntos() {
+        return recolector.recolectar();
+    }
+
+    // === CIERRE ===
+
+    // Escribe las inserciones agrupadas pendientes y libera los hilos del repositorio
+    public void cerrar() {
+        recolector.detener();
+        // Las últimas inserciones agrupadas registran su evento CREADO: la auditoría se cierra después
+        if (agrupador != null) {
+            agrupador.cerrar();
+        }
+        auditoria.cerrar();
+        particiones.cerrar();
     }
 
     // === ACCESO A COMPONENTES ===
@@ -0,0 +1,72 @@
+package org.example.repository;
+
+import com.mongodb.client.model.Filters;
+import org.bson.conversions.Bson;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiFunction;
+
+// Esquema de almacenamiento activo para la colección "documentos"
+// EXTENDIDO: se escribe y se lee sólo el formato original
+// MIXTO: se escribe en formato compacto y se leen ambos (durante la migración en línea)
+// COMPACTO: se escribe y se lee sólo el formato compacto (migración completada)
+public class EsquemaDocumento {
+
+    public enum Modo { EXTENDIDO, MIXTO, COMPACTO }
+
+    private final Modo modo;
+    private final List<DisposicionCampos> disposicionesLectura;
+
+    public EsquemaDocumento(Modo modo) {
+        this.modo = modo;
+        this.disposicionesLectura = switch (modo) {
+            case EXTENDIDO -> List.of(DisposicionCampos.EXTENDIDA);
+            case MIXTO -> List.of(DisposicionCampos.COMPACTA, DisposicionCampos.EXTENDIDA);
+            case COMPACTO -> List.of(DisposicionCampos.COMPACTA);
+        };
+    }
+
+    public Modo getModo() {
+        return modo;
+    }
+
+    // Disposición usada para los registros nuevos
+    public DisposicionCampos escritura() {
+        return modo == Modo.EXTENDIDO ? DisposicionCampos.EXTENDIDA : DisposicionCampos.COMPACTA;
+    }
+
+    // Disposiciones que pueden encontrarse al leer
+    public List<DisposicionCampos> lectura() {
+        return disposicionesLectura;
+    }
+
+    // Indica si los registros pueden estar en distintas disposiciones
+    public boolean esMixto() {
+        return disposicionesLectura.size() > 1;
+    }
+
+    // Construye un filtro sobre un campo lógico válido para todas las disposiciones legibles,
+    // p. ej. filtro(AUTOR, "ana", Filters::eq)
+    public Bson filtro(String logico, Object valor, BiFunction<String, Object, Bson> operador) {
+        List<Bson> alternativas = new ArrayList<>(disposicionesLectura.size());
+        for (DisposicionCampos disposicion : disposicionesLectura) {
+            alternativas.add(operador.apply(disposicion.campo(logico), disposicion.codificar(logico, valor)));
+        }
+        return alternativas.size() == 1 ? alternativas.get(0) : Filters.or(alternativas);
+    }
+
+    // Filtro de rango [desde, hasta] sobre un campo lógico; cualquiera de los extremos puede ser nulo
+    public Bson filtroRango(String logico, Object desde, Object hasta) {
+        List<Bson> alternativas = new ArrayList<>(disposicionesLectura.size());
+        for (DisposicionCampos disposicion : disposicionesLectura) {
+            String campo = disposicion.campo(logico);
+            List<Bson> condiciones = new ArrayList<>(2);
+            if (desde != null) condiciones.add(Filters.gte(campo, desde));
+            if (hasta != null) condiciones.add(Filters.lte(campo, hasta));
+            if (condiciones.isEmpty()) condiciones.add(Filters.exists(campo));
+            alternativas.add(condiciones.size() == 1 ? condiciones.get(0) : Filters.and(condiciones));
+        }
+        return alternativas.size() == 1 ? alternativas.get(0) : Filters.or(alternativas);
+    }
+}
@@ -0,0 +1,177 @@
+package org.example.repository;
+
+import com.mongodb.client.ClientSession;
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.Sorts;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Objects;
+
+// Historial de versiones de documentos codificado por deltas
+// Cada versión se guarda como la diferencia campo a campo respecto a su predecesora y,
+// cada "intervaloCheckpoint" versiones, como copia completa. Reconstruir la versión N
+// requiere como máximo un checkpoint y (intervaloCheckpoint - 1) deltas.
+public class HistorialVersiones {
+    static final String TIPO_CHECKPOINT = "CHECKPOINT";
+    static final String TIPO_DELTA = "DELTA";
+
+    // Campos del documento que forman parte de cada versión
+    static final List<String> CAMPOS_VERSIONADOS = List.of(
+            "titulo", "autor", "tipoDocumento", "fechaCreacion", "fechaModificacion", "estado", "archivoId");
+
+    private final MongoCollection<Document> coleccion;
+    private final int intervaloCheckpoint;
+
+    public HistorialVersiones(MongoDatabase database, int intervaloCheckpoint) {
+        this.coleccion = database.getCollection("documentos_historial");
+        this.intervaloCheckpoint = Math.max(1, intervaloCheckpoint);
+    }
+
+    // Índice único para localizar checkpoints y deltas de un documento por versión
+    public void crearIndices() {
+        coleccion.createIndex(Indexes.compoundIndex(Indexes.ascending("docId"), Indexes.descending("version")),
+                new IndexOptions().unique(true));
+    }
+
+    MongoCollection<Document> coleccion() {
+        return coleccion;
+    }
+
+    // === REGISTRO DE VERSIONES ===
+
+    // Registra la transición anterior -> posterior dentro de la transacción de la actualización.
+    // El delta se calcula respecto a la versión registrada, no a la imagen previa: hay cambios que no
+    // incrementan la versión (p. ej. la aprobación modifica el estado) y se perderían al reconstruir.
+    void registrar(ClientSession session, Document anterior, Document posterior) {
+        ObjectId docId = posterior.getObjectId("_id");
+        int versionAnterior = anterior.getInteger("version", 1);
+        int versionNueva = posterior.getInteger("version", 1);
+
+        // La primera actualización (o un documento anterior a la activación del historial)
+        // no tiene predecesora registrada: se guarda como checkpoint para poder reconstruir desde ella
+        Document registrada = reconstruir(session, docId, versionAnterior);
+        boolean predecesoraRegistrada = registrada != null;
+        if (!predecesoraRegistrada) {
+            coleccion.insertOne(session, checkpoint(docId, versionAnterior, anterior));
+            registrada = anterior;
+        }
+
+        if (!predecesoraRegistrada || versionNueva % intervaloCheckpoint != 0) {
+            coleccion.insertOne(session, delta(docId, versionNueva, registrada, posterior));
+        } else {
+            coleccion.insertOne(session, checkpoint(docId, versionNueva, posterior));
+        }
+    }
+
+    private Document checkpoint(ObjectId docId, int version, Document estado) {
+        Document campos = new Document();
+        for (String campo : CAMPOS_VERSIONADOS) {
+            if (estado.get(campo) != null) {
+                campos.append(campo, estado.get(campo));
+            }
+        }
+        return new Document("docId", docId)
+                .append("version", version)
+                .append("tipo", TIPO_CHECKPOINT)
+                .append("fecha", new Date())
+                .append("campos", campos);
+    }
+
+    // Sólo se almacenan los campos que cambiaron; los que pasan a nulo se listan en "eliminados"
+    private Document delta(ObjectId docId, int version, Document anterior, Document posterior) {
+        Document cambios = new Document();
+        List<String> eliminados = new ArrayList<>();
+        for (String campo : CAMPOS_VERSIONADOS) {
+            Object antes = anterior.get(campo);
+            Object despues = posterior.get(campo);
+            if (!Objects.equals(antes, despues)) {
+                if (despues == null) {
+                    eliminados.add(campo);
+                } else {
+                    cambios.append(campo, despues);
+                }
+            }
+        }
+        Document entrada = new Document("docId", docId)
+                .append("version", version)
+                .append("tipo", TIPO_DELTA)
+                .append("fecha", new Date())
+                .append("campos", cambios);
+        if (!eliminados.isEmpty()) {
+            entrada.append("eliminados", eliminados);
+        }
+        return entrada;
+    }
+
+    // === RECONSTRUCCIÓN ===
+
+    // Reconstruye los campos de la versión indicada, o null si no está registrada
+    public Document obtenerVersion(ObjectId docId, int version) {
+        return reconstruir(null, docId, version);
+    }
+
+    // Con sesión, la lectura participa en la transacción en curso
+    private Document reconstruir(ClientSession session, ObjectId docId, int version) {
+        Document checkpoint = buscar(session, Filters.and(
+                        Filters.eq("docId", docId),
+                        Filters.eq("tipo", TIPO_CHECKPOINT),
+                        Filters.lte("version", version)))
+                .sort(Sorts.descending("version"))
+                .first();
+        if (checkpoint == null) {
+            return null;
+        }
+
+        Document estado = new Document(checkpoint.get("campos", Document.class));
+        int versionReconstruida = checkpoint.getInteger("version");
+        if (versionReconstruida < version) {
+            for (Document delta : buscar(session, Filters.and(
+                            Filters.eq("docId", docId),
+                            Filters.gt("version", versionReconstruida),
+                            Filters.lte("version", version)))
+                    .sort(Sorts.ascending("version"))) {
+                // Entre el checkpoint elegido y la versión pedida sólo hay deltas
+                estado.putAll(delta.get("campos", Document.class));
+                List<String> eliminados = delta.getList("eliminados", String.class);
+                if (eliminados != null) {
+                    eliminados.forEach(estado::remove);
+                }
+                versionReconstruida = delta.getInteger("version");
+            }
+        }
+        if (versionReconstruida != version) {
+            return null;
+        }
+        return estado.append("_id", docId).append("version", version);
+    }
+
+    private FindIterable<Document> buscar(ClientSession session, Bson filtro) {
+        return session != null ? coleccion.find(session, filtro) : coleccion.find(filtro);
+    }
+
+    // Elimina el historial completo de los documentos indicados; devuelve las entradas borradas
+    long eliminar(List<ObjectId> docIds) {
+        return coleccion.deleteMany(Filters.in("docId", docIds)).getDeletedCount();
+    }
+
+    // Lista las versiones registradas de un documento (de la más reciente a la más antigua)
+    public List<Integer> listarVersiones(ObjectId docId) {
+        List<Integer> versiones = new ArrayList<>();
+        coleccion.find(Filters.eq("docId", docId))
+                .projection(Projections.include("version"))
+                .sort(Sorts.descending("version"))
+                .forEach(entrada -> versiones.add(entrada.getInteger("version")));
+        return versiones;
+    }
+}
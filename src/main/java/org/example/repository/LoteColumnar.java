@@ -0,0 +1,340 @@
+package org.example.repository;
+
+import org.bson.BsonBinaryReader;
+import org.bson.BsonReader;
+import org.bson.BsonType;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.types.ObjectId;
+import org.example.model.Documento;
+
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Lote de resultados en formato columnar para lecturas masivas
+// En lugar de un Documento por fila (con dos LocalDateTime, un ObjectId y cadenas repetidas), cada
+// campo se guarda en un array: identificadores como 12 bytes, fechas como epoch millis en long[],
+// versión en int[] y autor, tipo y estado codificados con diccionario (int[] de códigos sobre una
+// lista de valores distintos). Los registros se decodifican directamente del BSON sin construir
+// Document intermedios. Los lotes de un mismo recorrido comparten diccionarios, así que los códigos
+// son comparables entre lotes (p. ej. para agregar por autor sin comparar cadenas).
+public class LoteColumnar {
+    // Marcas de valor ausente
+    public static final long SIN_FECHA = Long.MIN_VALUE;
+    public static final int SIN_VALOR = -1;
+
+    private static final int BYTES_ID = 12;
+    private static final ZoneId ZONA = ZoneId.systemDefault();
+
+    // Nombre físico (de cualquier disposición) -> campo lógico
+    private static final Map<String, String> LOGICOS = new HashMap<>();
+
+    static {
+        for (String campo : DisposicionCampos.CAMPOS) {
+            for (DisposicionCampos disposicion : DisposicionCampos.values()) {
+                LOGICOS.put(disposicion.campo(campo), campo);
+            }
+        }
+    }
+
+    // Valores distintos de una columna de baja cardinalidad; el código es la posición en la lista
+    public static class Diccionario {
+        private final Map<String, Integer> codigos = new HashMap<>();
+        private final List<String> valores = new ArrayList<>();
+
+        int codificar(String valor) {
+            if (valor == null) return SIN_VALOR;
+            Integer codigo = codigos.get(valor);
+            if (codigo == null) {
+                codigo = valores.size();
+                valores.add(valor);
+                codigos.put(valor, codigo);
+            }
+            return codigo;
+        }
+
+        public String valor(int codigo) {
+            return codigo == SIN_VALOR ? null : valores.get(codigo);
+        }
+
+        public int tamano() {
+            return valores.size();
+        }
+    }
+
+    private final Diccionario autores;
+    private final Diccionario tipos;
+    private final Diccionario estados;
+
+    private int tamano;
+    private byte[] ids;
+    private String[] titulos;
+    private int[] codigosAutor;
+    private int[] codigosTipo;
+    private int[] codigosEstado;
+    private long[] fechasCreacion;
+    private long[] fechasModificacion;
+    private int[] versiones;
+    private byte[] archivos;
+    private final BitSet conArchivo = new BitSet();
+
+    // Lote vacío con diccionarios propios
+    public LoteColumnar(int capacidad) {
+        this(capacidad, new Diccionario(), new Diccionario(), new Diccionario());
+    }
+
+    // Lote vacío que comparte los diccionarios de otro lote del mismo recorrido
+    public LoteColumnar(int capacidad, LoteColumnar anterior) {
+        this(capacidad, anterior.autores, anterior.tipos, anterior.estados);
+    }
+
+    private LoteColumnar(int capacidad, Diccionario autores, Diccionario tipos, Diccionario estados) {
+        this.autores = autores;
+        this.tipos = tipos;
+        this.estados = estados;
+        this.ids = new byte[capacidad * BYTES_ID];
+        this.titulos = new String[capacidad];
+        this.codigosAutor = new int[capacidad];
+        this.codigosTipo = new int[capacidad];
+        this.codigosEstado = new int[capacidad];
+        this.fechasCreacion = new long[capacidad];
+        this.fechasModificacion = new long[capacidad];
+        this.versiones = new int[capacidad];
+        this.archivos = new byte[capacidad * BYTES_ID];
+    }
+
+    public int tamano() {
+        return tamano;
+    }
+
+    public boolean lleno() {
+        return tamano == titulos.length;
+    }
+
+    // === CARGA ===
+
+    // Añade un registro físico (en cualquier disposición) leyendo el BSON campo a campo
+    public void agregar(RawBsonDocument registro) {
+        int fila = nuevaFila();
+        try (BsonBinaryReader lector = new BsonBinaryReader(registro.getByteBuffer().asNIO())) {
+            lector.readStartDocument();
+            while (lector.readBsonType() != BsonType.END_OF_DOCUMENT) {
+                String nombre = lector.readName();
+                String campo = nombre.equals("_id") ? "_id" : LOGICOS.get(nombre);
+                if (campo == null || lector.getCurrentBsonType() == BsonType.NULL) {
+                    lector.skipValue();
+                    continue;
+                }
+                switch (campo) {
+                    case "_id" -> escribirId(ids, fila, lector.readObjectId());
+                    case DisposicionCampos.TITULO -> titulos[fila] = leerTexto(lector, campo);
+                    case DisposicionCampos.AUTOR -> codigosAutor[fila] = autores.codificar(leerTexto(lector, campo));
+                    case DisposicionCampos.TIPO -> codigosTipo[fila] = tipos.codificar(leerTexto(lector, campo));
+                    case DisposicionCampos.ESTADO -> codigosEstado[fila] = estados.codificar(leerTexto(lector, campo));
+                    case DisposicionCampos.FECHA_CREACION -> fechasCreacion[fila] = leerFecha(lector);
+                    case DisposicionCampos.FECHA_MODIFICACION -> fechasModificacion[fila] = leerFecha(lector);
+                    case DisposicionCampos.VERSION -> versiones[fila] = leerEntero(lector);
+                    case DisposicionCampos.ARCHIVO -> {
+                        escribirId(archivos, fila, lector.readObjectId());
+                        conArchivo.set(fila);
+                    }
+                    default -> lector.skipValue();
+                }
+            }
+            lector.readEndDocument();
+        }
+    }
+
+    // Añade un registro ya normalizado a nombres lógicos (p. ej. leído de un archivo frío)
+    public void agregar(Document logico) {
+        int fila = nuevaFila();
+        escribirId(ids, fila, logico.getObjectId("_id"));
+        titulos[fila] = logico.getString(DisposicionCampos.TITULO);
+        codigosAutor[fila] = autores.codificar(logico.getString(DisposicionCampos.AUTOR));
+        codigosTipo[fila] = tipos.codificar(logico.getString(DisposicionCampos.TIPO));
+        codigosEstado[fila] = estados.codificar(logico.getString(DisposicionCampos.ESTADO));
+        Date creacion = logico.getDate(DisposicionCampos.FECHA_CREACION);
+        Date modificacion = logico.getDate(DisposicionCampos.FECHA_MODIFICACION);
+        fechasCreacion[fila] = creacion != null ? creacion.getTime() : SIN_FECHA;
+        fechasModificacion[fila] = modificacion != null ? modificacion.getTime() : SIN_FECHA;
+        // Como en leerEntero: la versión puede llegar como Int32, Int64 o Double
+        versiones[fila] = logico.get(DisposicionCampos.VERSION) instanceof Number version ? version.intValue() : 1;
+        ObjectId archivo = logico.getObjectId(DisposicionCampos.ARCHIVO);
+        if (archivo != null) {
+            escribirId(archivos, fila, archivo);
+            conArchivo.set(fila);
+        }
+    }
+
+    // Reduce los arrays al número de filas cargadas (útil antes de conservar el lote en memoria)
+    public LoteColumnar recortar() {
+        if (!lleno()) {
+            ids = Arrays.copyOf(ids, tamano * BYTES_ID);
+            titulos = Arrays.copyOf(titulos, tamano);
+            codigosAutor = Arrays.copyOf(codigosAutor, tamano);
+            codigosTipo = Arrays.copyOf(codigosTipo, tamano);
+            codigosEstado = Arrays.copyOf(codigosEstado, tamano);
+            fechasCreacion = Arrays.copyOf(fechasCreacion, tamano);
+            fechasModificacion = Arrays.copyOf(fechasModificacion, tamano);
+            versiones = Arrays.copyOf(versiones, tamano);
+            archivos = Arrays.copyOf(archivos, tamano * BYTES_ID);
+        }
+        return this;
+    }
+
+    private int nuevaFila() {
+        if (lleno()) {
+            throw new IllegalStateException("Lote columnar lleno (" + tamano + " filas)");
+        }
+        int fila = tamano++;
+        codigosAutor[fila] = SIN_VALOR;
+        codigosTipo[fila] = SIN_VALOR;
+        codigosEstado[fila] = SIN_VALOR;
+        fechasCreacion[fila] = SIN_FECHA;
+        fechasModificacion[fila] = SIN_FECHA;
+        versiones[fila] = 1;
+        return fila;
+    }
+
+    // Texto de un campo; en disposición compacta tipo y estado llegan como código entero
+    private static String leerTexto(BsonReader lector, String campo) {
+        return switch (lector.getCurrentBsonType()) {
+            case STRING -> lector.readString();
+            case INT32 -> {
+                int codigo = lector.readInt32();
+                String texto = DisposicionCampos.textoDeCodigo(campo, codigo);
+                yield texto != null ? texto : Integer.toString(codigo);
+            }
+            default -> {
+                lector.skipValue();
+                yield null;
+            }
+        };
+    }
+
+    private static long leerFecha(BsonReader lector) {
+        if (lector.getCurrentBsonType() == BsonType.DATE_TIME) {
+            return lector.readDateTime();
+        }
+        lector.skipValue();
+        return SIN_FECHA;
+    }
+
+    private static int leerEntero(BsonReader lector) {
+        return switch (lector.getCurrentBsonType()) {
+            case INT32 -> lector.readInt32();
+            case INT64 -> (int) lector.readInt64();
+            case DOUBLE -> (int) lector.readDouble();
+            default -> {
+                lector.skipValue();
+                yield 1;
+            }
+        };
+    }
+
+    private static void escribirId(byte[] destino, int fila, ObjectId id) {
+        if (id != null) {
+            id.putToByteBuffer(ByteBuffer.wrap(destino, fila * BYTES_ID, BYTES_ID));
+        }
+    }
+
+    // === ACCESO POR FILA ===
+
+    public ObjectId id(int fila) {
+        return new ObjectId(ByteBuffer.wrap(ids, fila * BYTES_ID, BYTES_ID).slice());
+    }
+
+    public String titulo(int fila) {
+        return titulos[fila];
+    }
+
+    public String autor(int fila) {
+        return autores.valor(codigosAutor[fila]);
+    }
+
+    public String tipoDocumento(int fila) {
+        return tipos.valor(codigosTipo[fila]);
+    }
+
+    public String estado(int fila) {
+        return estados.valor(codigosEstado[fila]);
+    }
+
+    // Códigos de diccionario (SIN_VALOR si el campo es nulo), para agrupar sin comparar cadenas
+    public int codigoAutor(int fila) {
+        return codigosAutor[fila];
+    }
+
+    public int codigoTipo(int fila) {
+        return codigosTipo[fila];
+    }
+
+    public int codigoEstado(int fila) {
+        return codigosEstado[fila];
+    }
+
+    public Diccionario autores() {
+        return autores;
+    }
+
+    public Diccionario tipos() {
+        return tipos;
+    }
+
+    public Diccionario estados() {
+        return estados;
+    }
+
+    // Fechas en epoch millis (SIN_FECHA si el campo es nulo)
+    public long fechaCreacionMillis(int fila) {
+        return fechasCreacion[fila];
+    }
+
+    public long fechaModificacionMillis(int fila) {
+        return fechasModificacion[fila];
+    }
+
+    public int version(int fila) {
+        return versiones[fila];
+    }
+
+    public ObjectId archivoId(int fila) {
+        return conArchivo.get(fila)
+                ? new ObjectId(ByteBuffer.wrap(archivos, fila * BYTES_ID, BYTES_ID).slice()) : null;
+    }
+
+    // Materializa una fila como objeto del dominio (para mostrarla o reutilizar código existente)
+    public Documento aDocumento(int fila) {
+        Documento doc = new Documento();
+        doc.setId(id(fila));
+        doc.setTitulo(titulo(fila));
+        doc.setAutor(autor(fila));
+        doc.setTipoDocumento(tipoDocumento(fila));
+        doc.setFechaCreacion(aFecha(fechasCreacion[fila]));
+        doc.setFechaModificacion(aFecha(fechasModificacion[fila]));
+        doc.setEstado(estado(fila));
+        doc.setVersion(versiones[fila]);
+        doc.setArchivoId(archivoId(fila));
+        return doc;
+    }
+
+    private static LocalDateTime aFecha(long millis) {
+        return millis == SIN_FECHA ? null : LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZONA);
+    }
+
+    // Memoria aproximada de los arrays del lote (sin contar títulos ni diccionarios compartidos)
+    public long bytesColumnas() {
+        return ids.length + archivos.length + 4L * (codigosAutor.length + codigosTipo.length
+                + codigosEstado.length + versiones.length) + 8L * (fechasCreacion.length + fechasModificacion.length)
+                + conArchivo.size() / 8;
+    }
+}
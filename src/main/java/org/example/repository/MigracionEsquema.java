@@ -0,0 +1,181 @@
+package org.example.repository;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.Sorts;
+import com.mongodb.client.model.WriteModel;
+import com.mongodb.bulk.BulkWriteResult;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
+import org.example.config.MongoConfig;
+import org.example.metrics.Contador;
+import org.example.metrics.RegistroMetricas;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+// Migración en línea de la colección "documentos" entre disposiciones de campos
+// Recorre la colección por _id en lotes acotados y reescribe cada registro con un reemplazo
+// condicionado al contenido leído: si otro escritor lo modificó entretanto, el reemplazo no
+// aplica y el registro se vuelve a leer al final. La aplicación debe ejecutarse en modo MIXTO
+// mientras dura la migración para leer ambas disposiciones.
+// Uso: java org.example.repository.MigracionEsquema direccion=compactar lote=500 docsPorSegundo=2000
+public class MigracionEsquema {
+    private static final Logger LOG = LoggerFactory.getLogger(MigracionEsquema.class);
+    private static final int PASADAS_REINTENTO = 3;
+
+    private final MongoCollection<Document> collection;
+    private final DisposicionCampos destino;
+    private final int tamanoLote;
+    private final double docsPorSegundo;
+
+    private final Contador migrados = RegistroMetricas.contador("migracion.migrados");
+    private final Contador omitidos = RegistroMetricas.contador("migracion.modificadosConcurrentemente");
+
+    public MigracionEsquema(MongoCollection<Document> collection, DisposicionCampos destino,
+                            int tamanoLote, double docsPorSegundo) {
+        if (tamanoLote <= 0) throw new IllegalArgumentException("lote debe ser mayor que cero");
+        this.collection = collection;
+        this.destino = destino;
+        this.tamanoLote = tamanoLote;
+        this.docsPorSegundo = docsPorSegundo;
+    }
+
+    // Ejecuta la migración desde el _id indicado (null = desde el principio) y devuelve los registros reescritos
+    public long migrar(ObjectId desde) {
+        long inicio = System.nanoTime();
+        long reescritos = 0;
+        long revisados = 0;
+        List<ObjectId> pendientes = new ArrayList<>();
+        ObjectId cursor = desde;
+
+        while (true) {
+            Bson filtro = cursor != null ? Filters.gt("_id", cursor) : new Document();
+            List<Document> lote = collection.find(filtro)
+                    .sort(Sorts.ascending("_id"))
+                    .limit(tamanoLote)
+                    .into(new ArrayList<>(tamanoLote));
+            if (lote.isEmpty()) {
+                break;
+            }
+            cursor = lote.get(lote.size() - 1).getObjectId("_id");
+            revisados += lote.size();
+            reescritos += reescribir(lote, pendientes);
+            LOG.atInfo().addKeyValue("revisados", revisados).addKeyValue("reescritos", reescritos)
+                    .addKeyValue("ultimoId", cursor).log("Lote de migración aplicado");
+            regular(inicio, revisados);
+        }
+
+        // Registros modificados por otros escritores durante su lote: se releen y se reintentan
+        for (int pasada = 0; pasada < PASADAS_REINTENTO && !pendientes.isEmpty(); pasada++) {
+            List<ObjectId> ids = pendientes;
+            pendientes = new ArrayList<>();
+            for (int i = 0; i < ids.size(); i += tamanoLote) {
+                List<Document> lote = collection.find(Filters.in("_id", ids.subList(i, Math.min(ids.size(), i + tamanoLote))))
+                        .into(new ArrayList<>());
+                reescritos += reescribir(lote, pendientes);
+            }
+        }
+
+        if (!pendientes.isEmpty()) {
+            LOG.atWarn().addKeyValue("pendientes", pendientes.size())
+                    .log("Registros sin migrar por modificaciones concurrentes; vuelva a ejecutar la migración");
+        }
+        LOG.atInfo().addKeyValue("destino", destino).addKeyValue("revisados", revisados)
+                .addKeyValue("reescritos", reescritos)
+                .addKeyValue("segundos", TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - inicio))
+                .log("Migración de esquema completada");
+        return reescritos;
+    }
+
+    // Reescribe en un único bulk desordenado los registros del lote que no están ya en la disposición destino
+    private long reescribir(List<Document> lote, List<ObjectId> pendientes) {
+        List<WriteModel<Document>> reemplazos = new ArrayList<>(lote.size());
+        List<ObjectId> ids = new ArrayList<>(lote.size());
+        for (Document registro : lote) {
+            DisposicionCampos origen = DisposicionCampos.de(registro);
+            // Los restos de documentos archivados no se migran: al restaurarse recuperan el registro
+            // original, que la siguiente ejecución de la migración reescribe
+            if (origen == destino || ArchivadorDocumentos.esArchivado(registro)) continue;
+            // El filtro es el registro completo tal como se leyó: sólo coincide si nadie lo cambió
+            reemplazos.add(new ReplaceOneModel<>(registro, destino.escribir(origen.aLogico(registro))));
+            ids.add(registro.getObjectId("_id"));
+        }
+        if (reemplazos.isEmpty()) {
+            return 0;
+        }
+
+        BulkWriteResult resultado = collection.bulkWrite(reemplazos, new BulkWriteOptions().ordered(false));
+        int aplicados = resultado.getMatchedCount();
+        migrados.sumar(aplicados);
+        if (aplicados < reemplazos.size()) {
+            // Se identifican los que siguen en la disposición de origen para reintentarlos
+            collection.find(Filters.and(Filters.in("_id", ids),
+                            Filters.exists(destino.campo(DisposicionCampos.VERSION), false)))
+                    .forEach(registro -> pendientes.add(registro.getObjectId("_id")));
+            omitidos.sumar(reemplazos.size() - aplicados);
+        }
+        return aplicados;
+    }
+
+    // Limita el ritmo al número de registros por segundo configurado (0 = sin límite)
+    private void regular(long inicio, long revisados) {
+        if (docsPorSegundo <= 0) return;
+        long objetivo = inicio + (long) (revisados * 1e9 / docsPorSegundo);
+        long espera = objetivo - System.nanoTime();
+        if (espera > 0) {
+            LockSupport.parkNanos(espera);
+        }
+    }
+
+    // === EJECUCIÓN DESDE LÍNEA DE COMANDOS ===
+
+    public static void main(String[] args) {
+        Properties defecto = MongoConfig.getProperties();
+        Properties p = new Properties();
+        p.setProperty("direccion", "compactar");
+        p.setProperty("lote", defecto.getProperty("esquema.migracion.lote", "500"));
+        p.setProperty("docsPorSegundo", defecto.getProperty("esquema.migracion.docsPorSegundo", "2000"));
+        for (String arg : args) {
+            String limpio = arg.startsWith("--") ? arg.substring(2) : arg;
+            int separador = limpio.indexOf('=');
+            if (separador <= 0) {
+                throw new IllegalArgumentException("Argumento inválido (se esperaba clave=valor): " + arg);
+            }
+            p.setProperty(limpio.substring(0, separador).trim(), limpio.substring(separador + 1).trim());
+        }
+
+        DisposicionCampos destino = switch (p.getProperty("direccion").toLowerCase()) {
+            case "compactar" -> DisposicionCampos.COMPACTA;
+            case "extender" -> DisposicionCampos.EXTENDIDA;
+            default -> throw new IllegalArgumentException("direccion debe ser compactar o extender");
+        };
+        ObjectId desde = p.containsKey("desde") ? new ObjectId(p.getProperty("desde")) : null;
+
+        try {
+            // Se migran la colección base y todas las particiones temporales existentes
+            ParticionesDocumentos particiones = new ParticionesDocumentos(
+                    MongoConfig.getMongoClient().getDatabase(MongoConfig.getDatabaseName()), "documentos",
+                    ParticionesDocumentos.Periodo.valueOf(defecto.getProperty("particiones.periodo", "NINGUNO").trim().toUpperCase()),
+                    1, coleccion -> { });
+            for (MongoCollection<Document> collection : particiones.todas()) {
+                LOG.atInfo().addKeyValue("coleccion", collection.getNamespace().getCollectionName()).log("Migrando colección");
+                new MigracionEsquema(collection, destino,
+                        Integer.parseInt(p.getProperty("lote")),
+                        Double.parseDouble(p.getProperty("docsPorSegundo")))
+                        .migrar(desde);
+            }
+            particiones.cerrar();
+        } finally {
+            MongoConfig.closeMongoClient();
+        }
+    }
+}
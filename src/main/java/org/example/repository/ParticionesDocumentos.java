@@ -0,0 +1,374 @@
+package org.example.repository;
+
+import com.mongodb.client.ClientSession;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.Filters;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Particionado temporal de la colección de documentos
+// Cada registro se guarda en la colección del periodo (UTC) de su fechaCreacion, p. ej.
+// documentos_2026 (ANUAL) o documentos_2026_03 (MENSUAL). La colección base conserva los
+// registros sin fecha y los anteriores a la activación, y participa siempre en las consultas.
+// Con el periodo NINGUNO todo se guarda en la colección base, como antes del particionado.
+public class ParticionesDocumentos {
+    private static final Logger LOG = LoggerFactory.getLogger(ParticionesDocumentos.class);
+    private static final long REFRESCO_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    public enum Periodo { NINGUNO, ANUAL, MENSUAL }
+
+    private final MongoDatabase database;
+    private final MongoCollection<Document> base;
+    private final Periodo periodo;
+    private final Pattern patronNombre;
+    private final Consumer<MongoCollection<Document>> preparar;
+    private final ExecutorService ejecutor;
+
+    // Particiones existentes ordenadas de la más reciente a la más antigua
+    private final NavigableSet<String> existentes = new ConcurrentSkipListSet<>(Comparator.reverseOrder());
+    private final Map<String, MongoCollection<Document>> colecciones = new ConcurrentHashMap<>();
+    private volatile long ultimoRefresco;
+
+    // "preparar" se invoca una vez por partición nueva (creación de índices). El constructor no
+    // accede al servidor: las particiones existentes se descubren en el primer uso y sus índices
+    // se verifican con prepararExistentes()
+    public ParticionesDocumentos(MongoDatabase database, String nombreBase, Periodo periodo, int hilosConsulta,
+                                 Consumer<MongoCollection<Document>> preparar) {
+        this.database = database;
+        this.base = database.getCollection(nombreBase);
+        this.periodo = periodo;
+        this.patronNombre = Pattern.compile(Pattern.quote(nombreBase) + "_(\\d{4})(?:_(\\d{2}))?");
+        this.preparar = preparar;
+        if (periodo == Periodo.NINGUNO) {
+            this.ejecutor = null;
+        } else {
+            AtomicInteger contador = new AtomicInteger();
+            this.ejecutor = Executors.newFixedThreadPool(Math.max(1, hilosConsulta), tarea -> {
+                Thread hilo = new Thread(tarea, "particiones-" + contador.incrementAndGet());
+                hilo.setDaemon(true);
+                return hilo;
+            });
+        }
+        this.ultimoRefresco = System.nanoTime() - 2 * REFRESCO_NANOS;
+    }
+
+    // Verifica los índices de la colección base y de las particiones ya existentes
+    public void prepararExistentes() {
+        preparar.accept(base);
+        if (activo()) {
+            refrescar();
+            for (String nombre : existentes) {
+                preparar.accept(coleccion(nombre));
+            }
+        }
+    }
+
+    public boolean activo() {
+        return periodo != Periodo.NINGUNO;
+    }
+
+    public MongoCollection<Document> base() {
+        return base;
+    }
+
+    // === ENRUTAMIENTO ===
+
+    // Colección destino de un registro nuevo según su fecha de creación
+    public MongoCollection<Document> paraFecha(Date fechaCreacion) {
+        if (!activo() || fechaCreacion == null) {
+            return base;
+        }
+        String nombre = nombreParticion(fechaCreacion.toInstant());
+        MongoCollection<Document> coleccion = coleccion(nombre);
+        if (existentes.add(nombre)) {
+            preparar.accept(coleccion);
+            LOG.atInfo().addKeyValue("particion", nombre).log("Partición creada");
+        }
+        return coleccion;
+    }
+
+    // Registro localizado junto con la colección (base o partición) en la que está guardado
+    public record Localizado(MongoCollection<Document> coleccion, Document registro) {
+    }
+
+    // Busca el registro con el _id indicado ejecutando la lectura del llamador (con su perfil de
+    // durabilidad) directamente sobre cada candidata; null si no existe en ninguna colección.
+    // Se prueba primero la partición del instante del ObjectId, que coincide con la fecha de
+    // creación salvo en documentos con fecha explícita; sólo ante un fallo se recorre el resto en paralelo.
+    public Localizado localizar(ObjectId id, Function<MongoCollection<Document>, Document> lectura) {
+        if (!activo()) {
+            return localizadoEn(base, lectura);
+        }
+        List<MongoCollection<Document>> candidatas = candidatas(id);
+        Localizado primero = localizadoEn(candidatas.get(0), lectura);
+        if (primero != null) {
+            return primero;
+        }
+        for (List<Localizado> encontrado : enParalelo(candidatas.subList(1, candidatas.size()), c -> {
+            Localizado localizado = localizadoEn(c, lectura);
+            return localizado != null ? List.of(localizado) : List.<Localizado>of();
+        })) {
+            if (!encontrado.isEmpty()) {
+                return encontrado.get(0);
+            }
+        }
+        return null;
+    }
+
+    // Variante para transacciones: todas las lecturas usan la sesión y se hacen en secuencia,
+    // ya que una ClientSession no admite operaciones concurrentes
+    public Localizado localizar(ClientSession session, ObjectId id) {
+        Bson filtro = Filters.eq("_id", id);
+        Function<MongoCollection<Document>, Document> lectura = c -> c.find(session, filtro).first();
+        if (!activo()) {
+            return localizadoEn(base, lectura);
+        }
+        for (MongoCollection<Document> candidata : candidatas(id)) {
+            Localizado localizado = localizadoEn(candidata, lectura);
+            if (localizado != null) {
+                return localizado;
+            }
+        }
+        return null;
+    }
+
+    // Todas las colecciones, con la partición probable del ObjectId (si existe) en primer lugar
+    private List<MongoCollection<Document>> candidatas(ObjectId id) {
+        List<MongoCollection<Document>> candidatas = new ArrayList<>(todas());
+        String probable = nombreParticion(id.getDate().toInstant());
+        if (existentes.contains(probable)) {
+            candidatas.removeIf(c -> c.getNamespace().getCollectionName().equals(probable));
+            candidatas.add(0, coleccion(probable));
+        }
+        return candidatas;
+    }
+
+    private static Localizado localizadoEn(MongoCollection<Document> coleccion,
+                                           Function<MongoCollection<Document>, Document> lectura) {
+        Document registro = lectura.apply(coleccion);
+        return registro != null ? new Localizado(coleccion, registro) : null;
+    }
+
+    // Colección por nombre (base o partición), p. ej. a partir del espacio de nombres del oplog
+    public MongoCollection<Document> porNombre(String nombre) {
+        if (nombre.equals(base.getNamespace().getCollectionName())) {
+            return base;
+        }
+        if (!patronNombre.matcher(nombre).matches()) {
+            throw new IllegalArgumentException("No es una partición de documentos: " + nombre);
+        }
+        // Una partición recreada por la recuperación (p. ej. tras vaciar()) necesita sus índices
+        MongoCollection<Document> coleccion = coleccion(nombre);
+        if (existentes.add(nombre)) {
+            preparar.accept(coleccion);
+            LOG.atInfo().addKeyValue("particion", nombre).log("Partición creada");
+        }
+        return coleccion;
+    }
+
+    // Filtro del campo "ns" del oplog que cubre la colección base y todas sus particiones
+    public Bson filtroNamespace() {
+        String prefijo = database.getName() + "." + base.getNamespace().getCollectionName();
+        if (!activo()) {
+            return Filters.eq("ns", prefijo);
+        }
+        return Filters.regex("ns", "^" + Pattern.quote(prefijo) + "(_\\d{4}(_\\d{2})?)?$");
+    }
+
+    // === PODA DE PARTICIONES ===
+
+    // Colección base y todas las particiones, de la más reciente a la más antigua
+    public List<MongoCollection<Document>> todas() {
+        return solapadas(null, null);
+    }
+
+    // Colección base y particiones cuyo periodo se solapa con [desde, hasta]; extremos nulos = abierto
+    public List<MongoCollection<Document>> solapadas(Date desde, Date hasta) {
+        List<MongoCollection<Document>> resultado = new ArrayList<>();
+        resultado.add(base);
+        if (!activo()) {
+            return resultado;
+        }
+        if (System.nanoTime() - ultimoRefresco > REFRESCO_NANOS) {
+            refrescar();
+        }
+        for (String nombre : existentes) {
+            Instant[] limites = limites(nombre);
+            boolean antesDelRango = desde != null && !limites[1].isAfter(desde.toInstant());
+            boolean despuesDelRango = hasta != null && limites[0].isAfter(hasta.toInstant());
+            if (!antesDelRango && !despuesDelRango) {
+                resultado.add(coleccion(nombre));
+            }
+        }
+        return resultado;
+    }
+
+    // === CONSULTA EN PARALELO ===
+
+    // Ejecuta la consulta sobre cada colección en paralelo; los resultados conservan el orden de entrada
+    public <T> List<List<T>> enParalelo(List<MongoCollection<Document>> destino,
+                                        Function<MongoCollection<Document>, List<T>> consulta) {
+        if (destino.size() <= 1 || ejecutor == null) {
+            List<List<T>> resultados = new ArrayList<>(destino.size());
+            for (MongoCollection<Document> coleccion : destino) {
+                resultados.add(consulta.apply(coleccion));
+            }
+            return resultados;
+        }
+        List<Future<List<T>>> pendientes = new ArrayList<>(destino.size());
+        for (MongoCollection<Document> coleccion : destino) {
+            pendientes.add(ejecutor.submit(() -> consulta.apply(coleccion)));
+        }
+        List<List<T>> resultados = new ArrayList<>(destino.size());
+        try {
+            for (Future<List<T>> pendiente : pendientes) {
+                resultados.add(pendiente.get());
+            }
+        } catch (InterruptedException e) {
+            pendientes.forEach(p -> p.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Consulta sobre particiones interrumpida", e);
+        } catch (ExecutionException e) {
+            pendientes.forEach(p -> p.cancel(true));
+            Throwable causa = e.getCause();
+            throw causa instanceof RuntimeException r ? r : new IllegalStateException(causa);
+        }
+        return resultados;
+    }
+
+    // Mezcla k listas ya ordenadas según el comparador en una única lista ordenada
+    public static <T> List<T> mezclarOrdenado(List<List<T>> listas, Comparator<? super T> orden) {
+        int total = 0;
+        for (List<T> lista : listas) total += lista.size();
+        List<T> resultado = new ArrayList<>(total);
+        // Cada entrada de la cola es {índice de lista, posición dentro de la lista}
+        PriorityQueue<int[]> cola = new PriorityQueue<>(Math.max(1, listas.size()),
+                (a, b) -> orden.compare(listas.get(a[0]).get(a[1]), listas.get(b[0]).get(b[1])));
+        for (int i = 0; i < listas.size(); i++) {
+            if (!listas.get(i).isEmpty()) cola.add(new int[]{i, 0});
+        }
+        while (!cola.isEmpty()) {
+            int[] cabeza = cola.poll();
+            List<T> lista = listas.get(cabeza[0]);
+            resultado.add(lista.get(cabeza[1]));
+            if (++cabeza[1] < lista.size()) cola.add(cabeza);
+        }
+        return resultado;
+    }
+
+    // === RETENCIÓN ===
+
+    // Elimina las particiones cuyo periodo terminó antes del límite; devuelve sus nombres.
+    // "limpiar" recibe cada partición antes de eliminarla, para retirar lo que depende de sus documentos
+    public List<String> eliminarAnterioresA(Date limite, Consumer<MongoCollection<Document>> limpiar) {
+        List<String> eliminadas = new ArrayList<>();
+        if (!activo()) {
+            return eliminadas;
+        }
+        refrescar();
+        for (String nombre : existentes) {
+            if (!limites(nombre)[1].isAfter(limite.toInstant())) {
+                limpiar.accept(coleccion(nombre));
+                coleccion(nombre).drop();
+                existentes.remove(nombre);
+                colecciones.remove(nombre);
+                eliminadas.add(nombre);
+                LOG.atInfo().addKeyValue("particion", nombre).log("Partición eliminada por retención");
+            }
+        }
+        return eliminadas;
+    }
+
+    // Elimina todas las particiones y vacía la colección base; devuelve los registros afectados
+    public long vaciar() {
+        long eliminados = base.deleteMany(new Document()).getDeletedCount();
+        if (activo()) {
+            refrescar();
+            for (String nombre : existentes) {
+                MongoCollection<Document> coleccion = coleccion(nombre);
+                eliminados += coleccion.countDocuments();
+                coleccion.drop();
+                colecciones.remove(nombre);
+            }
+            existentes.clear();
+        }
+        return eliminados;
+    }
+
+    public void cerrar() {
+        if (ejecutor != null) {
+            ejecutor.shutdownNow();
+        }
+    }
+
+    // === NOMBRES Y PERIODOS ===
+
+    private MongoCollection<Document> coleccion(String nombre) {
+        return colecciones.computeIfAbsent(nombre, database::getCollection);
+    }
+
+    private void refrescar() {
+        List<String> encontradas = new ArrayList<>();
+        for (String nombre : database.listCollectionNames()) {
+            if (patronNombre.matcher(nombre).matches()) {
+                encontradas.add(nombre);
+            }
+        }
+        existentes.retainAll(encontradas);
+        existentes.addAll(encontradas);
+        ultimoRefresco = System.nanoTime();
+    }
+
+    String nombreParticion(Instant instante) {
+        ZonedDateTime fecha = instante.atZone(ZoneOffset.UTC);
+        String nombre = base.getNamespace().getCollectionName() + "_" + fecha.getYear();
+        return periodo == Periodo.MENSUAL ? nombre + String.format("_%02d", fecha.getMonthValue()) : nombre;
+    }
+
+    // Intervalo [inicio, fin) del periodo que cubre una partición
+    private Instant[] limites(String nombre) {
+        Matcher m = patronNombre.matcher(nombre);
+        if (!m.matches()) {
+            throw new IllegalArgumentException("No es una partición de documentos: " + nombre);
+        }
+        int anio = Integer.parseInt(m.group(1));
+        LocalDate inicio;
+        LocalDate fin;
+        if (m.group(2) != null) {
+            inicio = LocalDate.of(anio, Integer.parseInt(m.group(2)), 1);
+            fin = inicio.plusMonths(1);
+        } else {
+            inicio = LocalDate.of(anio, 1, 1);
+            fin = inicio.plusYears(1);
+        }
+        return new Instant[]{inicio.atStartOfDay(ZoneOffset.UTC).toInstant(), fin.atStartOfDay(ZoneOffset.UTC).toInstant()};
+    }
+}
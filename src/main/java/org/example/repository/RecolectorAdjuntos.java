@@ -0,0 +1,310 @@
+package org.example.repository;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.Sorts;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.Updates;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
+import org.example.metrics.Contador;
+import org.example.metrics.MetricasOperacion;
+import org.example.metrics.RegistroMetricas;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+// Recolector de adjuntos huérfanos de GridFS
+// Las operaciones de usuario no borran adjuntos: los marcan en "archivos_pendientes" y vuelven de
+// inmediato. Una pasada en segundo plano, en lotes y con ritmo limitado, elimina de archivos.files
+// y archivos.chunks:
+//   1. los adjuntos marcados;
+//   2. los archivos sin referencias subidos hace más del periodo de gracia (subidas cuyo documento
+//      no llegó a guardarse o actualizaciones que perdieron la carrera de versión);
+//   3. los bloques sin archivo (subidas interrumpidas) de más antigüedad que el periodo de gracia.
+// Antes de borrar se comprueba que ningún documento (en cualquier partición y disposición), resto de
+// archivado ni versión del historial referencia el adjunto. El periodo de gracia protege las subidas
+// en curso, cuyo documento aún no se ha escrito.
+public class RecolectorAdjuntos {
+    private static final Logger LOG = LoggerFactory.getLogger(RecolectorAdjuntos.class);
+    private static final String CAMPO_ARCHIVADO_ADJUNTO = ArchivadorDocumentos.CAMPO_ARCHIVADO + ".archivoId";
+    private static final String CAMPO_HISTORIAL_ADJUNTO = "campos." + DisposicionCampos.ARCHIVO;
+
+    private final ParticionesDocumentos particiones;
+    private final MongoCollection<Document> archivos;
+    private final MongoCollection<Document> bloques;
+    private final MongoCollection<Document> pendientes;
+    private final MongoCollection<Document> historial;
+    private final CacheAdjuntos cache;
+    private final int tamanoLote;
+    private final double archivosPorSegundo;
+    private final long graciaMillis;
+    private ScheduledExecutorService planificador;
+    private final Object pasadaEnCurso = new Object();
+
+    private final MetricasOperacion metricasPasada = RegistroMetricas.operacion("gc.adjuntos.pasada");
+    private final Contador marcados = RegistroMetricas.contador("gc.adjuntos.marcados");
+    private final Contador eliminados = RegistroMetricas.contador("gc.adjuntos.eliminados");
+    private final Contador bytesLiberados = RegistroMetricas.contador("gc.adjuntos.bytesLiberados");
+    private final Contador bloquesHuerfanos = RegistroMetricas.contador("gc.adjuntos.bloquesHuerfanos");
+    private final Contador conservados = RegistroMetricas.contador("gc.adjuntos.conservados");
+
+    // "historial" = colección del historial cuyas versiones conservan sus adjuntos (null = no se consulta)
+    public RecolectorAdjuntos(MongoDatabase database, String bucket, ParticionesDocumentos particiones,
+                              MongoCollection<Document> historial, CacheAdjuntos cache,
+                              int tamanoLote, double archivosPorSegundo, long graciaSegundos) {
+        if (tamanoLote <= 0) throw new IllegalArgumentException("lote debe ser mayor que cero");
+        this.particiones = particiones;
+        this.archivos = database.getCollection(bucket + ".files");
+        this.bloques = database.getCollection(bucket + ".chunks");
+        this.pendientes = database.getCollection(bucket + "_pendientes");
+        this.historial = historial;
+        this.cache = cache;
+        this.tamanoLote = tamanoLote;
+        this.archivosPorSegundo = archivosPorSegundo;
+        this.graciaMillis = TimeUnit.SECONDS.toMillis(graciaSegundos);
+    }
+
+    // Índices usados para comprobar referencias a adjuntos
+    public void crearIndices() {
+        if (historial != null) {
+            historial.createIndex(Indexes.ascending(CAMPO_HISTORIAL_ADJUNTO), new IndexOptions().sparse(true));
+        }
+    }
+
+    // === MARCADO ===
+
+    // Marca un adjunto para su eliminación en la próxima pasada; no accede a GridFS
+    public void marcar(ObjectId archivoId) {
+        pendientes.updateOne(Filters.eq("_id", archivoId), Updates.setOnInsert("desde", new Date()),
+                new UpdateOptions().upsert(true));
+        marcados.incrementar();
+        if (cache != null) {
+            cache.invalidar(archivoId);
+        }
+        LOG.atDebug().addKeyValue("archivoId", archivoId).log("Adjunto marcado para eliminación");
+    }
+
+    // === PLANIFICACIÓN ===
+
+    // Ejecuta una pasada cada 'intervaloSegundos' (0 = sólo pasadas manuales)
+    public synchronized void iniciar(long intervaloSegundos) {
+        if (planificador != null || intervaloSegundos <= 0) return;
+        planificador = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread hilo = new Thread(r, "recolector-adjuntos");
+            hilo.setDaemon(true);
+            return hilo;
+        });
+        planificador.scheduleWithFixedDelay(() -> {
+            try {
+                recolectar();
+            } catch (RuntimeException e) {
+                LOG.warn("Fallo en la pasada del recolector de adjuntos: {}", e.getMessage());
+            }
+        }, intervaloSegundos, intervaloSegundos, TimeUnit.SECONDS);
+    }
+
+    public synchronized void detener() {
+        if (planificador != null) {
+            planificador.shutdownNow();
+            planificador = null;
+        }
+    }
+
+    // === RECOLECCIÓN ===
+
+    // Pasada completa; devuelve el número de adjuntos (o grupos de bloques huérfanos) eliminados
+    public long recolectar() {
+        synchronized (pasadaEnCurso) {
+            return recolectarExclusivo();
+        }
+    }
+
+    private long recolectarExclusivo() {
+        long inicio = System.nanoTime();
+        boolean error = true;
+        try {
+            long[] revisados = {0};
+            long eliminadosPasada = recolectarMarcados(inicio, revisados)
+                    + recolectarSinReferencias(inicio, revisados)
+                    + recolectarBloquesHuerfanos(inicio, revisados);
+            error = false;
+            LOG.atInfo().addKeyValue("revisados", revisados[0]).addKeyValue("eliminados", eliminadosPasada)
+                    .addKeyValue("duracionMs", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - inicio))
+                    .log("Pasada del recolector de adjuntos completada");
+            return eliminadosPasada;
+        } finally {
+            metricasPasada.registrar(System.nanoTime() - inicio, error);
+        }
+    }
+
+    // 1. Adjuntos marcados por eliminaciones y reemplazos
+    private long recolectarMarcados(long inicio, long[] revisados) {
+        long total = 0;
+        ObjectId cursor = null;
+        while (true) {
+            List<ObjectId> lote = ids(pendientes, "_id", cursor != null ? Filters.gt("_id", cursor) : new Document());
+            if (lote.isEmpty()) break;
+            cursor = lote.get(lote.size() - 1);
+            Set<ObjectId> referenciados = referenciados(lote);
+            for (ObjectId archivoId : lote) {
+                if (referenciados.contains(archivoId)) {
+                    // Lo conserva el historial o un documento restaurado: la marca se descarta
+                    conservados.incrementar();
+                } else {
+                    eliminar(archivoId);
+                    total++;
+                }
+                pendientes.deleteOne(Filters.eq("_id", archivoId));
+            }
+            revisados[0] += lote.size();
+            regular(inicio, revisados[0]);
+        }
+        return total;
+    }
+
+    // 2. Archivos completos que nadie referencia, fuera del periodo de gracia
+    private long recolectarSinReferencias(long inicio, long[] revisados) {
+        long total = 0;
+        Date limite = new Date(System.currentTimeMillis() - graciaMillis);
+        ObjectId cursor = null;
+        while (true) {
+            Bson filtro = Filters.lt("uploadDate", limite);
+            if (cursor != null) {
+                filtro = Filters.and(Filters.gt("_id", cursor), filtro);
+            }
+            List<ObjectId> lote = ids(archivos, "_id", filtro);
+            if (lote.isEmpty()) break;
+            cursor = lote.get(lote.size() - 1);
+            Set<ObjectId> referenciados = referenciados(lote);
+            for (ObjectId archivoId : lote) {
+                if (!referenciados.contains(archivoId)) {
+                    LOG.atInfo().addKeyValue("archivoId", archivoId).log("Adjunto huérfano sin referencias");
+                    eliminar(archivoId);
+                    total++;
+                }
+            }
+            revisados[0] += lote.size();
+            regular(inicio, revisados[0]);
+        }
+        return total;
+    }
+
+    // 3. Bloques de subidas interrumpidas: files_id sin documento en archivos.files. Todo archivo
+    // tiene bloque 0, así que basta recorrer esos; la antigüedad se toma del ObjectId del archivo.
+    private long recolectarBloquesHuerfanos(long inicio, long[] revisados) {
+        long total = 0;
+        long limite = System.currentTimeMillis() - graciaMillis;
+        ObjectId cursor = null;
+        while (true) {
+            Bson filtro = Filters.eq("n", 0);
+            if (cursor != null) {
+                filtro = Filters.and(Filters.gt("files_id", cursor), filtro);
+            }
+            List<ObjectId> lote = ids(bloques, "files_id", filtro);
+            if (lote.isEmpty()) break;
+            cursor = lote.get(lote.size() - 1);
+            Set<ObjectId> conArchivo = new HashSet<>(ids(archivos, "_id", Filters.in("_id", lote)));
+            List<ObjectId> candidatos = new ArrayList<>();
+            for (ObjectId archivoId : lote) {
+                if (!conArchivo.contains(archivoId) && archivoId.getDate().getTime() < limite) {
+                    candidatos.add(archivoId);
+                }
+            }
+            // Un adjunto que se está restaurando desde el archivo frío conserva su identificador
+            // antiguo, pero su resto de archivado lo referencia hasta que termina la restauración
+            Set<ObjectId> referenciados = candidatos.isEmpty() ? Set.of() : referenciados(candidatos);
+            for (ObjectId archivoId : candidatos) {
+                if (!referenciados.contains(archivoId)) {
+                    bloquesHuerfanos.sumar(bloques.deleteMany(Filters.eq("files_id", archivoId)).getDeletedCount());
+                    total++;
+                }
+            }
+            revisados[0] += lote.size();
+            regular(inicio, revisados[0]);
+        }
+        return total;
+    }
+
+    // Identificadores del campo indicado, en orden ascendente y como máximo un lote
+    private List<ObjectId> ids(MongoCollection<Document> coleccion, String campo, Bson filtro) {
+        List<ObjectId> ids = new ArrayList<>(tamanoLote);
+        for (Document documento : coleccion.find(filtro).projection(Projections.include(campo))
+                .sort(Sorts.ascending(campo)).limit(tamanoLote)) {
+            ids.add(documento.getObjectId(campo));
+        }
+        return ids;
+    }
+
+    // Subconjunto de los adjuntos indicados que siguen referenciados
+    private Set<ObjectId> referenciados(List<ObjectId> candidatos) {
+        List<String> campos = new ArrayList<>();
+        for (DisposicionCampos disposicion : DisposicionCampos.values()) {
+            campos.add(disposicion.campo(DisposicionCampos.ARCHIVO));
+        }
+        campos.add(CAMPO_ARCHIVADO_ADJUNTO);
+        List<Bson> condiciones = new ArrayList<>();
+        for (String campo : campos) {
+            condiciones.add(Filters.in(campo, candidatos));
+        }
+        Bson filtro = Filters.or(condiciones);
+
+        Set<ObjectId> referenciados = new HashSet<>();
+        for (List<Document> parcial : particiones.enParalelo(particiones.todas(), coleccion ->
+                coleccion.find(filtro).projection(Projections.include(campos)).into(new ArrayList<>()))) {
+            for (Document registro : parcial) {
+                for (String campo : campos) {
+                    Object valor = registro.getEmbedded(List.of(campo.split("\\.")), Object.class);
+                    if (valor instanceof ObjectId id) {
+                        referenciados.add(id);
+                    }
+                }
+            }
+        }
+        if (historial != null) {
+            for (Document version : historial.find(Filters.in(CAMPO_HISTORIAL_ADJUNTO, candidatos))
+                    .projection(Projections.include(CAMPO_HISTORIAL_ADJUNTO))) {
+                referenciados.add(version.getEmbedded(List.of("campos", DisposicionCampos.ARCHIVO), ObjectId.class));
+            }
+        }
+        return referenciados;
+    }
+
+    // Borra el archivo y sus bloques (en el mismo orden que GridFS) y su copia en la caché local
+    private void eliminar(ObjectId archivoId) {
+        Document archivo = archivos.findOneAndDelete(Filters.eq("_id", archivoId));
+        bloques.deleteMany(Filters.eq("files_id", archivoId));
+        if (cache != null) {
+            cache.invalidar(archivoId);
+        }
+        if (archivo != null) {
+            eliminados.incrementar();
+            bytesLiberados.sumar(archivo.get("length") instanceof Number longitud ? longitud.longValue() : 0);
+        }
+        LOG.atDebug().addKeyValue("archivoId", archivoId).log("Adjunto eliminado por el recolector");
+    }
+
+    // Limita el ritmo de revisión a 'archivosPorSegundo' (0 = sin límite)
+    private void regular(long inicio, long revisados) {
+        if (archivosPorSegundo <= 0) return;
+        long objetivo = inicio + (long) (revisados * 1e9 / archivosPorSegundo);
+        long espera = objetivo - System.nanoTime();
+        if (espera > 0) {
+            LockSupport.parkNanos(espera);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package org.example.repository;
+
+import java.util.Collections;
+import java.util.List;
+
+// Resultado de una actualización con resolución automática de conflictos
+public class ResultadoActualizacion {
+
+    // Desenlace de la actualización
+    public enum Estado {
+        ACTUALIZADO,          // Cambios aplicados (directamente o tras fusionar cambios concurrentes)
+        CONFLICTO,            // Otro escritor modificó los mismos campos con valores distintos
+        NO_ENCONTRADO,        // El documento ya no existe
+        REINTENTOS_AGOTADOS,  // La versión siguió cambiando durante todos los intentos permitidos
+        ID_INVALIDO
+    }
+
+    private final Estado estado;
+    private final List<String> camposEnConflicto;
+    private final int intentos;
+    private final int nuevaVersion;
+    private final boolean fusionado;
+
+    ResultadoActualizacion(Estado estado, List<String> camposEnConflicto, int intentos,
+                           int nuevaVersion, boolean fusionado) {
+        this.estado = estado;
+        this.camposEnConflicto = camposEnConflicto != null
+                ? Collections.unmodifiableList(camposEnConflicto) : Collections.emptyList();
+        this.intentos = intentos;
+        this.nuevaVersion = nuevaVersion;
+        this.fusionado = fusionado;
+    }
+
+    public Estado getEstado() {
+        return estado;
+    }
+
+    public boolean isExito() {
+        return estado == Estado.ACTUALIZADO;
+    }
+
+    // Campos modificados a la vez por el llamador y por otro escritor con valores distintos
+    public List<String> getCamposEnConflicto() {
+        return camposEnConflicto;
+    }
+
+    public int getIntentos() {
+        return intentos;
+    }
+
+    // Versión resultante; sólo significativa si la actualización tuvo éxito
+    public int getNuevaVersion() {
+        return nuevaVersion;
+    }
+
+    // Indica si fue necesario fusionar cambios concurrentes de otros escritores
+    public boolean isFusionado() {
+        return fusionado;
+    }
+
+    @Override
+    public String toString() {
+        return "ResultadoActualizacion{" +
+                "estado=" + estado +
+                ", camposEnConflicto=" + camposEnConflicto +
+                ", intentos=" + intentos +
+                ", nuevaVersion=" + nuevaVersion +
+                ", fusionado=" + fusionado +
+                '}';
+    }
+}
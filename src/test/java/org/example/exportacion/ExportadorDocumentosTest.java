@@ -0,0 +1,150 @@
+package org.example.exportacion;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.example.config.MongoConfig;
+import org.example.repository.ConsultaDocumentos;
+import org.example.repository.DisposicionCampos;
+import org.example.repository.DocumentoRepository;
+import org.example.repository.MongoEmbebido;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+// Exportación de registros en disposición extendida, compacta y archivados, a CSV y JSONL
+public class ExportadorDocumentosTest {
+    private static final String BASE = "exportador_test";
+    private static final Date FECHA = Date.from(Instant.parse("2024-01-02T03:04:05Z"));
+    private static final Date FECHA_ANTIGUA = Date.from(Instant.parse("2000-01-01T00:00:00Z"));
+
+    // Títulos y autores con separadores, comillas y caracteres de control
+    private static final String TITULO_EXTENDIDO = "Informe \"anual\", 2024";
+    private static final String AUTOR_EXTENDIDO = "Ana\nPérez";
+    private static final String TITULO_COMPACTO = "Tabulado\tcon \\ y \u0001";
+
+    private static final List<String> PROPIEDADES = List.of("mongodb.connection.string", "mongodb.database.name",
+            "esquema.documentos", "archivado.directorio", "metricas.jmx.habilitado", "mongodb.pool.minimo");
+
+    @ClassRule
+    public static final TemporaryFolder temporal = new TemporaryFolder();
+
+    private static MongoEmbebido mongo;
+    private static DocumentoRepository repositorio;
+    private static ObjectId extendido;
+    private static ObjectId compacto;
+    private static ObjectId archivado;
+
+    @BeforeClass
+    public static void prepararDatos() throws IOException {
+        mongo = MongoEmbebido.iniciar();
+        MongoDatabase database = mongo.base(BASE);
+
+        // MongoConfig admite -Dclave=valor sobre mongodb.properties; MIXTO lee ambas disposiciones
+        System.setProperty("mongodb.connection.string", mongo.conexion());
+        System.setProperty("mongodb.database.name", BASE);
+        System.setProperty("esquema.documentos", "MIXTO");
+        System.setProperty("archivado.directorio", temporal.newFolder("archivo_frio").toString());
+        System.setProperty("metricas.jmx.habilitado", "false");
+        System.setProperty("mongodb.pool.minimo", "0");
+
+        MongoCollection<Document> documentos = database.getCollection("documentos");
+        extendido = new ObjectId();
+        documentos.insertOne(DisposicionCampos.EXTENDIDA.escribir(
+                logico(extendido, TITULO_EXTENDIDO, AUTOR_EXTENDIDO, "PDF", "BORRADOR", 1, FECHA)));
+        compacto = new ObjectId();
+        documentos.insertOne(DisposicionCampos.COMPACTA.escribir(
+                logico(compacto, TITULO_COMPACTO, "Luis", "DOC", "BORRADOR", 2, FECHA)));
+        archivado = new ObjectId();
+        documentos.insertOne(DisposicionCampos.EXTENDIDA.escribir(
+                logico(archivado, "Archivado", "Eva", "TXT", "APROBADO", 3, FECHA_ANTIGUA)));
+
+        repositorio = new DocumentoRepository();
+        assertEquals(1, repositorio.archivarDocumentosFrios());
+    }
+
+    @AfterClass
+    public static void liberar() {
+        if (repositorio != null) {
+            repositorio.cerrar();
+            MongoConfig.closeMongoClient();
+        }
+        if (mongo != null) {
+            mongo.close();
+        }
+        PROPIEDADES.forEach(System::clearProperty);
+    }
+
+    // === CSV ===
+
+    @Test
+    public void exportaCsvConCamposEntrecomillados() throws IOException {
+        String csv = exportar(ExportadorDocumentos.Formato.CSV, "documentos.csv");
+
+        assertTrue(csv.startsWith(String.join(",", ExportadorDocumentos.COLUMNAS) + "\n"));
+        assertTrue(csv.contains(extendido.toHexString()
+                + ",\"Informe \"\"anual\"\", 2024\",\"Ana\nPérez\",PDF,2024-01-02T03:04:05Z,2024-01-02T03:04:05Z,BORRADOR,1,\n"));
+        assertTrue(csv.contains(compacto.toHexString()
+                + ",Tabulado\tcon \\ y \u0001,Luis,DOC,2024-01-02T03:04:05Z,2024-01-02T03:04:05Z,BORRADOR,2,\n"));
+        assertTrue(csv.contains(archivado.toHexString()
+                + ",Archivado,Eva,TXT,2024-01-02T03:04:05Z,2000-01-01T00:00:00Z,APROBADO,3,\n"));
+    }
+
+    // === JSONL ===
+
+    @Test
+    public void exportaJsonlEscapandoCaracteresDeControl() throws IOException {
+        String jsonl = exportar(ExportadorDocumentos.Formato.JSONL, "documentos.jsonl");
+
+        assertEquals(3, jsonl.split("\n").length);
+        assertTrue(jsonl.contains("{\"id\":\"" + extendido.toHexString()
+                + "\",\"titulo\":\"Informe \\\"anual\\\", 2024\",\"autor\":\"Ana\\nPérez\",\"tipoDocumento\":\"PDF\""
+                + ",\"fechaCreacion\":\"2024-01-02T03:04:05Z\",\"fechaModificacion\":\"2024-01-02T03:04:05Z\""
+                + ",\"estado\":\"BORRADOR\",\"version\":1,\"archivoId\":null}\n"));
+        assertTrue(jsonl.contains("{\"id\":\"" + compacto.toHexString()
+                + "\",\"titulo\":\"Tabulado\\tcon \\\\ y \\u0001\",\"autor\":\"Luis\",\"tipoDocumento\":\"DOC\""
+                + ",\"fechaCreacion\":\"2024-01-02T03:04:05Z\",\"fechaModificacion\":\"2024-01-02T03:04:05Z\""
+                + ",\"estado\":\"BORRADOR\",\"version\":2,\"archivoId\":null}\n"));
+        assertTrue(jsonl.contains("{\"id\":\"" + archivado.toHexString()
+                + "\",\"titulo\":\"Archivado\",\"autor\":\"Eva\",\"tipoDocumento\":\"TXT\""
+                + ",\"fechaCreacion\":\"2024-01-02T03:04:05Z\",\"fechaModificacion\":\"2000-01-01T00:00:00Z\""
+                + ",\"estado\":\"APROBADO\",\"version\":3,\"archivoId\":null}\n"));
+    }
+
+    // === AUXILIARES ===
+
+    private static String exportar(ExportadorDocumentos.Formato formato, String nombre) throws IOException {
+        Path salida = temporal.getRoot().toPath().resolve(nombre);
+        long registros = new ExportadorDocumentos(repositorio, formato, List.of(), false, 2)
+                .exportar(ConsultaDocumentos.todos(), salida);
+        assertEquals(3, registros);
+        return Files.readString(salida, StandardCharsets.UTF_8);
+    }
+
+    private static Document logico(ObjectId id, String titulo, String autor, String tipo, String estado,
+                                   int version, Date fechaModificacion) {
+        return new Document("_id", id)
+                .append(DisposicionCampos.TITULO, titulo)
+                .append(DisposicionCampos.AUTOR, autor)
+                .append(DisposicionCampos.TIPO, tipo)
+                .append(DisposicionCampos.FECHA_CREACION, FECHA)
+                .append(DisposicionCampos.FECHA_MODIFICACION, fechaModificacion)
+                .append(DisposicionCampos.ESTADO, estado)
+                .append(DisposicionCampos.VERSION, version)
+                .append(DisposicionCampos.ARCHIVO, null);
+    }
+}
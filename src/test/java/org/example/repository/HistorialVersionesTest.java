@@ -0,0 +1,161 @@
+package org.example.repository;
+
+import com.mongodb.client.ClientSession;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Sorts;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class HistorialVersionesTest {
+    private static MongoEmbebido mongo;
+
+    private MongoDatabase database;
+    private ClientSession session;
+
+    @BeforeClass
+    public static void iniciarMongo() {
+        mongo = MongoEmbebido.iniciar();
+    }
+
+    @AfterClass
+    public static void detenerMongo() {
+        if (mongo != null) {
+            mongo.close();
+        }
+    }
+
+    @Before
+    public void prepararBase() {
+        database = mongo.base("historial_versiones_test");
+        session = mongo.cliente().startSession();
+    }
+
+    @After
+    public void cerrarSesion() {
+        session.close();
+    }
+
+    // === CHECKPOINTS ===
+
+    @Test
+    public void guardaCheckpointCadaIntervaloDeVersiones() {
+        HistorialVersiones historial = nuevoHistorial(3);
+        ObjectId id = new ObjectId();
+        actualizarSucesivamente(historial, id, 7);
+
+        // La versión 1 es el checkpoint inicial; después, checkpoint en cada múltiplo del intervalo
+        assertEquals(List.of("CHECKPOINT", "DELTA", "CHECKPOINT", "DELTA", "DELTA", "CHECKPOINT", "DELTA"), tipos(historial, id));
+        for (int version = 1; version <= 7; version++) {
+            assertEquals("v" + version, historial.obtenerVersion(id, version).getString("titulo"));
+        }
+    }
+
+    // === DELTAS ===
+
+    @Test
+    public void registraLosCamposQuePasanANuloEnEliminados() {
+        HistorialVersiones historial = nuevoHistorial(10);
+        ObjectId id = new ObjectId();
+        ObjectId archivoId = new ObjectId();
+        historial.registrar(session, estado(id, 1, "titulo", "BORRADOR").append("archivoId", archivoId),
+                estado(id, 2, "titulo", "BORRADOR"));
+
+        Document delta = entrada(historial, id, 2);
+        assertEquals(HistorialVersiones.TIPO_DELTA, delta.getString("tipo"));
+        assertEquals(List.of("archivoId"), delta.getList("eliminados", String.class));
+        assertTrue(delta.get("campos", Document.class).isEmpty());
+
+        assertEquals(archivoId, historial.obtenerVersion(id, 1).getObjectId("archivoId"));
+        assertFalse(historial.obtenerVersion(id, 2).containsKey("archivoId"));
+    }
+
+    @Test
+    public void conservaLosCambiosQueNoIncrementanLaVersion() {
+        HistorialVersiones historial = nuevoHistorial(10);
+        ObjectId id = new ObjectId();
+        historial.registrar(session, estado(id, 1, "v1", "BORRADOR"), estado(id, 2, "v2", "BORRADOR"));
+
+        // La aprobación cambia el estado sin incrementar la versión ni pasar por el historial
+        historial.registrar(session, estado(id, 2, "v2", "APROBADO"), estado(id, 3, "v3", "APROBADO"));
+
+        Document delta = entrada(historial, id, 3);
+        assertEquals("APROBADO", delta.get("campos", Document.class).getString("estado"));
+        assertEquals("BORRADOR", historial.obtenerVersion(id, 2).getString("estado"));
+        assertEquals("APROBADO", historial.obtenerVersion(id, 3).getString("estado"));
+    }
+
+    // === RECONSTRUCCIÓN ===
+
+    @Test
+    public void reconstruyeLaPrimeraYUnaVersionIntermedia() {
+        HistorialVersiones historial = nuevoHistorial(10);
+        ObjectId id = new ObjectId();
+        actualizarSucesivamente(historial, id, 5);
+
+        Document primera = historial.obtenerVersion(id, 1);
+        assertNotNull(primera);
+        assertEquals("v1", primera.getString("titulo"));
+        assertEquals(1, (int) primera.getInteger("version"));
+        assertEquals(id, primera.getObjectId("_id"));
+
+        Document intermedia = historial.obtenerVersion(id, 3);
+        assertEquals("v3", intermedia.getString("titulo"));
+        assertEquals("autor", intermedia.getString("autor"));
+
+        assertNull(historial.obtenerVersion(id, 6));
+        assertEquals(List.of(5, 4, 3, 2, 1), historial.listarVersiones(id));
+    }
+
+    // === AUXILIARES ===
+
+    private HistorialVersiones nuevoHistorial(int intervaloCheckpoint) {
+        HistorialVersiones historial = new HistorialVersiones(database, intervaloCheckpoint);
+        historial.crearIndices();
+        return historial;
+    }
+
+    // Registra las transiciones 1 -> 2 -> ... -> ultima cambiando el título en cada una
+    private void actualizarSucesivamente(HistorialVersiones historial, ObjectId id, int ultima) {
+        for (int version = 2; version <= ultima; version++) {
+            historial.registrar(session, estado(id, version - 1, "v" + (version - 1), "BORRADOR"),
+                    estado(id, version, "v" + version, "BORRADOR"));
+        }
+    }
+
+    private static Document estado(ObjectId id, int version, String titulo, String estado) {
+        return new Document("_id", id)
+                .append("titulo", titulo)
+                .append("autor", "autor")
+                .append("tipoDocumento", "INFORME")
+                .append("fechaCreacion", new Date(0))
+                .append("estado", estado)
+                .append("version", version);
+    }
+
+    private static List<String> tipos(HistorialVersiones historial, ObjectId id) {
+        List<String> tipos = new ArrayList<>();
+        historial.coleccion().find(Filters.eq("docId", id)).sort(Sorts.ascending("version"))
+                .forEach(entrada -> tipos.add(entrada.getString("tipo")));
+        return tipos;
+    }
+
+    private static Document entrada(HistorialVersiones historial, ObjectId id, int version) {
+        return historial.coleccion().find(Filters.and(Filters.eq("docId", id), Filters.eq("version", version))).first();
+    }
+}
@@ -0,0 +1,54 @@
+package org.example.repository;
+
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import com.mongodb.client.MongoDatabase;
+import de.flapdoodle.embed.mongo.distribution.Version;
+import de.flapdoodle.embed.mongo.transitions.Mongod;
+import de.flapdoodle.embed.mongo.transitions.RunningMongodProcess;
+import de.flapdoodle.reverse.TransitionWalker;
+import org.junit.Assume;
+
+// Servidor MongoDB embebido para las pruebas
+// Si no se puede arrancar (p. ej. sin red para descargar el binario), las pruebas se omiten
+public final class MongoEmbebido implements AutoCloseable {
+    private final TransitionWalker.ReachedState<RunningMongodProcess> proceso;
+    private final MongoClient cliente;
+
+    private MongoEmbebido(TransitionWalker.ReachedState<RunningMongodProcess> proceso) {
+        this.proceso = proceso;
+        this.cliente = MongoClients.create(conexion());
+    }
+
+    public static MongoEmbebido iniciar() {
+        try {
+            return new MongoEmbebido(Mongod.instance().start(Version.Main.V7_0));
+        } catch (RuntimeException e) {
+            Assume.assumeNoException("MongoDB embebido no disponible", e);
+            return null;
+        }
+    }
+
+    // Cadena de conexión al servidor embebido (standalone)
+    public String conexion() {
+        return "mongodb://" + proceso.current().getServerAddress().getHost() + ":"
+                + proceso.current().getServerAddress().getPort();
+    }
+
+    public MongoClient cliente() {
+        return cliente;
+    }
+
+    // Base de datos vacía con el nombre indicado
+    public MongoDatabase base(String nombre) {
+        MongoDatabase database = cliente.getDatabase(nombre);
+        database.drop();
+        return database;
+    }
+
+    @Override
+    public void close() {
+        cliente.close();
+        proceso.close();
+    }
+}
@@ -0,0 +1,69 @@
+#!/usr/bin/env bash
+# Réplica set local rs0 de tres miembros (puertos 27017-27019) para Linux
+# Uso: ./start_replica.sh [iniciar|detener|estado]
+#   iniciar  arranca los miembros que no estén en marcha e inicializa el réplica set si hace falta
+#   detener  apaga los tres miembros
+#   estado   muestra el estado de cada miembro
+# Los datos y logs se guardan en $MONGO_RS_DIR (por defecto ~/data/rs).
+set -euo pipefail
+
+DIR="${MONGO_RS_DIR:-$HOME/data/rs}"
+PUERTOS=(27017 27018 27019)
+
+en_marcha() {
+    local pid_archivo="$DIR/node$1/mongod.pid"
+    [[ -f "$pid_archivo" ]] && kill -0 "$(cat "$pid_archivo")" 2>/dev/null
+}
+
+iniciar() {
+    for i in 1 2 3; do
+        local puerto=${PUERTOS[$((i - 1))]}
+        if en_marcha "$i"; then
+            echo "Nodo $i ya en marcha (puerto $puerto)"
+            continue
+        fi
+        echo "Iniciando Nodo $i..."
+        mkdir -p "$DIR/node$i" "$DIR/log"
+        mongod --replSet rs0 --dbpath "$DIR/node$i" --logpath "$DIR/log/node$i.log" --logappend \
+            --port "$puerto" --bind_ip localhost --pidfilepath "$DIR/node$i/mongod.pid" --fork >/dev/null
+    done
+
+    # Inicialización idempotente: sólo la primera vez
+    mongosh --quiet --port "${PUERTOS[0]}" --eval '
+        try {
+            rs.status();
+        } catch (e) {
+            rs.initiate({_id: "rs0", members: [
+                {_id: 0, host: "localhost:27017"},
+                {_id: 1, host: "localhost:27018"},
+                {_id: 2, host: "localhost:27019"}]});
+            print("Réplica set rs0 inicializado");
+        }'
+    echo "Todos los nodos iniciados. Usa mongosh --port 27017 para conectar."
+}
+
+detener() {
+    for i in 1 2 3; do
+        if en_marcha "$i"; then
+            echo "Deteniendo Nodo $i..."
+            mongod --dbpath "$DIR/node$i" --shutdown >/dev/null || kill "$(cat "$DIR/node$i/mongod.pid")"
+        fi
+    done
+}
+
+estado() {
+    for i in 1 2 3; do
+        if en_marcha "$i"; then
+            echo "Nodo $i (puerto ${PUERTOS[$((i - 1))]}): en marcha, pid $(cat "$DIR/node$i/mongod.pid")"
+        else
+            echo "Nodo $i (puerto ${PUERTOS[$((i - 1))]}): detenido"
+        fi
+    done
+}
+
+case "${1:-iniciar}" in
+    iniciar) iniciar ;;
+    detener) detener ;;
+    estado) estado ;;
+    *) echo "Uso: $0 [iniciar|detener|estado]" >&2; exit 1 ;;
+esac